@@ -1,12 +1,24 @@
 import java.util.Scanner;
+import functional.BatchRunner;
+import functional.RoutingServer;
 import functional.PathFinder;
 import functional.Initializer;
+import functional.Calculator;
+import structures.Isochrone;
+import structures.LaneWorkspace;
+import structures.Profile;
 
+import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 
 public class Main {
 
+    // search modes of the interactive prompt, in the order they are offered
+    private static final List<String> MODES = List.of("default", "variant", "profile", "transfers", "departures",
+            "isochrone");
+
     public static void main(String[] args) {
         try {
             System.out.println("#############################################################");
@@ -17,18 +29,23 @@ public class Main {
             final double MAX_FOOT_DISTANCE = 500; // in meters
             final double AVERAGE_WALKING_SPEED = 1.0; // in m/s
             final int BALL_TREE_LEAFE_SIZE = 30; // number of stops per leaf
+            final String SNAPSHOT_FILE = "network.snapshot"; // binary snapshot of the built network
+            final int PARSER_THREADS = Runtime.getRuntime().availableProcessors(); // threads reading the GTFS files
 
             System.out.println("[\033[92mINFO\033[0m] Parameters:");
             System.out.println("[\033[92mINFO\033[0m] Max foot distance: " + MAX_FOOT_DISTANCE + " m");
             System.out.println("[\033[92mINFO\033[0m] Average walking speed: " + AVERAGE_WALKING_SPEED + " m/s");
             System.out.println("[\033[92mINFO\033[0m] Ball tree leaf size: " + BALL_TREE_LEAFE_SIZE);
+            System.out.println("[\033[92mINFO\033[0m] Parser threads: " + PARSER_THREADS);
+            System.out.println("[\033[92mINFO\033[0m] Snapshot file: " + SNAPSHOT_FILE);
 
             System.out.println("#############################################################");
             System.out.println("#-----------------------------------------------------------#");
             System.out.println("#############################################################");
             System.out.println("[\033[92mINFO\033[0m] Initializing the GTFS data...");
             Initializer initializer = new Initializer(DIRECTORY, MAX_FOOT_DISTANCE, AVERAGE_WALKING_SPEED,
-                    BALL_TREE_LEAFE_SIZE);
+                    BALL_TREE_LEAFE_SIZE, PARSER_THREADS);
+            initializer.setSnapshotFile(SNAPSHOT_FILE);
             initializer.setup(true);
 
             System.out.println("[\033[92mINFO\033[0m] GTFS data loaded successfully!");
@@ -36,6 +53,28 @@ public class Main {
             System.out.println("#-----------------------------------------------------------#");
             System.out.println("#############################################################");
             System.out.println("[\033[92mINFO\033[0m] PathFinder ready.");
+            if (args.length >= 3 && args[0].equals("--batch")) {
+                // answering a file of queries: --batch <query file> <result file> [threads]
+                int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+                BatchRunner runner = new BatchRunner(initializer.getNetwork(), threads);
+                runner.run(args[1], args[2]);
+                runner.printReport();
+                return;
+            }
+            if (args.length >= 1 && args[0].equals("--serve")) {
+                // serving the journeys over HTTP: --serve [port] [search threads] [cache size]
+                int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+                int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+                int cacheSize = args.length > 3 ? Integer.parseInt(args[3]) : RoutingServer.DEFAULT_CACHE_SIZE;
+                RoutingServer server = new RoutingServer(initializer.getNetwork(), port, threads, cacheSize);
+                server.setInitializer(initializer); // POST /reload rebuilds the network from the GTFS files
+                server.start();
+                System.out.println("[\033[92mINFO\033[0m] Routing server listening on http://localhost:"
+                        + server.getPort() + "/journey, /stats, /reload and /delays ("
+                        + (server.usesVirtualThreads() ? "virtual threads" : "platform threads") + ", " + threads
+                        + " search thread(s)).");
+                return;
+            }
             // finding the best path
             solve(initializer);
         } catch (Exception e) {
@@ -46,32 +85,188 @@ public class Main {
 
     private static void solve(Initializer initializer) {
         Scanner scanner = new Scanner(System.in);
+        // a single PathFinder is reused for every itinerary, so is its query workspace
+        PathFinder finder = new PathFinder(initializer.getStops(), initializer.getTrips(), initializer.getRoutes(),
+                initializer.getTimetable(), initializer.getStopNameIndex());
         while (true) {
             // Getting departure spot
             System.out.print("From where would you like to travel ?: ");
             String start = scanner.nextLine();
 
+            // Getting the mode, first since an isochrone has no destination
+            System.out.print("Would you like to use the " + String.join(", ", MODES.subList(0, MODES.size() - 1))
+                    + " or " + MODES.get(MODES.size() - 1) + " mode ? (" + String.join("/", MODES) + "): ");
+            String mode = scanner.nextLine().trim().toLowerCase();
+
+            if (!MODES.contains(mode)) {
+                System.out.println("[\033[91mERROR\033[0m] Invalid mode. Please enter '"
+                        + String.join("', '", MODES.subList(0, MODES.size() - 1)) + "' or '"
+                        + MODES.get(MODES.size() - 1) + "'.");
+                continue;
+            }
+
             // Getting destination
-            System.out.print("Where would you like to go ?: ");
-            String destination = scanner.nextLine();
+            String destination = null;
+            if (!mode.equals("isochrone")) {
+                System.out.print("Where would you like to go ?: ");
+                destination = scanner.nextLine();
+            }
 
             // Getting departure_time
             System.out.print("What time do you wish to depart (format: 'hour;minute;second') ?: ");
             String departure_time = scanner.nextLine();
 
-            System.out.print("Would you like to use the default mode or the variant mode ? (default/variant): ");
-            String mode = scanner.nextLine().trim().toLowerCase();
+            // Getting the date, when the trips do not run every day
+            if (initializer.getTimetable().getCalendar() != null) {
+                System.out.print("On which date (format: 'YYYY-MM-DD', empty for every day) ?: ");
+                try {
+                    finder.setDate(Calculator.parseDate(scanner.nextLine()));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("[\033[91mERROR\033[0m] " + e.getMessage());
+                    continue;
+                }
+            }
+
+            if (mode.equals("departures")) {
+                // Getting the departure times, all evaluated in a single scan
+                int count;
+                int interval;
+                try {
+                    System.out.print("How many departures (1-" + LaneWorkspace.LANES + ") ?: ");
+                    count = Integer.parseInt(scanner.nextLine().trim());
+                    System.out.print("How many minutes apart ?: ");
+                    interval = Integer.parseInt(scanner.nextLine().trim());
+                } catch (NumberFormatException e) {
+                    System.out.println("[\033[91mERROR\033[0m] Invalid number.");
+                    continue;
+                }
+                int first;
+                try {
+                    first = Calculator.timeToInt(departure_time);
+                } catch (IllegalArgumentException e) {
+                    first = -1;
+                }
+                if (first < 0 || interval < 0) {
+                    System.out.println("[\033[91mERROR\033[0m] Invalid time given: " + departure_time);
+                    continue;
+                }
+                String[] times = new String[Math.max(0, count)];
+                for (int i = 0; i < times.length; i++) {
+                    int time = first + i * interval * 60; // past midnight, hours go beyond 24 as in GTFS
+                    times[i] = String.format("%02d;%02d;%02d", time / 3600, (time % 3600) / 60, time % 60);
+                }
+
+                Instant start_time = Instant.now();
+                int[] arrivals = finder.findArrivals(start, destination, times, false);
+                Instant end_time = Instant.now();
+                if (arrivals != null) {
+                    System.out.println("Departures from " + start + " to " + destination + ":");
+                    for (int i = 0; i < times.length; i++) {
+                        System.out.println("Leave at " + times[i].replace(';', ':') + ", arrive at "
+                                + (arrivals[i] == Integer.MAX_VALUE ? "never" : Calculator.intToTime(arrivals[i])));
+                    }
+                }
+                System.out.println("[\033[92mINFO\033[0m] Departures search took "
+                        + Duration.between(start_time, end_time).toMillis() + " ms.");
+
+                System.out.print("Would you like to search for another itinerary? (no to exit): ");
+                if (scanner.nextLine().trim().toLowerCase().equals("no")) {
+                    System.out.println("Exiting the program!");
+                    break;
+                }
+                continue;
+            }
+            if (mode.equals("isochrone")) {
+                // Getting the travel time budget
+                int budget_minutes;
+                double walk_distance;
+                try {
+                    System.out.print("Within how many minutes ?: ");
+                    budget_minutes = Integer.parseInt(scanner.nextLine().trim());
+                    System.out.print("Walk further from the stops reached, up to how many meters (0 for no) ?: ");
+                    walk_distance = Double.parseDouble(scanner.nextLine().trim());
+                } catch (NumberFormatException e) {
+                    System.out.println("[\033[91mERROR\033[0m] Invalid number.");
+                    continue;
+                }
+                System.out.print("CSV file to write the stops reached to (empty for none): ");
+                String csv_file = scanner.nextLine().trim();
+
+                Instant start_time = Instant.now();
+                Isochrone isochrone = finder.findIsochrone(start, departure_time, budget_minutes * 60, false);
+                if (isochrone != null && walk_distance > 0) {
+                    isochrone = isochrone.expandWalking(initializer.getBallTree(), walk_distance,
+                            initializer.getAverageWalkingSpeed());
+                }
+                Instant end_time = Instant.now();
+                if (isochrone != null) {
+                    System.out.println(isochrone.getReachedCount() + " stops reachable from " + start + " within "
+                            + budget_minutes + " minutes");
+                    if (!csv_file.isEmpty()) {
+                        try {
+                            isochrone.writeCsv(csv_file);
+                            System.out.println("[\033[92mINFO\033[0m] Stops reached written to " + csv_file);
+                        } catch (IOException e) {
+                            System.out.println("[\033[91mERROR\033[0m] Cannot write " + csv_file + ": "
+                                    + e.getMessage());
+                        }
+                    }
+                }
+                System.out.println("[\033[92mINFO\033[0m] Isochrone search took "
+                        + Duration.between(start_time, end_time).toMillis() + " ms.");
 
-            if (mode == null || mode.isEmpty()) {
-                System.out.println("[\033[91mERROR\033[0m] Invalid mode. Please enter 'default' or 'variant'.");
+                System.out.print("Would you like to search for another itinerary? (no to exit): ");
+                if (scanner.nextLine().trim().toLowerCase().equals("no")) {
+                    System.out.println("Exiting the program!");
+                    break;
+                }
                 continue;
             }
-            if (!mode.equals("default") && !mode.equals("variant")) {
-                System.out.println("[\033[91mERROR\033[0m] Invalid mode. Please enter 'default' or 'variant'.");
+            if (mode.equals("profile")) {
+                // Getting the end of the departure window
+                System.out.print("Until what time could you depart (format: 'hour;minute;second') ?: ");
+                String latest_time = scanner.nextLine();
+
+                Instant start_time = Instant.now();
+                Profile profile = finder.findProfile(start, destination, departure_time, latest_time, false);
+                Instant end_time = Instant.now();
+                if (profile != null) {
+                    printProfile(start, destination, profile);
+                }
+                System.out.println("[\033[92mINFO\033[0m] Profile search took "
+                        + Duration.between(start_time, end_time).toMillis() + " ms.");
+
+                System.out.print("Would you like to search for another itinerary? (no to exit): ");
+                if (scanner.nextLine().trim().toLowerCase().equals("no")) {
+                    System.out.println("Exiting the program!");
+                    break;
+                }
+                continue;
+            }
+            if (mode.equals("transfers")) {
+                // Getting the maximum number of transfers
+                System.out.print("How many transfers at most (0-" + PathFinder.MAX_TRANSFERS + ") ?: ");
+                int max_transfers;
+                try {
+                    max_transfers = Integer.parseInt(scanner.nextLine().trim());
+                } catch (NumberFormatException e) {
+                    System.out.println("[\033[91mERROR\033[0m] Invalid number of transfers.");
+                    continue;
+                }
+
+                Instant start_time = Instant.now();
+                finder.findParetoPaths(start, destination, departure_time, false, max_transfers);
+                Instant end_time = Instant.now();
+                System.out.println("[\033[92mINFO\033[0m] Pathfinding took "
+                        + Duration.between(start_time, end_time).toMillis() + " ms.");
+
+                System.out.print("Would you like to search for another itinerary? (no to exit): ");
+                if (scanner.nextLine().trim().toLowerCase().equals("no")) {
+                    System.out.println("Exiting the program!");
+                    break;
+                }
                 continue;
             }
-            PathFinder finder = new PathFinder(initializer.getStops(), initializer.getTrips(), initializer.getRoutes(),
-                    initializer.getConnexions());
             boolean variant = false;
             if (mode.equals("variant")) {
                 variant = true;
@@ -119,4 +314,23 @@ public class Main {
         }
         scanner.close();
     }
-}
\ No newline at end of file
+
+    /**
+     * @brief Prints every Pareto-optimal (departure, arrival) pair of a profile.
+     * 
+     * @param start       The starting position.
+     * @param destination The ending position.
+     * @param profile     The profile to print.
+     */
+    private static void printProfile(String start, String destination, Profile profile) {
+        if (profile.size() == 0) {
+            System.out.println("No path found from " + start + " to " + destination);
+            return;
+        }
+        System.out.println("Best departures from " + start + " to " + destination + ":");
+        for (int i = 0; i < profile.size(); i++) {
+            System.out.println("Leave at " + Calculator.intToTime(profile.getDeparture(i)) + ", arrive at "
+                    + Calculator.intToTime(profile.getArrival(i)));
+        }
+    }
+}
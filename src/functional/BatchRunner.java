@@ -0,0 +1,271 @@
+package functional;
+
+import structures.Journey;
+import structures.Network;
+import structures.Timetable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @brief Answers a file of earliest-arrival queries on several threads.
+ *
+ *        Every line of the query file is 'from,to,time[,modes[,date]]' where
+ *        the time is 'hour;minute;second' or 'hour:minute:second', the
+ *        optional modes are joined by '+' (e.g. 'bus+tram', every mode if
+ *        empty) and the optional date is 'YYYY-MM-DD' or 'YYYYMMDD' (the trips
+ *        of every day if empty). Empty lines, lines starting with '#' and a
+ *        'from,...' header are skipped.
+ *
+ *        All the threads share a single PathFinder over the read-only network,
+ *        each scanning with its own workspace. The queries are read by chunks
+ *        that the threads take one query at a time, so that a few long
+ *        queries do not leave the other threads idle, and the results of a
+ *        chunk are written as soon as it is answered, one JSON object per
+ *        line and in the order of the query file.
+ */
+public class BatchRunner {
+
+    private static final int CHUNK_SIZE = 4096; // queries read, answered and written at once
+
+    // #### Attributes ####
+
+    private final Network network;
+    private final PathFinder finder;
+    private final int threads;
+
+    // statistics of the last run
+    private long[] latencies = new long[0]; // in ns, in the order of the query file
+    private int queryCount = 0;
+    private int foundCount = 0;
+    private long elapsed = 0; // in ns
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the BatchRunner class.
+     *
+     * @param network The network the queries are answered on.
+     * @param threads The number of threads answering the queries.
+     */
+    public BatchRunner(Network network, int threads) {
+        this.network = network;
+        this.finder = new PathFinder(network.getStops(), network.getTrips(), network.getRoutes(),
+                network.getTimetable(), network.getStopNameIndex());
+        this.threads = Math.max(1, threads);
+    }
+
+    // #### Methods ####
+
+    /**
+     * @brief Answers every query of a file and writes the results to another.
+     *
+     * @param queryFile  The path of the query file.
+     * @param resultFile The path of the result file, overwritten.
+     * @throws IOException If an error occurs while reading or writing a file.
+     */
+    public void run(String queryFile, String resultFile) throws IOException {
+        this.latencies = new long[CHUNK_SIZE];
+        this.queryCount = 0;
+        this.foundCount = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        long start = System.nanoTime();
+        try (BufferedReader in = new BufferedReader(new FileReader(queryFile));
+                BufferedWriter out = new BufferedWriter(new FileWriter(resultFile), 1 << 16)) {
+            String[][] chunk = new String[CHUNK_SIZE][];
+            String[] results = new String[CHUNK_SIZE];
+            int count;
+            while ((count = readChunk(in, chunk)) > 0) {
+                if (this.queryCount + count > this.latencies.length) {
+                    this.latencies = Arrays.copyOf(this.latencies, Math.max(this.latencies.length * 2,
+                            this.queryCount + count));
+                }
+                answer(pool, chunk, count, results);
+                for (int q = 0; q < count; q++) {
+                    out.write(results[q]);
+                    out.newLine();
+                }
+                this.queryCount += count;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        this.elapsed = System.nanoTime() - start;
+        this.latencies = Arrays.copyOf(this.latencies, this.queryCount);
+    }
+
+    /**
+     * @brief Answers the queries of a chunk, the threads taking the next
+     *        unanswered query until there is none left.
+     *
+     * @param pool    The threads.
+     * @param chunk   The fields of the queries.
+     * @param count   The number of queries in the chunk.
+     * @param results The JSON line of every query, written by this method.
+     * @throws IOException If a query failed unexpectedly.
+     */
+    private void answer(ExecutorService pool, String[][] chunk, int count, String[] results) throws IOException {
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger found = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < Math.min(this.threads, count); t++) {
+            tasks.add(() -> {
+                int q;
+                while ((q = next.getAndIncrement()) < count) {
+                    int id = this.queryCount + q + 1;
+                    long start = System.nanoTime();
+                    Journey journey = query(chunk[q]);
+                    long latency = System.nanoTime() - start;
+                    this.latencies[id - 1] = latency;
+                    if (journey != null && journey.isFound())
+                        found.incrementAndGet();
+                    results[q] = toJson(id, chunk[q], journey, latency);
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Query failed: " + e.getCause(), e.getCause());
+        }
+        this.foundCount += found.get();
+    }
+
+    /**
+     * @brief Answers a single query.
+     *
+     * @param fields The fields of the query line.
+     * @return The journey, or null if the line is not a valid query.
+     */
+    private Journey query(String[] fields) {
+        if (fields.length < 3)
+            return null;
+        int modeMask = Timetable.parseModes(fields.length > 3 ? fields[3] : "");
+        if (modeMask == 0)
+            return null;
+        LocalDate date;
+        try {
+            date = Calculator.parseDate(fields.length > 4 ? fields[4] : null);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return this.finder.findJourney(fields[0], fields[1], fields[2].replace(':', ';'), modeMask, date);
+    }
+
+    /**
+     * @brief Reads the next queries of the file.
+     *
+     * @param in    The reader of the query file.
+     * @param chunk The array receiving the fields of the queries.
+     * @return The number of queries read, 0 at the end of the file.
+     * @throws IOException If an error occurs while reading the file.
+     */
+    private int readChunk(BufferedReader in, String[][] chunk) throws IOException {
+        int count = 0;
+        String line;
+        while (count < chunk.length && (line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] fields = Parser.parseCSVLine(line);
+            if (this.queryCount == 0 && count == 0 && fields[0].equalsIgnoreCase("from"))
+                continue; // header
+            chunk[count++] = fields;
+        }
+        return count;
+    }
+
+    /**
+     * @brief Formats the result of a query as a JSON object on a single line.
+     *
+     * @param id      The number of the query in the file, from 1.
+     * @param fields  The fields of the query line.
+     * @param journey The journey, null if the line is not a valid query.
+     * @param latency The time taken to answer the query in ns.
+     * @return The JSON object.
+     */
+    private String toJson(int id, String[] fields, Journey journey, long latency) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"id\":").append(id);
+        json.append(",\"from\":");
+        JourneyJson.appendString(json, fields[0]);
+        json.append(",\"to\":");
+        JourneyJson.appendString(json, fields.length > 1 ? fields[1] : "");
+        json.append(",\"time\":");
+        JourneyJson.appendString(json, fields.length > 2 ? fields[2] : "");
+        json.append(",\"latency_us\":").append(latency / 1000);
+        JourneyJson.appendJourney(json, this.network, journey);
+        return json.append('}').toString();
+    }
+
+    /**
+     * @brief Prints the throughput and the latency percentiles of the last run.
+     */
+    public void printReport() {
+        System.out.println("[\033[92mINFO\033[0m] " + this.queryCount + " queries answered in "
+                + this.elapsed / 1_000_000 + " ms on " + this.threads + " thread(s) ("
+                + String.format("%.1f", getThroughput()) + " queries/s), " + this.foundCount + " journeys found.");
+        System.out.println("[\033[92mINFO\033[0m] Latency per query: p50 " + formatLatency(getLatencyPercentile(50))
+                + ", p90 " + formatLatency(getLatencyPercentile(90)) + ", p99 "
+                + formatLatency(getLatencyPercentile(99)) + ", max " + formatLatency(getLatencyPercentile(100)) + ".");
+    }
+
+    private static String formatLatency(long nanos) {
+        return String.format("%.3f ms", nanos / 1e6);
+    }
+
+    // #### Getters ####
+
+    public int getQueryCount() {
+        return this.queryCount;
+    }
+
+    public int getFoundCount() {
+        return this.foundCount;
+    }
+
+    /**
+     * @brief Returns the throughput of the last run.
+     *
+     * @return The number of queries answered per second, reading and writing
+     *         the files included.
+     */
+    public double getThroughput() {
+        return this.queryCount / Math.max(1e-9, this.elapsed / 1e9);
+    }
+
+    /**
+     * @brief Returns a percentile of the latencies of the last run (nearest
+     *        rank).
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The latency in ns, 0 if no query was answered.
+     */
+    public long getLatencyPercentile(double percentile) {
+        if (this.latencies.length == 0)
+            return 0;
+        long[] sorted = this.latencies.clone();
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+}
@@ -1,17 +1,24 @@
 package functional;
 
 import objects.Connexion;
+import objects.Route;
+import objects.Service;
 import objects.Stop;
 import objects.StopTime;
 import objects.Trip;
-import objects.Walk;
 import structures.BallTree;
+import structures.ServiceCalendar;
+import structures.StopNameIndex;
+import structures.StopSequences;
+import structures.Timetable;
 
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.stream.IntStream;
 
 public class Builder {
 
@@ -25,8 +32,9 @@ public class Builder {
                                            // a
                                            // better search efficiency
 
-    private List<Connexion> connexions = new ArrayList<>();
+    private Timetable timetable = null;
     private BallTree tree = null;
+    private StopNameIndex stopNameIndex = null;
 
     // #### Constructors ####
 
@@ -38,14 +46,53 @@ public class Builder {
      * @param average_walking_speed The average walking speed of a person in m/s.
      * @param ball_tree_leaf_size   The number of stops per leaf in the Ball Tree.
      */
-    Builder(double max_foot_distance, double average_walking_speed, int ball_tree_leaf_size) {
+    public Builder(double max_foot_distance, double average_walking_speed, int ball_tree_leaf_size) {
         this.MAX_FOOT_DISTANCE = max_foot_distance;
         this.AVERAGE_WALKING_SPEED = average_walking_speed;
         this.BALL_TREE_LEAFE_SIZE = ball_tree_leaf_size;
     }
 
-    public void buildConnexions(Map<String, Trip> trips) {
+    /**
+     * @brief Builds the connexions of every trip, sorts them by departure time and
+     *        stores them in a dense, integer-indexed Timetable.
+     *
+     * @param trips    The map of trips, with their ordered stop times.
+     * @param stopsMap The map of stops.
+     * @param routes   The map of routes, giving the transportation mode of each
+     *                 trip.
+     */
+    public void buildConnexions(Map<String, Trip> trips, Map<String, Stop> stopsMap, Map<String, Route> routes) {
+        // dense stop index
+        Stop[] stops = new Stop[stopsMap.size()];
+        Map<String, Integer> stopIndex = new HashMap<>();
+        for (Stop stop : stopsMap.values()) {
+            stopIndex.put(stop.getStopId(), stopIndex.size());
+            stops[stopIndex.size() - 1] = stop;
+        }
+
+        // dense trip index, along with the transportation mode of each trip
+        String[] tripIds = new String[trips.size()];
+        byte[] tripModes = new byte[trips.size()];
+        Map<String, Integer> tripIndex = new HashMap<>();
+        int stopTimeCount = 0;
+        for (Trip trip : trips.values()) {
+            int index = tripIndex.size();
+            tripIndex.put(trip.getTripId(), index);
+            tripIds[index] = trip.getTripId();
+            Route route = routes.get(trip.getRouteId());
+            tripModes[index] = (byte) Timetable.modeOf(route == null ? null : route.getRouteType());
+            stopTimeCount += trip.getstopTimes().size();
+        }
 
+        // stop sequences of the connexions of every trip, the trips being visited
+        // in the order of their dense index
+        int[] sequenceOffsets = new int[trips.size() + 1];
+        int[] departureSequences = new int[stopTimeCount];
+        int[] arrivalSequences = new int[stopTimeCount];
+        int sequenceCount = 0;
+        int tripNumber = 0;
+
+        List<Connexion> connexions = new ArrayList<>();
         for (Trip trip : trips.values()) {
             List<StopTime> ordered_StopTimes = trip.getstopTimes(); // a list of ordered stopTimes
             for (int stop_sequence = 0; stop_sequence < ordered_StopTimes.size() - 1; stop_sequence++) {
@@ -57,53 +104,220 @@ public class Builder {
                     System.out.println("[\033[91mERROR\033[0m] Departure or destination is null");
                     continue;
                 }
+                if (!stopIndex.containsKey(departure.getStopId()) || !stopIndex.containsKey(destination.getStopId())) {
+                    continue; // a stop time referencing an unknown stop can never be reached
+                }
 
                 Connexion connexion = new Connexion(trip.getTripId(), departure.getStopId(),
                         destination.getStopId(),
                         departure.getTime(), destination.getTime());
-                this.connexions.add(connexion);
+                connexions.add(connexion);
+                departureSequences[sequenceCount] = departure.getStopSequence();
+                arrivalSequences[sequenceCount++] = destination.getStopSequence();
             }
+            sequenceOffsets[++tripNumber] = sequenceCount;
+        }
+        Collections.sort(connexions); // sort connexions by departure time
+
+        // struct-of-arrays layout used by the connection scan
+        int size = connexions.size();
+        int[] departures = new int[size];
+        int[] arrivals = new int[size];
+        int[] fromStops = new int[size];
+        int[] toStops = new int[size];
+        int[] tripsOfConnexions = new int[size];
+        byte[] modes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            Connexion connexion = connexions.get(i);
+            departures[i] = connexion.getDepartureTime();
+            arrivals[i] = connexion.getArrivalTime();
+            fromStops[i] = stopIndex.get(connexion.getFromId());
+            toStops[i] = stopIndex.get(connexion.getToId());
+            tripsOfConnexions[i] = tripIndex.get(connexion.getTripId());
+            modes[i] = tripModes[tripsOfConnexions[i]];
+        }
+        StopSequences stopSequences = new StopSequences(sequenceOffsets,
+                Arrays.copyOf(departureSequences, sequenceCount), Arrays.copyOf(arrivalSequences, sequenceCount));
+        this.timetable = new Timetable(stops, stopIndex, tripIds, tripIndex, departures, arrivals, fromStops,
+                toStops, tripsOfConnexions, modes).withStopSequences(stopSequences);
+    }
+
+    /**
+     * @brief Builds the service calendars, each trip of the timetable being
+     *        linked to the days it runs on. Without any service, every trip runs
+     *        every day.
+     * 
+     * @param services The map of services.
+     * @param trips    The map of trips.
+     */
+    public void buildCalendar(Map<String, Service> services, Map<String, Trip> trips) {
+        if (this.timetable == null) {
+            System.out.println("[\033[91mERROR\033[0m] Timetable not built yet. Please build the connexions first.");
+            return;
+        }
+        if (services.isEmpty()) {
+            this.timetable = this.timetable.withCalendar(null, null);
+            return;
         }
-        Collections.sort(this.connexions); // sort connexions by departure time
+        ServiceCalendar calendar = ServiceCalendar.of(services.values());
+        int[] tripServices = new int[this.timetable.getTripCount()];
+        for (int t = 0; t < tripServices.length; t++) {
+            Trip trip = trips.get(this.timetable.getTripId(t));
+            tripServices[t] = trip == null || trip.getServiceId() == null ? -1
+                    : calendar.getServiceIndex(trip.getServiceId());
+        }
+        this.timetable = this.timetable.withCalendar(calendar, tripServices);
     }
 
-    public void buildBallTree(Map<String, Stop> stopsMap) {
-        Collection<Stop> stops = stopsMap.values();
+    /**
+     * @brief Builds the BallTree over the stops of the timetable, a stop being
+     *        identified in the tree by its dense stop index.
+     */
+    public void buildBallTree() {
+        if (this.timetable == null) {
+            System.out.println("[\033[91mERROR\033[0m] Timetable not built yet. Please build the connexions first.");
+            return;
+        }
+        Stop[] stops = new Stop[this.timetable.getStopCount()];
+        for (int i = 0; i < stops.length; i++) {
+            stops[i] = this.timetable.getStop(i);
+        }
         this.tree = new BallTree(stops, this.BALL_TREE_LEAFE_SIZE);
     }
 
-    public void buildWalks(Map<String, Stop> stopsMap) {
+    /**
+     * @brief Builds the index of the stops by normalized name.
+     * 
+     * @param stopsMap The map of stops.
+     */
+    public void buildStopNameIndex(Map<String, Stop> stopsMap) {
+        this.stopNameIndex = new StopNameIndex(stopsMap.values());
+    }
+
+    /**
+     * @brief Builds the walks between every pair of stops closer than the
+     *        maximum foot distance.
+     * 
+     *        The stops are queried against the (read-only) BallTree in parallel.
+     *        Each stop only keeps its neighbours of higher index, so the distance
+     *        of every unordered pair is computed once, and each task writes to
+     *        its own slot. The pairs are then merged sequentially into a
+     *        compressed sparse row adjacency of the timetable, in both
+     *        directions.
+     */
+    public void buildWalks() {
         if (this.tree == null) {
             System.out.println("[\033[91mERROR\033[0m] BallTree not built yet. Please build the BallTree first.");
             return;
         }
+        if (this.timetable == null) {
+            System.out.println("[\033[91mERROR\033[0m] Timetable not built yet. Please build the connexions first.");
+            return;
+        }
 
-        for (Stop stopA : stopsMap.values()) {
-            Collection<Stop> neighbours = this.tree.query_neighbours(stopA, MAX_FOOT_DISTANCE);
+        // walks are indexed by the dense stop index of the timetable, which is
+        // also the index of the stops in the tree
+        int stopCount = this.timetable.getStopCount();
 
-            for (Stop stopB : neighbours) {
-                if (stopA.getStopId().equals(stopB.getStopId()))
-                    continue;
+        // neighbours of higher index and walk durations, one slot per stop
+        int[][] pairTargets = new int[stopCount][];
+        int[][] pairDurations = new int[stopCount][];
+        IntStream.range(0, stopCount).parallel().forEach(a -> {
+            Stop stopA = this.timetable.getStop(a);
+            Neighbours neighbours = new Neighbours(a, MAX_FOOT_DISTANCE);
+            this.tree.forEachInRange(stopA.getStopLat(), stopA.getStopLon(), MAX_FOOT_DISTANCE, neighbours);
+            int[] durations = new int[neighbours.count];
+            for (int k = 0; k < neighbours.count; k++) {
+                double walkDuration = neighbours.distances[k] / AVERAGE_WALKING_SPEED;
+                durations[k] = (int) walkDuration;
+            }
+            pairTargets[a] = Arrays.copyOf(neighbours.targets, neighbours.count);
+            pairDurations[a] = durations;
+        });
 
-                double distance = stopA.getDistanceToOther(stopB);
-                if (distance < MAX_FOOT_DISTANCE) {
-                    double walkDuration = distance / AVERAGE_WALKING_SPEED;
-                    int duration = (int) walkDuration;
-                    Walk walk = new Walk(stopA, stopB, duration);
-                    stopA.addWalk(walk);
-                }
+        // every pair is emitted in both directions
+        int[] offsets = new int[stopCount + 1];
+        for (int a = 0; a < stopCount; a++) {
+            offsets[a + 1] += pairTargets[a].length;
+            for (int b : pairTargets[a]) {
+                offsets[b + 1]++;
+            }
+        }
+        for (int s = 0; s < stopCount; s++) {
+            offsets[s + 1] += offsets[s];
+        }
+        int[] targets = new int[offsets[stopCount]];
+        int[] durations = new int[offsets[stopCount]];
+        int[] next = Arrays.copyOf(offsets, stopCount);
+        for (int a = 0; a < stopCount; a++) {
+            for (int k = 0; k < pairTargets[a].length; k++) {
+                int b = pairTargets[a][k];
+                targets[next[a]] = b;
+                durations[next[a]++] = pairDurations[a][k];
+                targets[next[b]] = a;
+                durations[next[b]++] = pairDurations[a][k];
+            }
+        }
+        this.timetable = this.timetable.withWalks(offsets, targets, durations);
+    }
+
+    /**
+     * @brief Collects the neighbours of higher index than a given stop (the
+     *        pair is handled from the other stop otherwise) strictly closer than
+     *        a distance.
+     */
+    private static class Neighbours implements BallTree.NeighbourVisitor {
+        final int stop;
+        final double maxDistance;
+        int[] targets = new int[16];
+        double[] distances = new double[16];
+        int count = 0;
+
+        Neighbours(int stop, double maxDistance) {
+            this.stop = stop;
+            this.maxDistance = maxDistance;
+        }
+
+        @Override
+        public void visit(int other, double distance) {
+            if (other <= this.stop || distance >= this.maxDistance)
+                return;
+            if (this.count == this.targets.length) {
+                this.targets = Arrays.copyOf(this.targets, this.count * 2);
+                this.distances = Arrays.copyOf(this.distances, this.count * 2);
             }
+            this.targets[this.count] = other;
+            this.distances[this.count++] = distance;
         }
     }
 
     // #### Getters ####
     /**
-     * @brief Getter for the list of connexions.
+     * @brief Getter for the timetable.
+     * 
+     * @return The Timetable holding the connexions sorted by departure time,
+     *         stored as parallel primitive arrays over dense stop and trip
+     *         indices.
+     */
+    public Timetable getTimetable() {
+        return this.timetable;
+    }
+
+    /**
+     * @brief Getter for the BallTree.
+     * 
+     * @return The BallTree over the stops of the timetable, null if not built.
+     */
+    public BallTree getBallTree() {
+        return this.tree;
+    }
+
+    /**
+     * @brief Getter for the stop name index.
      * 
-     * @return A list of Connexion objects.
-     *         Each Connexion object representing a connection between two stops.
+     * @return The StopNameIndex mapping normalized names to stops.
      */
-    public List<Connexion> getConnexions() {
-        return this.connexions;
+    public StopNameIndex getStopNameIndex() {
+        return this.stopNameIndex;
     }
 }
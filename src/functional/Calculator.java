@@ -3,9 +3,18 @@ package functional;
 import objects.Stop;
 
 import java.lang.Math;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 
 public class Calculator {
 
+    public static final double EARTH_RADIUS = 6371000; // in meters
+
+    // relative margin of the equirectangular prefilter, far above its error
+    // (below 1e-7 for pairs closer than 5 km at Belgian latitudes)
+    public static final double PREFILTER_MARGIN = 1e-3;
+
     /**
      * @brief Calculates the distance to another stop using the haversine distance
      *        formula.
@@ -14,24 +23,79 @@ public class Calculator {
      * @return The distance in meters.
      */
     public static double haversine_distance(Stop stopA, Stop stopB) {
-        double EARTH_RADIUS = 6371000; // in meters
-
-        // converting values to radians
-        double delta_lat = Math.toRadians(stopB.getStopLat() - stopA.getStopLat()); // O(1) -> angdeg / 180.0 * PI
-        double delta_lon = Math.toRadians(stopB.getStopLon() - stopA.getStopLon()); // O(1) -> angdeg / 180.0 * PI
-
-        double latA = Math.toRadians(stopA.getStopLat()); // O(1)
+        double latA = Math.toRadians(stopA.getStopLat()); // O(1) -> angdeg / 180.0 * PI
         double latB = Math.toRadians(stopB.getStopLat()); // O(1)
+        double lonA = Math.toRadians(stopA.getStopLon()); // O(1)
+        double lonB = Math.toRadians(stopB.getStopLon()); // O(1)
+        return haversine_distance(latA, lonA, Math.cos(latA), latB, lonB, Math.cos(latB));
+    }
+
+    /**
+     * @brief Calculates the haversine distance between two points whose
+     *        coordinates are already converted to radians, along with the cosine
+     *        of their latitude.
+     * 
+     * @param latA    The latitude of the first point in radians.
+     * @param lonA    The longitude of the first point in radians.
+     * @param cosLatA The cosine of latA.
+     * @param latB    The latitude of the second point in radians.
+     * @param lonB    The longitude of the second point in radians.
+     * @param cosLatB The cosine of latB.
+     * @return The distance in meters.
+     */
+    public static double haversine_distance(double latA, double lonA, double cosLatA, double latB, double lonB,
+            double cosLatB) {
+        double sinHalfDeltaLat = Math.sin((latB - latA) / 2);
+        double sinHalfDeltaLon = Math.sin((lonB - lonA) / 2);
+        double a = sinHalfDeltaLat * sinHalfDeltaLat + sinHalfDeltaLon * sinHalfDeltaLon * cosLatA * cosLatB;
+        return 2 * Math.asin(Math.sqrt(a)) * EARTH_RADIUS;
+    }
 
-        // applying haversine formula
-        double a = Math.pow(Math.sin(delta_lat / 2), 2) +
-                Math.pow(Math.sin(delta_lon / 2), 2) *
-                        Math.cos(latA) *
-                        Math.cos(latB);
-        double c = 2 * Math.asin(Math.sqrt(a));
-        double distance = c * EARTH_RADIUS;
+    /**
+     * @brief Calculates the equirectangular approximation of the distance
+     *        between two points: the longitude difference is scaled by the mean
+     *        cosine of the latitudes and the plane distance is taken. It uses no
+     *        trigonometric function, and its error grows with the square of the
+     *        distance: below 1e-7 (relative) for pairs closer than 5 km at
+     *        Belgian latitudes, see test/HaversineBenchmark.
+     * 
+     * @param latA    The latitude of the first point in radians.
+     * @param lonA    The longitude of the first point in radians.
+     * @param cosLatA The cosine of latA.
+     * @param latB    The latitude of the second point in radians.
+     * @param lonB    The longitude of the second point in radians.
+     * @param cosLatB The cosine of latB.
+     * @return The approximate distance in meters.
+     */
+    public static double equirectangular_distance(double latA, double lonA, double cosLatA, double latB,
+            double lonB, double cosLatB) {
+        double x = (lonB - lonA) * (cosLatA + cosLatB) * 0.5;
+        double y = latB - latA;
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS;
+    }
 
-        return distance;
+    /**
+     * @brief Cheap prefilter for "is the distance at most maxDist?": false means
+     *        the points are certainly farther, true means the exact haversine
+     *        distance still has to be checked. Valid for distances up to tens of
+     *        kilometers, the error of the approximation staying far below
+     *        PREFILTER_MARGIN.
+     * 
+     * @param latA    The latitude of the first point in radians.
+     * @param lonA    The longitude of the first point in radians.
+     * @param cosLatA The cosine of latA.
+     * @param latB    The latitude of the second point in radians.
+     * @param lonB    The longitude of the second point in radians.
+     * @param cosLatB The cosine of latB.
+     * @param maxDist The distance in meters.
+     * @return Whether the points may be within maxDist of each other.
+     */
+    public static boolean may_be_within(double latA, double lonA, double cosLatA, double latB, double lonB,
+            double cosLatB, double maxDist) {
+        double x = (lonB - lonA) * (cosLatA + cosLatB) * 0.5;
+        double y = latB - latA;
+        double limit = maxDist * (1 + PREFILTER_MARGIN) / EARTH_RADIUS;
+        return x * x + y * y <= limit * limit;
     }
 
     /**
@@ -55,6 +119,25 @@ public class Calculator {
         return hours * 3600 + minutes * 60 + seconds;
     }
 
+    /**
+     * @brief Converts a date to a LocalDate.
+     * 
+     * @param date The date as 'YYYY-MM-DD' or, as in the GTFS files, 'YYYYMMDD'.
+     * @return The date, null if date is null or empty.
+     * @throws IllegalArgumentException If the date is invalid.
+     */
+    public static LocalDate parseDate(String date) {
+        if (date == null || date.isBlank())
+            return null;
+        try {
+            date = date.trim();
+            return LocalDate.parse(date, date.contains("-") ? DateTimeFormatter.ISO_LOCAL_DATE
+                    : DateTimeFormatter.BASIC_ISO_DATE);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + date, e);
+        }
+    }
+
     public static String intToTime(int seconds) {
         int days = seconds / 86400; 
         int hours = (seconds % 86400) / 3600;
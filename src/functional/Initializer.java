@@ -1,12 +1,17 @@
 package functional;
 
-import objects.Connexion;
 import objects.Trip;
 import objects.Stop;
 import objects.Route;
+import structures.BallTree;
+import structures.MinuteIndex;
+import structures.Network;
+import structures.StopNameIndex;
+import structures.Timetable;
 
-import java.util.List;
+import java.io.IOException;
 import java.util.Map;
+import java.util.Set;
 
 import java.time.Duration;
 import java.time.Instant;
@@ -16,49 +21,217 @@ public class Initializer {
     Parser parser;
     Builder builder;
 
+    private final String directory;
+    private final double maxFootDistance;
+    private final double averageWalkingSpeed;
+    private final int leafSize;
+    private String snapshotFile = null; // no snapshot by default
+    private volatile Network network = null;
+    private BallTree ballTree = null; // built on first use when loaded from a snapshot
+
     public Initializer(String directory, double maxFootDistance, double averageWalkingSpeed, int leafSize) {
-        this.parser = new Parser(directory);
+        this(directory, maxFootDistance, averageWalkingSpeed, leafSize, Runtime.getRuntime().availableProcessors());
+    }
+
+    public Initializer(String directory, double maxFootDistance, double averageWalkingSpeed, int leafSize,
+            int parserThreads) {
+        this.parser = new Parser(directory, parserThreads);
         this.builder = new Builder(maxFootDistance, averageWalkingSpeed, leafSize);
+        this.directory = directory;
+        this.maxFootDistance = maxFootDistance;
+        this.averageWalkingSpeed = averageWalkingSpeed;
+        this.leafSize = leafSize;
+    }
+
+    /**
+     * @brief Sets the binary snapshot of the network: setup loads the network
+     *        from it when it was built from the current GTFS files, and writes
+     *        it otherwise.
+     * 
+     * @param snapshotFile The path of the snapshot file, null for none.
+     */
+    public void setSnapshotFile(String snapshotFile) {
+        this.snapshotFile = snapshotFile;
     }
 
     public void setup(boolean is_timed) {
+        long fingerprint = 0;
+        if (this.snapshotFile != null) {
+            try {
+                Instant startLoad = Instant.now();
+                fingerprint = Snapshot.fingerprint(this.directory, this.maxFootDistance, this.averageWalkingSpeed);
+                Network loaded = Snapshot.load(this.snapshotFile, fingerprint);
+                if (loaded != null) {
+                    this.network = loaded;
+                    if (is_timed) {
+                        System.out.println("[\033[92mINFO\033[0m] Network loaded from snapshot " + this.snapshotFile
+                            + " in " + Duration.between(startLoad, Instant.now()).toMillis() + " ms.");
+                    }
+                    return;
+                }
+                if (is_timed) {
+                    System.out.println("[\033[92mINFO\033[0m] No up-to-date snapshot, building the network.");
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading snapshot: " + this.snapshotFile);
+                e.printStackTrace();
+            }
+        }
+
+        build(this.parser, this.builder, is_timed);
+        this.network = new Network(parser.getAllStops(), parser.getAllTrips(), parser.getAllRoutes(),
+            builder.getTimetable(), builder.getStopNameIndex());
+        saveSnapshot(this.network, fingerprint, is_timed);
+    }
+
+    /**
+     * @brief Rebuilds the network from the current GTFS files, while the
+     *        previous network stays untouched and usable by other threads.
+     *
+     *        Only the files of the given agency directories (and of the new
+     *        ones) are read again, the others being reused from the previous
+     *        build; the connexions, the BallTree, the walks and the name index
+     *        are built again over all of them, since walks link the stops of
+     *        different agencies. After a snapshot load there are no files to
+     *        reuse, so every agency is read.
+     *
+     * @param agencies The names of the agency directories that changed, null
+     *                 for all of them.
+     * @param is_timed Whether the duration of every step is printed.
+     * @return The new network, also returned by getNetwork from then on.
+     */
+    public Network reload(Set<String> agencies, boolean is_timed) {
+        long fingerprint = 0; // of the files before they are read, so that a change while reading is seen later
+        if (this.snapshotFile != null) {
+            try {
+                fingerprint = Snapshot.fingerprint(this.directory, this.maxFootDistance, this.averageWalkingSpeed);
+            } catch (IOException e) {
+                System.err.println("Error reading GTFS directory: " + this.directory);
+                e.printStackTrace();
+            }
+        }
+        Parser freshParser = new Parser(this.directory, this.parser.getThreads());
+        freshParser.reuse(this.parser, agencies);
+        Builder freshBuilder = new Builder(this.maxFootDistance, this.averageWalkingSpeed, this.leafSize);
+        build(freshParser, freshBuilder, is_timed);
+        Network fresh = new Network(freshParser.getAllStops(), freshParser.getAllTrips(),
+            freshParser.getAllRoutes(), freshBuilder.getTimetable(), freshBuilder.getStopNameIndex());
+
+        synchronized (this) {
+            this.parser = freshParser;
+            this.builder = freshBuilder;
+            this.ballTree = null;
+            this.network = fresh;
+        }
+        saveSnapshot(fresh, fingerprint, is_timed);
+        return fresh;
+    }
+
+    /**
+     * @brief Writes a network to the snapshot file, if one is set.
+     * 
+     * @param network     The network.
+     * @param fingerprint The fingerprint of the GTFS files it was built from.
+     * @param is_timed    Whether the duration of the writing is printed.
+     */
+    private void saveSnapshot(Network network, long fingerprint, boolean is_timed) {
+        if (this.snapshotFile != null) {
+            try {
+                Instant startSave = Instant.now();
+                Snapshot.save(this.snapshotFile, fingerprint, network);
+                if (is_timed) {
+                    System.out.println("[\033[92mINFO\033[0m] Snapshot " + this.snapshotFile + " written in "
+                        + Duration.between(startSave, Instant.now()).toMillis() + " ms.");
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing snapshot: " + this.snapshotFile);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @brief Builds the network from the GTFS files.
+     * 
+     * @param parser   The parser reading the files.
+     * @param builder  The builder of the timetable, the BallTree, the walks and
+     *                 the name index.
+     * @param is_timed Whether the duration of every step is printed.
+     */
+    private static void build(Parser parser, Builder builder, boolean is_timed) {
         if (is_timed) {
             Instant startRead = Instant.now();
             parser.readFiles();
             Instant endRead = Instant.now();
             Duration durationRead = Duration.between(startRead, endRead);
-            System.out.println("[\033[92mINFO\033[0m] Files read in " + durationRead.toMillis() + " ms.");
+            long sequentialMillis = 0;
+            for (Map.Entry<String, Long> timing : parser.getFileTimings().entrySet()) {
+                System.out.println("[\033[92mINFO\033[0m]   " + timing.getKey() + " read in " + timing.getValue()
+                    + " ms.");
+                sequentialMillis += timing.getValue();
+            }
+            System.out.println("[\033[92mINFO\033[0m] Files read in " + durationRead.toMillis() + " ms on "
+                + parser.getThreads() + " thread(s) (" + sequentialMillis + " ms of file reading, speedup x"
+                + String.format("%.2f", sequentialMillis / (double) Math.max(1, durationRead.toMillis())) + ").");
             System.out.println("[\033[92mINFO\033[0m] Trips: " + parser.getAllTrips().size());
             System.out.println("[\033[92mINFO\033[0m] Stops: " + parser.getAllStops().size());
             System.out.println("[\033[92mINFO\033[0m] Routes: " + parser.getAllRoutes().size());
 
             Instant startBuild = Instant.now();
-            builder.buildConnexions(parser.getAllTrips());
+            builder.buildConnexions(parser.getAllTrips(), parser.getAllStops(), parser.getAllRoutes());
             Instant endBuild = Instant.now();
             Duration durationBuild = Duration.between(startBuild, endBuild);
-            System.out.println("[\033[92mINFO\033[0m] " + builder.getConnexions().size()
+            System.out.println("[\033[92mINFO\033[0m] " + builder.getTimetable().getConnexionCount()
                 + " connexions built and sorted in " + durationBuild.toMillis() + " ms.");
+            MinuteIndex minuteIndex = builder.getTimetable().getMinuteIndex();
+            int busiest = minuteIndex.busiestMinute();
+            if (busiest >= 0) {
+                System.out.println("[\033[92mINFO\033[0m] " + minuteIndex.getMinuteCount()
+                    + " minutes indexed, the busiest being " + String.format("%02d:%02d", busiest / 60, busiest % 60)
+                    + " with " + minuteIndex.count(busiest) + " departures.");
+            }
+
+            Instant startCalendar = Instant.now();
+            builder.buildCalendar(parser.getAllServices(), parser.getAllTrips());
+            Instant endCalendar = Instant.now();
+            Duration durationCalendar = Duration.between(startCalendar, endCalendar);
+            if (builder.getTimetable().getCalendar() != null) {
+                System.out.println("[\033[92mINFO\033[0m] Calendar of " + builder.getTimetable().getCalendar()
+                    .getServiceCount() + " services over " + builder.getTimetable().getCalendar().getDayCount()
+                    + " days built in " + durationCalendar.toMillis() + " ms.");
+            }
 
             Instant startBallTree = Instant.now();
-            builder.buildBallTree(parser.getAllStops());
+            builder.buildBallTree();
             Instant endBallTree = Instant.now();
             Duration durationBallTree = Duration.between(startBallTree, endBallTree);
             System.out.println("[\033[92mINFO\033[0m] BallTree built in " + durationBallTree.toMillis() + " ms.");
 
             Instant startWalks = Instant.now();
-            builder.buildWalks(parser.getAllStops());
+            builder.buildWalks();
             Instant endWalks = Instant.now();
             Duration durationWalks = Duration.between(startWalks, endWalks);
-            System.out.println("[\033[92mINFO\033[0m] Walks built in " + durationWalks.toMillis() + " ms.");
+            System.out.println("[\033[92mINFO\033[0m] " + builder.getTimetable().getWalkCount() + " walks built in "
+                + durationWalks.toMillis() + " ms.");
+
+            Instant startNames = Instant.now();
+            builder.buildStopNameIndex(parser.getAllStops());
+            Instant endNames = Instant.now();
+            Duration durationNames = Duration.between(startNames, endNames);
+            System.out.println("[\033[92mINFO\033[0m] " + builder.getStopNameIndex().size()
+                + " stop names indexed in " + durationNames.toMillis() + " ms.");
 
             System.out.println("[\033[92mINFO\033[0m] All data loaded and processed in " + (durationRead.toMillis()
-                + durationBuild.toMillis() + durationBallTree.toMillis() + durationWalks.toMillis()) + " ms.");
+                + durationBuild.toMillis() + durationCalendar.toMillis() + durationBallTree.toMillis()
+                + durationWalks.toMillis() + durationNames.toMillis()) + " ms.");
 
         } else {
             parser.readFiles();
-            builder.buildConnexions(parser.getAllTrips());
-            builder.buildBallTree(parser.getAllStops());
-            builder.buildWalks(parser.getAllStops());
+            builder.buildConnexions(parser.getAllTrips(), parser.getAllStops(), parser.getAllRoutes());
+            builder.buildCalendar(parser.getAllServices(), parser.getAllTrips());
+            builder.buildBallTree();
+            builder.buildWalks();
+            builder.buildStopNameIndex(parser.getAllStops());
         }
     }
 
@@ -71,7 +244,7 @@ public class Initializer {
      * Stop object itself.
      */
     public Map<String, Stop> getStops() {
-        return this.parser.getAllStops();
+        return this.network.getStops();
     }
 
     /*
@@ -81,7 +254,7 @@ public class Initializer {
      * Trip object itself.
      */
     public Map<String, Trip> getTrips() {
-        return this.parser.getAllTrips();
+        return this.network.getTrips();
     }
 
     /*
@@ -91,16 +264,66 @@ public class Initializer {
      * the Route object itself.
      */
     public Map<String, Route> getRoutes() {
-        return this.parser.getAllRoutes();
+        return this.network.getRoutes();
+    }
+
+    /*
+     * @brief Returns the index of the stops by normalized name.
+     * 
+     * @return The StopNameIndex built during setup.
+     */
+    public StopNameIndex getStopNameIndex() {
+        return this.network.getStopNameIndex();
+    }
+
+    /*
+     * @brief Returns the timetable.
+     * 
+     * @return The timetable holding all the connections between stops, sorted by
+     * departure time.
+     */
+    public Timetable getTimetable() {
+        return this.network.getTimetable();
+    }
+
+    /*
+     * @brief Returns the BallTree over the stops of the timetable, identified by
+     * their dense stop index. A snapshot does not hold it, so it is then built
+     * on the first call.
+     * 
+     * @return The BallTree of the network.
+     */
+    public synchronized BallTree getBallTree() {
+        if (this.ballTree == null) {
+            this.ballTree = builder.getBallTree();
+        }
+        if (this.ballTree == null) {
+            Timetable timetable = this.network.getTimetable();
+            Stop[] stops = new Stop[timetable.getStopCount()];
+            for (int i = 0; i < stops.length; i++) {
+                stops[i] = timetable.getStop(i);
+            }
+            this.ballTree = new BallTree(stops, this.leafSize);
+        }
+        return this.ballTree;
+    }
+
+    /*
+     * @brief Returns the average walking speed.
+     * 
+     * @return The average walking speed in m/s the walks were built with.
+     */
+    public double getAverageWalkingSpeed() {
+        return this.averageWalkingSpeed;
     }
 
     /*
-     * @brief Returns all the connections.
+     * @brief Returns the network.
      * 
-     * @return A list of all connections between stops.
+     * @return The network built or loaded during setup.
      */
-    public List<Connexion> getConnexions() {
-        return this.builder.getConnexions();
+    public Network getNetwork() {
+        return this.network;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package functional;
+
+import objects.Connexion;
+import objects.Route;
+import structures.Journey;
+import structures.Network;
+
+/**
+ * @brief Formats journeys as JSON, for the result file of the BatchRunner and
+ *        the responses of the RoutingServer.
+ */
+class JourneyJson {
+
+    /**
+     * @brief Appends the status of a journey and, if it was found, its times
+     *        and legs as fields of a JSON object.
+     *
+     * @param json    The JSON object being built, a field being already written.
+     * @param network The network the journey was found on.
+     * @param journey The journey, null if the query is not valid.
+     */
+    static void appendJourney(StringBuilder json, Network network, Journey journey) {
+        json.append(",\"status\":\"").append(journey == null ? "INVALID_QUERY" : journey.getStatus()).append('"');
+        if (journey == null || !journey.isFound())
+            return;
+        json.append(",\"departure\":\"").append(Calculator.intToTime(journey.getDepartureTime())).append('"');
+        json.append(",\"arrival\":\"").append(Calculator.intToTime(journey.getArrivalTime())).append('"');
+        json.append(",\"duration\":").append(journey.getArrivalTime() - journey.getDepartureTime());
+        json.append(",\"transfers\":").append(journey.getTransfers());
+        json.append(",\"legs\":[");
+        boolean first = true;
+        for (Connexion leg : journey.getLegs()) {
+            if (leg.getTripId() == null
+                    && (leg.getFromId().equals(leg.getToId()) || leg.getDepartureTime() == leg.getArrivalTime()))
+                continue; // empty walk, not printed by findPath either
+            if (!first)
+                json.append(',');
+            first = false;
+            appendLeg(json, network, leg);
+        }
+        json.append(']');
+    }
+
+    /**
+     * @brief Appends a leg of a journey as a JSON object.
+     *
+     * @param json    The JSON being built.
+     * @param network The network the journey was found on.
+     * @param leg     The leg, a whole trip or a walk.
+     */
+    private static void appendLeg(StringBuilder json, Network network, Connexion leg) {
+        if (leg.getTripId() == null) {
+            json.append("{\"mode\":\"WALK\"");
+        } else {
+            Route route = network.getRoutes().get(network.getTrips().get(leg.getTripId()).getRouteId());
+            json.append("{\"mode\":");
+            appendString(json, route.getRouteType());
+            json.append(",\"route\":");
+            appendString(json, route.getRouteShortName());
+            json.append(",\"trip\":");
+            appendString(json, leg.getTripId());
+        }
+        json.append(",\"from\":");
+        appendString(json, network.getStops().get(leg.getFromId()).getStopName());
+        json.append(",\"departure\":\"").append(Calculator.intToTime(leg.getDepartureTime())).append('"');
+        json.append(",\"to\":");
+        appendString(json, network.getStops().get(leg.getToId()).getStopName());
+        json.append(",\"arrival\":\"").append(Calculator.intToTime(leg.getArrivalTime())).append("\"}");
+    }
+
+    /**
+     * @brief Appends a string as a JSON string literal.
+     *
+     * @param json  The JSON being built.
+     * @param value The string, null being written as null.
+     */
+    static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -1,11 +1,26 @@
 package functional;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import objects.*;
+import structures.ByteStringTable;
 
 public class Parser {
 
@@ -22,35 +37,236 @@ public class Parser {
     private Map<String, Trip> allTrips = new HashMap<>();
     private Map<String, Stop> allStops = new HashMap<>();
     private Map<String, Route> allRoutes = new HashMap<>();
+    private Map<String, Service> allServices = new HashMap<>(); // empty if no agency has calendars
+
+    // files of every agency read, kept so that a reload can reuse them
+    private Map<String, Agency> agencies = new LinkedHashMap<>();
+    private Parser previous = null; // parser whose agencies are reused, null for none
+    private Set<String> reloaded = null; // agencies read again, null for all
+
+    private static final long MAP_CHUNK = 1L << 28; // bytes of stop_times.csv mapped at once (256 MB)
+
+    private int threads; // number of threads reading the files
+    private Map<String, Long> fileTimings = new LinkedHashMap<>(); // file -> reading time in ms
 
     // #### Constructors ####
 
     /**
-     * @brief Constructor for the Parser class.
+     * @brief Constructor for the Parser class, reading the files on as many
+     *        threads as there are available processors.
      * 
      * @param directory The directory where the GTFS files are located.
      */
     public Parser(String directory) {
+        this(directory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @brief Constructor for the Parser class.
+     * 
+     * @param directory The directory where the GTFS files are located.
+     * @param threads   The number of threads reading the files (1 reads them
+     *                  one after another).
+     */
+    public Parser(String directory, int threads) {
         this.directory = directory;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @brief Reuses the files already read by another parser, except for some
+     *        agencies, so that readFiles only reads the files of those
+     *        agencies (and of the agencies the other parser did not read).
+     * 
+     * @param previous The parser that read the current files.
+     * @param reloaded The names of the agency directories to read again, null
+     *                 to read every agency again.
+     */
+    public void reuse(Parser previous, Set<String> reloaded) {
+        this.previous = previous;
+        this.reloaded = reloaded;
     }
 
     /**
      * @brief Reads all GTFS files from the specified directory and loads them into
      *        corresponding maps.
+     * 
+     *        The agencies, and the files of each agency, are read concurrently:
+     *        trips, stops and routes are independent, while the stop times of an
+     *        agency are read once its trips are loaded. Every file is loaded into
+     *        its own map, and the maps are merged afterwards in the order of the
+     *        agencies, so the result does not depend on the scheduling.
      */
     public void readFiles() {
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        try {
+            // one set of futures per agency
+            List<CompletableFuture<Timed<Map<String, Trip>>>> trips = new ArrayList<>();
+            List<CompletableFuture<Timed<Map<String, Stop>>>> stops = new ArrayList<>();
+            List<CompletableFuture<Timed<Map<String, Route>>>> routes = new ArrayList<>();
+            List<CompletableFuture<Timed<Map<String, Trip>>>> stopTimes = new ArrayList<>();
+            List<CompletableFuture<Timed<Map<String, Service>>>> services = new ArrayList<>();
+            String[] entreprises = listEntreprises();
+            for (String entreprise : entreprises) {
+                String filePath = directory + "/" + entreprise + "/";
+                Agency kept = reusedAgency(entreprise);
+                if (kept != null) { // already read, its trips holding their stop times
+                    trips.add(CompletableFuture.completedFuture(new Timed<>(kept.trips, 0)));
+                    stops.add(CompletableFuture.completedFuture(new Timed<>(kept.stops, 0)));
+                    routes.add(CompletableFuture.completedFuture(new Timed<>(kept.routes, 0)));
+                    stopTimes.add(CompletableFuture.completedFuture(new Timed<>(kept.trips, 0)));
+                    services.add(CompletableFuture.completedFuture(new Timed<>(kept.services, 0)));
+                    continue;
+                }
+                CompletableFuture<Timed<Map<String, Trip>>> agencyTrips = CompletableFuture
+                        .supplyAsync(() -> timed(() -> loadTrips(filePath + "trips.csv", entreprise)), executor);
+                trips.add(agencyTrips);
+                stops.add(CompletableFuture.supplyAsync(() -> timed(() -> loadStops(filePath + "stops.csv")),
+                        executor));
+                routes.add(CompletableFuture.supplyAsync(() -> timed(() -> loadRoutes(filePath + "routes.csv")),
+                        executor));
+                stopTimes.add(agencyTrips.thenApplyAsync(
+                        loaded -> timed(() -> loadStopTimes(filePath + "stop_times.csv", loaded.value)), executor));
+                services.add(hasCalendar(filePath)
+                        ? CompletableFuture.supplyAsync(() -> timed(() -> loadServices(filePath, entreprise)), executor)
+                        : CompletableFuture.completedFuture(new Timed<>(new HashMap<>(), 0)));
+            }
 
-        for (String entreprise : entreprises) {
-            String filePath = directory + "/" + entreprise + "/";
-            try {
-                loadTrips(filePath + "trips.csv");
-                loadStops(filePath + "stops.csv");
-                loadRoutes(filePath + "routes.csv");
-                loadStopTimes(filePath + "stop_times.csv");
-            } catch (IOException e) {
-                System.err.println("Error reading file: " + filePath + "routes.csv");
-                e.printStackTrace();
+            // deterministic merge, agency by agency
+            for (int i = 0; i < entreprises.length; i++) {
+                String filePath = directory + "/" + entreprises[i] + "/";
+                boolean read = reusedAgency(entreprises[i]) == null;
+                Agency agency = new Agency(
+                        merge(trips.get(i), this.allTrips, filePath + "trips.csv", read),
+                        merge(stops.get(i), this.allStops, filePath + "stops.csv", read),
+                        merge(routes.get(i), this.allRoutes, filePath + "routes.csv", read),
+                        merge(services.get(i), this.allServices, filePath + "calendar.csv",
+                                read && hasCalendar(filePath)));
+                merge(stopTimes.get(i), null, filePath + "stop_times.csv", read); // stop times are stored in the trips
+                this.agencies.put(entreprises[i], agency);
+            }
+        } finally {
+            executor.shutdown();
+            this.previous = null; // the files of the previous parser are not needed anymore
+        }
+    }
+
+    /**
+     * @brief Returns the files of an agency read by the previous parser, if they
+     *        can be reused.
+     * 
+     * @param entreprise The name of the agency directory.
+     * @return The files of the agency, or null if they must be read.
+     */
+    private Agency reusedAgency(String entreprise) {
+        if (this.previous == null || this.reloaded == null || this.reloaded.contains(entreprise))
+            return null;
+        return this.previous.agencies.get(entreprise);
+    }
+
+    /**
+     * @brief The files of an agency, each loaded into its own map.
+     */
+    private static class Agency {
+        final Map<String, Trip> trips; // holding their stop times
+        final Map<String, Stop> stops;
+        final Map<String, Route> routes;
+        final Map<String, Service> services; // from calendar.csv and calendar_dates.csv
+
+        Agency(Map<String, Trip> trips, Map<String, Stop> stops, Map<String, Route> routes,
+                Map<String, Service> services) {
+            this.trips = trips;
+            this.stops = stops;
+            this.routes = routes;
+            this.services = services;
+        }
+    }
+
+    /**
+     * @brief Lists the agencies to read: the Belgian agencies, in their fixed
+     *        order, followed by any other subdirectory of the GTFS directory
+     *        holding a trips.csv file (e.g., generated networks), sorted by
+     *        name.
+     * 
+     * @return The names of the agency directories.
+     */
+    private String[] listEntreprises() {
+        List<String> names = new ArrayList<>(Arrays.asList(this.entreprises));
+        File[] directories = new File(this.directory).listFiles(
+                file -> file.isDirectory() && new File(file, "trips.csv").isFile());
+        if (directories != null) {
+            List<String> others = new ArrayList<>();
+            for (File agency : directories) {
+                if (!names.contains(agency.getName()))
+                    others.add(agency.getName());
+            }
+            Collections.sort(others);
+            names.addAll(others);
+        }
+        return names.toArray(new String[0]);
+    }
+
+    /**
+     * @brief Waits for a file to be loaded and merges it into a shared map.
+     * 
+     * @param future   The loading of the file.
+     * @param target   The map to merge the file into, null to only wait.
+     * @param filePath The path of the file, used for the timings and errors.
+     * @param read     Whether the file was read, its reading time being
+     *                 recorded, or reused from the previous parser.
+     * @return The content of the file, empty if it could not be read.
+     */
+    private <V> Map<String, V> merge(CompletableFuture<Timed<Map<String, V>>> future, Map<String, V> target,
+            String filePath, boolean read) {
+        try {
+            Timed<Map<String, V>> loaded = future.join();
+            if (target != null) {
+                target.putAll(loaded.value);
+            }
+            if (read) {
+                this.fileTimings.put(filePath, loaded.millis);
             }
+            return loaded.value;
+        } catch (CompletionException e) {
+            System.err.println("Skipping file: " + filePath);
+            e.getCause().printStackTrace();
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * @brief A loaded file along with its reading time.
+     */
+    private static class Timed<T> {
+        final T value;
+        final long millis;
+
+        Timed(T value, long millis) {
+            this.value = value;
+            this.millis = millis;
+        }
+    }
+
+    /**
+     * @brief A loading of a file that may throw an IOException.
+     */
+    private interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    /**
+     * @brief Runs a loading and measures its duration.
+     * 
+     * @param loader The loading to run.
+     * @return The loaded value and its reading time.
+     */
+    private static <T> Timed<T> timed(Loader<T> loader) {
+        long start = System.nanoTime();
+        try {
+            T value = loader.load();
+            return new Timed<>(value, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -60,12 +276,12 @@ public class Parser {
      * @param line The CSV line to parse.
      * @return An array of strings representing the fields in the line.
      */
-    private String[] parseCSVLine(String line) {
+    static String[] parseCSVLine(String line) {
         List<String> result = new ArrayList<>();
         StringBuilder currentField = new StringBuilder();
         boolean inQuotes = false;
 
-        for (byte i = 0; i < line.length(); i++) {
+        for (int i = 0; i < line.length(); i++) {
             char c = line.charAt(i);
             if (c == '"') {
                 inQuotes = !inQuotes;
@@ -83,13 +299,18 @@ public class Parser {
     /**
      * @brief Loads trips from a CSV file into a map.
      *
-     * @param filePath Path to the CSV file.
+     * @param filePath   Path to the CSV file.
+     * @param entreprise The name of the agency directory, prefixing the service
+     *                   IDs of its trips (see serviceId).
+     * @return A map of trip IDs to Trip objects.
      * @throws IOException If an error occurs while reading the file.
      */
-    public void loadTrips(String filePath) throws IOException {
+    public Map<String, Trip> loadTrips(String filePath, String entreprise) throws IOException {
+        Map<String, Trip> trips = new HashMap<>();
 
         try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            br.readLine(); // skip header
+            String header = br.readLine();
+            int serviceColumn = header == null ? -1 : Arrays.asList(parseCSVLine(header)).indexOf("service_id");
             String line;
             while ((line = br.readLine()) != null) {
                 String[] parts = parseCSVLine(line);
@@ -98,7 +319,9 @@ public class Parser {
                 try {
                     String tripId = parts[0];
                     String routeId = parts[1];
-                    this.allTrips.put(tripId, new Trip(tripId, routeId));
+                    String serviceId = serviceColumn >= 0 && serviceColumn < parts.length
+                            && !parts[serviceColumn].isEmpty() ? serviceId(entreprise, parts[serviceColumn]) : null;
+                    trips.put(tripId, new Trip(tripId, routeId, serviceId));
                 } catch (NumberFormatException e) {
                     System.err.println("Invalid numeric value in line: " + line);
                     continue;
@@ -108,15 +331,123 @@ public class Parser {
             System.err.println("Error reading file: " + filePath);
             throw e;
         }
+        return trips;
+    }
+
+    /**
+     * @brief Tells whether an agency directory has service calendars.
+     *
+     * @param directoryPath The path of the agency directory, ending with '/'.
+     * @return true if calendar.csv or calendar_dates.csv exists.
+     */
+    private static boolean hasCalendar(String directoryPath) {
+        return new File(directoryPath + "calendar.csv").isFile()
+                || new File(directoryPath + "calendar_dates.csv").isFile();
+    }
+
+    /**
+     * @brief Loads the service calendars of an agency from calendar.csv and
+     *        calendar_dates.csv, either of them being optional. The columns are
+     *        found by their name in the header.
+     *
+     * @param directoryPath The path of the agency directory, ending with '/'.
+     * @param entreprise    The name of the agency directory, prefixing the
+     *                      service IDs (see serviceId).
+     * @return A map of service IDs to Service objects.
+     * @throws IOException If an error occurs while reading a file.
+     */
+    public Map<String, Service> loadServices(String directoryPath, String entreprise) throws IOException {
+        Map<String, Service> services = new HashMap<>();
+        String[] weekdays = { "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday" };
+        File calendar = new File(directoryPath + "calendar.csv");
+        if (calendar.isFile()) {
+            try (BufferedReader br = new BufferedReader(new FileReader(calendar))) {
+                List<String> columns = Arrays.asList(parseCSVLine(String.valueOf(br.readLine())));
+                int serviceColumn = columns.indexOf("service_id");
+                int startColumn = columns.indexOf("start_date");
+                int endColumn = columns.indexOf("end_date");
+                int[] dayColumns = new int[weekdays.length];
+                for (int d = 0; d < weekdays.length; d++) {
+                    dayColumns[d] = columns.indexOf(weekdays[d]);
+                }
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] parts = parseCSVLine(line);
+                    try {
+                        int days = 0;
+                        for (int d = 0; d < weekdays.length; d++) {
+                            if (parts[dayColumns[d]].trim().equals("1"))
+                                days |= 1 << d;
+                        }
+                        services.computeIfAbsent(serviceId(entreprise, parts[serviceColumn]), Service::new)
+                                .setWeekdays(days, parseDate(parts[startColumn]), parseDate(parts[endColumn]));
+                    } catch (DateTimeParseException | IndexOutOfBoundsException e) {
+                        System.err.println("Invalid calendar line: " + line);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading file: " + calendar);
+                throw e;
+            }
+        }
+        File dates = new File(directoryPath + "calendar_dates.csv");
+        if (dates.isFile()) {
+            try (BufferedReader br = new BufferedReader(new FileReader(dates))) {
+                List<String> columns = Arrays.asList(parseCSVLine(String.valueOf(br.readLine())));
+                int serviceColumn = columns.indexOf("service_id");
+                int dateColumn = columns.indexOf("date");
+                int typeColumn = columns.indexOf("exception_type");
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] parts = parseCSVLine(line);
+                    try {
+                        services.computeIfAbsent(serviceId(entreprise, parts[serviceColumn]), Service::new)
+                                .addException(parseDate(parts[dateColumn]), parts[typeColumn].trim().equals("1"));
+                    } catch (DateTimeParseException | IndexOutOfBoundsException e) {
+                        System.err.println("Invalid calendar date line: " + line);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading file: " + dates);
+                throw e;
+            }
+        }
+        return services;
+    }
+
+    /**
+     * @brief Returns the ID of a service of an agency, unique among the agencies:
+     *        feeds often number their services from 1, and the calendars of all
+     *        the agencies are merged into a single map.
+     *
+     * @param entreprise The name of the agency directory.
+     * @param serviceId  The service_id of the GTFS files of the agency.
+     * @return The service ID, prefixed with the agency.
+     */
+    public static String serviceId(String entreprise, String serviceId) {
+        return entreprise + ':' + serviceId;
+    }
+
+    /**
+     * @brief Parses a GTFS date.
+     *
+     * @param date The date as 'YYYYMMDD'.
+     * @return The date.
+     * @throws DateTimeParseException If the date is invalid.
+     */
+    private static LocalDate parseDate(String date) {
+        return LocalDate.parse(date.trim(), DateTimeFormatter.BASIC_ISO_DATE);
     }
 
     /**
      * @brief Loads stops from a CSV file into a map.
      *
      * @param filePath Path to the CSV file.
+     * @return A map of stop IDs to Stop objects.
      * @throws IOException If an error occurs while reading the file.
      */
-    public void loadStops(String filePath) throws IOException {
+    public Map<String, Stop> loadStops(String filePath) throws IOException {
+        Map<String, Stop> stops = new HashMap<>();
         try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
             br.readLine(); // skip header
             String line;
@@ -129,7 +460,7 @@ public class Parser {
                     String name = parts[1];
                     double lat = Double.parseDouble(parts[2]);
                     double lon = Double.parseDouble(parts[3]);
-                    this.allStops.put(id, new Stop(id, name, lat, lon));
+                    stops.put(id, new Stop(id, name, lat, lon));
                 } catch (NumberFormatException e) {
                     System.err.println("Invalid numeric value in line: " + line);
                     continue;
@@ -139,15 +470,18 @@ public class Parser {
             System.err.println("Error reading file: " + filePath);
             throw e;
         }
+        return stops;
     }
 
     /**
      * @brief Loads routes from a CSV file into a map.
      *
      * @param filePath Path to the CSV file.
+     * @return A map of route IDs to Route objects.
      * @throws IOException If an error occurs while reading the file.
      */
-    private void loadRoutes(String filePath) throws IOException {
+    private Map<String, Route> loadRoutes(String filePath) throws IOException {
+        Map<String, Route> routes = new HashMap<>();
         try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
             br.readLine(); // skip header
             String line;
@@ -159,51 +493,218 @@ public class Parser {
                 String shortName = parts[1];
                 String longName = parts[2];
                 String type = parts[3];
-                this.allRoutes.put(id, new Route(id, shortName, longName, type));
+                routes.put(id, new Route(id, shortName, longName, type));
             }
         } catch (IOException e) {
             System.err.println("Error reading file: " + filePath);
             throw e;
         }
+        return routes;
     }
 
     /**
-     * @brief Loads stop times from a CSV file into a map.
+     * @brief Loads stop times from a CSV file into the trips they belong to.
+     *
+     *        stop_times.csv is by far the largest file, so it is not read line
+     *        by line into Strings: the file is memory-mapped (by chunks of
+     *        MAP_CHUNK bytes) and tokenized byte by byte. Times and integers are
+     *        parsed straight from the bytes, the trip is looked up with a
+     *        byte-keyed table, and stop IDs are interned so that a String is
+     *        only created the first time an ID is met. The only allocation per
+     *        row is the StopTime itself.
      *
      * @param filePath Path to the CSV file.
+     * @param trips    The trips of the same agency.
+     * @return The same map of trips, their stop times being loaded and sorted.
      * @throws IOException If an error occurs while reading the file.
      */
-    private void loadStopTimes(String filePath) throws IOException {
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            br.readLine(); // skip header
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = parseCSVLine(line);
-                if (parts.length < 4)
-                    continue;
-                try {
-                    String tripId = parts[0];
-                    int departureTime = Calculator.timeToInt(parts[1]);
-                    String stopId = parts[2];
-                    int stopSequence = Integer.parseInt(parts[3]);
+    private Map<String, Trip> loadStopTimes(String filePath, Map<String, Trip> trips) throws IOException {
+        ByteStringTable<Trip> tripTable = new ByteStringTable<>(trips.size());
+        for (Trip trip : trips.values()) {
+            tripTable.put(trip.getTripId(), trip);
+        }
+        ByteStringTable<String> stopIds = new ByteStringTable<>(1024);
+        int[] fields = new int[8]; // start and end of the 4 fields of the current line
 
-                    if (this.allTrips.containsKey((tripId))) {
-                        Trip temp = this.allTrips.get(tripId);
-                        temp.addStopTime(new StopTime(departureTime, stopId, stopSequence));
-                    }
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long position = 0;
+            boolean header = true;
+            while (position < fileSize) {
+                int length = (int) Math.min(MAP_CHUNK, fileSize - position);
+                boolean lastChunk = position + length == fileSize;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
 
-                } catch (NumberFormatException e) {
-                    System.err.println("Invalid numeric value in line: " + line);
-                    continue;
+                int lineStart = 0;
+                while (lineStart < length) {
+                    int lineEnd = lineStart;
+                    while (lineEnd < length && buffer.get(lineEnd) != '\n') {
+                        lineEnd++;
+                    }
+                    if (lineEnd == length && !lastChunk) {
+                        break; // incomplete line, mapped again at the start of the next chunk
+                    }
+                    if (header) {
+                        header = false; // skip header
+                    } else {
+                        parseStopTimeLine(buffer, lineStart, lineEnd, fields, tripTable, stopIds);
+                    }
+                    lineStart = lineEnd + 1;
+                }
+                if (lineStart == 0) {
+                    throw new IOException("Line longer than " + MAP_CHUNK + " bytes in " + filePath);
                 }
+                position += Math.min(lineStart, length);
             }
-            for (Trip trip : this.allTrips.values()) {
+            for (Trip trip : trips.values()) {
                 trip.sortStopTimes();
             }
         } catch (IOException e) {
             System.err.println("Error reading file: " + filePath);
             throw e;
         }
+        return trips;
+    }
+
+    /**
+     * @brief Parses a line of stop_times.csv (trip_id, departure_time, stop_id,
+     *        stop_sequence) and adds the stop time to its trip.
+     *
+     * @param buffer    The mapped file.
+     * @param start     The index of the first byte of the line.
+     * @param end       The index following the last byte of the line.
+     * @param fields    A reusable array receiving the bounds of the fields.
+     * @param tripTable The trips of the agency, by ID.
+     * @param stopIds   The stop IDs met so far.
+     */
+    private void parseStopTimeLine(MappedByteBuffer buffer, int start, int end, int[] fields,
+            ByteStringTable<Trip> tripTable, ByteStringTable<String> stopIds) {
+        // splitting the line on the commas outside of quotes
+        int field = 0;
+        int fieldStart = start;
+        boolean inQuotes = false;
+        for (int i = start; i < end && field < 4; i++) {
+            byte c = buffer.get(i);
+            if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (c == ',' && !inQuotes) {
+                fields[2 * field] = fieldStart;
+                fields[2 * field + 1] = i;
+                field++;
+                fieldStart = i + 1;
+            }
+        }
+        if (field == 3) {
+            fields[6] = fieldStart;
+            fields[7] = end;
+            field++;
+        }
+        if (field < 4)
+            return;
+        for (int f = 0; f < 4; f++) { // trimming spaces, carriage returns and quotes
+            while (fields[2 * f] < fields[2 * f + 1] && isBlank(buffer.get(fields[2 * f]))) {
+                fields[2 * f]++;
+            }
+            while (fields[2 * f + 1] > fields[2 * f] && isBlank(buffer.get(fields[2 * f + 1] - 1))) {
+                fields[2 * f + 1]--;
+            }
+        }
+
+        Trip trip = tripTable.get(buffer, fields[0], fields[1]);
+        if (trip == null)
+            return;
+        int departureTime = parseTime(buffer, fields[2], fields[3]);
+        int stopSequence = parseInt(buffer, fields[6], fields[7]);
+        if (departureTime < 0 || stopSequence < 0 || fields[4] == fields[5]) {
+            byte[] line = new byte[end - start];
+            buffer.get(start, line);
+            System.err.println("Invalid numeric value in line: " + new String(line, StandardCharsets.UTF_8).trim());
+            return;
+        }
+        String stopId = stopIds.intern(buffer, fields[4], fields[5]);
+        trip.addStopTime(new StopTime(departureTime, stopId, stopSequence));
+    }
+
+    private static boolean isBlank(byte c) {
+        return c == ' ' || c == '\r' || c == '"' || c == '\t';
+    }
+
+    /**
+     * @brief Parses a time in the format "HH:MM:SS" (or "HH:MM", hours possibly
+     *        exceeding 24) from bytes.
+     *
+     * @return The time in seconds, or -1 if the bytes are not a valid time.
+     */
+    private static int parseTime(MappedByteBuffer buffer, int start, int end) {
+        int total = 0;
+        int value = 0;
+        int parts = 0;
+        boolean digits = false;
+        for (int i = start; i < end; i++) {
+            byte c = buffer.get(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits = true;
+            } else if ((c == ':' || c == ';') && digits && parts < 2) {
+                total = total * 60 + value;
+                value = 0;
+                parts++;
+                digits = false;
+            } else {
+                return -1;
+            }
+        }
+        if (!digits || parts == 0)
+            return -1;
+        total = total * 60 + value;
+        return parts == 1 ? total * 60 : total; // "HH:MM" has no seconds
+    }
+
+    /**
+     * @brief Parses a non-negative integer from bytes.
+     *
+     * @return The integer, or -1 if the bytes are not a valid integer.
+     */
+    private static int parseInt(MappedByteBuffer buffer, int start, int end) {
+        if (start == end)
+            return -1;
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            byte c = buffer.get(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * @brief Returns the reading time of every file read by the last call to
+     *        readFiles, in the order of the agencies.
+     *
+     * @return A map of file paths to reading times in milliseconds.
+     */
+    public Map<String, Long> getFileTimings() {
+        return this.fileTimings;
+    }
+
+    /**
+     * @brief Returns the number of threads reading the files.
+     *
+     * @return The number of threads.
+     */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * @brief Returns all service calendars.
+     *
+     * @return A map of service IDs to Service objects, empty if no agency has
+     *         calendars.
+     */
+    public Map<String, Service> getAllServices() {
+        return this.allServices;
     }
 
     /**
@@ -1,99 +1,264 @@
 package functional;
 
+import java.time.LocalDate;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.regex.Pattern;
 
 import objects.Route;
 import objects.Stop;
 import objects.Trip;
-import objects.Walk;
 import objects.Connexion;
+import structures.Isochrone;
+import structures.Journey;
+import structures.JourneyCache;
+import structures.LaneWorkspace;
+import structures.MinuteIndex;
+import structures.ParetoWorkspace;
+import structures.Profile;
+import structures.QueryWorkspace;
+import structures.StopNameIndex;
+import structures.Timetable;
 
 public class PathFinder {
     // #### Attributes ####
     private Map<String, Stop> stopMap;
     private Map<String, Trip> tripMap;
     private Map<String, Route> routeMap;
-    private List<Connexion> connexions;
+    private Timetable timetable;
+    private StopNameIndex stopNameIndex;
+
+    // one reusable workspace per thread, reset in O(1) between queries
+    private final ThreadLocal<QueryWorkspace> workspaces;
+    private final ThreadLocal<ParetoWorkspace> paretoWorkspaces;
+    private final ThreadLocal<LaneWorkspace> laneWorkspaces;
+
+    // cache of the journeys of findJourney, null for none
+    private volatile JourneyCache cache = null;
+
+    // maximum number of transfers of the multi-criteria scan, bounds the size of
+    // the per-stop bags
+    public static final int MAX_TRANSFERS = 7;
+
+    // 'hour;minute[;second]', compiled once instead of at every query
+    private static final Pattern TIME_FORMAT = Pattern.compile("^\\d{2};\\d{2}(;\\d{2})?$");
 
     // flags
     private boolean bus = true;
     private boolean train = true;
     private boolean tram = true;
     private boolean metro = false;
+    private LocalDate date = null; // date of the trips taken, null for every day (findJourney takes its own)
 
     // #### Constructors ####
     /**
      * @brief Constructor for the PathFinder class.
-     * @param stopMap    The map of stops.
-     * @param tripMap    The map of trips.
-     * @param routeMap   The map of routes.
-     * @param connexions The list of connexions.
+     * @param stopMap       The map of stops.
+     * @param tripMap       The map of trips.
+     * @param routeMap      The map of routes.
+     * @param timetable     The timetable holding the connexions sorted by
+     *                      departure time.
+     * @param stopNameIndex The index of the stops by normalized name.
      */
     public PathFinder(Map<String, Stop> stopMap, Map<String, Trip> tripMap, Map<String, Route> routeMap,
-            List<Connexion> connexions) {
+            Timetable timetable, StopNameIndex stopNameIndex) {
         this.stopMap = stopMap;
         this.tripMap = tripMap;
         this.routeMap = routeMap;
-        this.connexions = connexions;
+        this.timetable = timetable;
+        this.stopNameIndex = stopNameIndex;
+        this.workspaces = ThreadLocal
+                .withInitial(() -> new QueryWorkspace(timetable.getStopCount(), timetable.getTripSlotCount()));
+        this.paretoWorkspaces = ThreadLocal.withInitial(
+                () -> new ParetoWorkspace(timetable.getStopCount(), timetable.getTripSlotCount(), MAX_TRANSFERS + 1));
+        this.laneWorkspaces = ThreadLocal
+                .withInitial(() -> new LaneWorkspace(timetable.getStopCount(), timetable.getTripSlotCount()));
+    }
+
+    /**
+     * @brief Constructor of a PathFinder searching another version of the
+     *        timetable of a network, sharing the workspaces of its threads, its
+     *        cache and its settings.
+     * @param previous  The PathFinder of the previous version.
+     * @param timetable The new version, with the same stops and trips.
+     */
+    private PathFinder(PathFinder previous, Timetable timetable) {
+        this.stopMap = previous.stopMap;
+        this.tripMap = previous.tripMap;
+        this.routeMap = previous.routeMap;
+        this.timetable = timetable;
+        this.stopNameIndex = previous.stopNameIndex;
+        this.workspaces = previous.workspaces;
+        this.paretoWorkspaces = previous.paretoWorkspaces;
+        this.laneWorkspaces = previous.laneWorkspaces;
+        this.cache = previous.cache;
+        this.bus = previous.bus;
+        this.train = previous.train;
+        this.tram = previous.tram;
+        this.metro = previous.metro;
+        this.date = previous.date;
     }
 
     // #### Methods ####
+    /**
+     * @brief Returns a PathFinder searching another version of the timetable,
+     *        such as the one of LiveTimetable once delays are applied: the
+     *        threads keep their workspaces, and the journeys of the cache stay
+     *        cached unless the caller updates it (see JourneyCache.update).
+     * @param timetable The new version, with the same stops and trips.
+     * @return The PathFinder of the new version.
+     */
+    public PathFinder withTimetable(Timetable timetable) {
+        return new PathFinder(this, timetable);
+    }
+
     /**
      * @brief Implementation of the CSA algorithm to find the best path between
      *        start
-     *        and end positions with the starting and stopping criterion.
+     *        and end positions with the starting and stopping criterion, and
+     *        prints it.
      * @param start       The starting position.
      * @param destination The ending position.
      * @param time        The time at which the journey starts
+     * @param variant     Whether only the modes selected with the setters are
+     *                    used.
      */
     public void findPath(String start, String destination, String time, boolean variant) {
+        Journey journey = findJourney(start, destination, time, variant ? getModeMask() : Timetable.ALL_MODES,
+                this.date);
+        switch (journey.getStatus()) {
+            case INVALID_TIME:
+                System.err.println((isValidTimeFormat(time) ? "Invalid time given: " : "Invalid time format: ") + time);
+                return;
+            case UNKNOWN_START:
+                System.err.println("No stops found with the name: " + start);
+                printSuggestions(start);
+                return;
+            case UNKNOWN_DESTINATION:
+                System.err.println("No stops found with the name: " + destination);
+                printSuggestions(destination);
+                return;
+            case SAME_STOP:
+                System.err.println("Start and destination are the same: " + start);
+                return;
+            case NOT_FOUND:
+                System.out.println("No path found from " + start + " to " + destination);
+                return;
+            default:
+                System.out.println("Path from " + start + " to " + destination + ":");
+                for (Connexion connexion : journey.getLegs()) {
+                    if (connexion.getTripId() != null) {
+                        printTransport(connexion);
+                    } else {
+                        printWalk(connexion);
+                    }
+                }
+        }
+    }
+
+    /**
+     * @brief Implementation of the CSA algorithm to find the best path between
+     *        start and end positions with the starting and stopping criterion.
+     *
+     *        Nothing is printed and the only state written is the workspace of
+     *        the calling thread (and the journey cache if set), so that any
+     *        number of threads can share this PathFinder.
+     * @param start       The starting position.
+     * @param destination The ending position.
+     * @param time        The time at which the journey starts
+     * @param modeMask    The transportation modes that may be used (see
+     *                    Timetable.ALL_MODES).
+     * @return The journey, whose status tells why none was found if so.
+     */
+    public Journey findJourney(String start, String destination, String time, int modeMask) {
+        return findJourney(start, destination, time, modeMask, null);
+    }
+
+    /**
+     * @brief Same as findJourney, on a given date: only the trips whose service
+     *        runs on that date are taken (see Timetable.forDate).
+     * @param start       The starting position.
+     * @param destination The ending position.
+     * @param time        The time at which the journey starts
+     * @param modeMask    The transportation modes that may be used (see
+     *                    Timetable.ALL_MODES).
+     * @param date        The date of the journey, null to take the trips of
+     *                    every day.
+     * @return The journey, whose status tells why none was found if so.
+     */
+    public Journey findJourney(String start, String destination, String time, int modeMask, LocalDate date) {
         // #######################################################################################
         // Check the validity of the input parameters
         // #######################################################################################
         if (!isValidTimeFormat(time)) {
-            System.err.println("Invalid time format: " + time);
-            return;
+            return new Journey(Journey.Status.INVALID_TIME, -1);
         }
         int userStartTime = Calculator.timeToInt(time); // Convert time to int
         List<Stop> startingStops = findStopsByName(start); // Find all stops with the given name
         if (startingStops.isEmpty()) {
-            System.err.println("No stops found with the name: " + start);
-            return;
+            return new Journey(Journey.Status.UNKNOWN_START, userStartTime);
         }
         List<Stop> endStops = findStopsByName(destination);
         if (endStops.isEmpty()) {
-            System.err.println("No stops found with the name: " + destination);
-            return;
+            return new Journey(Journey.Status.UNKNOWN_DESTINATION, userStartTime);
         }
-        if (time == null) {
-            System.err.println("Invalid time given: " + time);
-            return;
-        } else if (userStartTime < 0) {
-            System.err.println("Invalid time given: " + time);
-            return;
+        if (userStartTime < 0) {
+            return new Journey(Journey.Status.INVALID_TIME, -1);
         } else if (start == destination) {
-            System.err.println("Start and destination are the same: " + start);
-            return;
+            return new Journey(Journey.Status.SAME_STOP, userStartTime);
+        }
+        int[] startStopIndices = new int[startingStops.size()];
+        for (int s = 0; s < startStopIndices.length; s++) {
+            startStopIndices[s] = timetable.getStopIndex(startingStops.get(s).getStopId());
+        }
+        int[] endStopIndices = new int[endStops.size()];
+        for (int e = 0; e < endStopIndices.length; e++) {
+            endStopIndices[e] = timetable.getStopIndex(endStops.get(e).getStopId());
         }
         // #######################################################################################
 
         // #######################################################################################
-        // Initialize the shortest path and previous connection maps
+        // Look the journey up in the cache, keyed by the exact departure time
         // #######################################################################################
-        Map<String, Integer> shortestPath = new HashMap<>(); // for every connexion sorted by decreasing departure time
-
-        for (String stopId : stopMap.keySet()) { // for every stop put in the map
-            shortestPath.put(stopId, Integer.MAX_VALUE); // the biggest value for each stop
+        JourneyCache journeyCache = this.cache;
+        Timetable scanned = timetable.forDate(date);
+        if (journeyCache == null) {
+            return scan(scanned, startStopIndices, endStopIndices, userStartTime, modeMask);
         }
-        for (Stop startingStop : startingStops) { // for every starting stop put in the map
-            shortestPath.put(startingStop.getStopId(), userStartTime); // set the departure time for each starting stop
+        JourneyCache.Key key = new JourneyCache.Key(startStopIndices, endStopIndices, userStartTime, modeMask,
+                scanned == timetable ? null : date);
+        Journey journey = journeyCache.get(key);
+        if (journey == null) {
+            journey = scan(scanned, startStopIndices, endStopIndices, userStartTime, modeMask);
+            journeyCache.put(key, journey, this.timetable);
         }
+        return journey;
+    }
 
-        Map<String, Connexion> previousConnection = new HashMap<>(); // map to store the previous connection for each
-                                                                     // stop
+    /**
+     * @brief Scan of findJourney, once the stop names are resolved.
+     * @param timetable        The timetable of the date of the journey.
+     * @param startStopIndices The dense indices of the starting stops.
+     * @param endStopIndices   The dense indices of the destination stops.
+     * @param userStartTime    The departure time in seconds.
+     * @param modeMask         The transportation modes that may be used.
+     * @return The journey, FOUND or NOT_FOUND.
+     */
+    private Journey scan(Timetable timetable, int[] startStopIndices, int[] endStopIndices, int userStartTime,
+            int modeMask) {
+        // #######################################################################################
+        // Initialize the earliest arrival and parent arrays, indexed by dense stop
+        // index
+        // #######################################################################################
+        // The workspace of this thread is reused: the reset is O(1), every stop not
+        // written during this query reads as Integer.MAX_VALUE without a parent
+        QueryWorkspace shortestPath = workspaces.get();
+        shortestPath.reset();
+        for (int startingStop : startStopIndices) { // for every starting stop
+            shortestPath.setArrival(startingStop, userStartTime); // set the departure time
+        }
         // ########################################################################################
 
         // ########################################################################################
@@ -117,7 +282,20 @@ public class PathFinder {
         // In the worst case we have to process all the connexions without the Starting
         // criterion, and have a complexity of O(n) or O(n - m) if there is the Stopping
         // criterion (see line 127).
-        int startIndex = BinarySearch.findStartIndex(connexions, userStartTime);
+        // In variant mode, the connexions of the excluded modes are skipped with a
+        // single AND, or not scanned at all once the filtered timetable of this
+        // combination of modes is cached
+        Timetable scanned = timetable.forModes(modeMask);
+        int[] departures = scanned.getDepartures();
+        int[] arrivals = scanned.getArrivals();
+        int[] fromStops = scanned.getFromStops();
+        int[] toStops = scanned.getToStops();
+        int[] trips = scanned.getTrips();
+        byte[] modes = scanned.getModes();
+        int[] walkOffsets = scanned.getWalkOffsets();
+        int[] walkTargets = scanned.getWalkTargets();
+        int[] walkDurations = scanned.getWalkDurations();
+        int startIndex = scanned.getMinuteIndex().startIndex(userStartTime);
         // ########################################################################################
 
         // ########################################################################################
@@ -125,12 +303,9 @@ public class PathFinder {
         // Runs all the connexions sorted by increasing departure time
         // We sort the connexions by increasing departure time in the Builder class
         // ########################################################################################
-        for (int i = startIndex; i < connexions.size(); i++) {
-            Connexion connexion = connexions.get(i);
-            if (variant) {
-                if (!checkFlags(connexion)) {
-                    continue; // skip the connexion if not demanded by the user
-                }
+        for (int i = startIndex; i < departures.length; i++) {
+            if ((modes[i] & modeMask) == 0) {
+                continue; // skip the connexion if not demanded by the user
             }
             // ####################################################################################
             // If the departure time of the connexion is greater than the best arrival
@@ -165,29 +340,41 @@ public class PathFinder {
             // In the worst case we have to process all the connexions without the Stopping
             // criterion
             // and have a complexity of O(n - k).
-            if (connexion.getDepartureTime() > bestArrivalTime) {
+            if (departures[i] > bestArrivalTime) {
                 break;
             }
             // ####################################################################################
 
-            String departureStopId = connexion.getFromId();
-            String arrivalStopId = connexion.getToId();
-            int departureTime = connexion.getDepartureTime();
-            int arrivalTime = connexion.getArrivalTime();
-            int currentDepartureTime = shortestPath.get(departureStopId);
-            int currentArrivalTime = shortestPath.get(arrivalStopId);
+            int departureStop = fromStops[i];
+            int arrivalStop = toStops[i];
+            int departureTime = departures[i];
+            int arrivalTime = arrivals[i];
+            int trip = trips[i];
+
+            // ####################################################################################
+            // Check if the connexion can be taken: either we are already seated in its
+            // trip (a single bit test), or we are at its departure stop in time and board
+            // the trip there
+            // ####################################################################################
+            if (!shortestPath.isTripReached(trip)) {
+                if (shortestPath.getArrival(departureStop) > departureTime) {
+                    continue;
+                }
+                shortestPath.reachTrip(trip, departureStop, departureTime);
+            }
 
             // ####################################################################################
             // Check if the connection improves the shortest path
             // ####################################################################################
-            if (currentDepartureTime <= departureTime && currentArrivalTime > arrivalTime) {
-                // Update the shortest path and previous connection maps
-                shortestPath.put(arrivalStopId, arrivalTime);
-                previousConnection.put(arrivalStopId, connexion);
-                for (Stop endStop : endStops) { // Update bestArrivalTime if this arrivalStop is one of the destination
-                                                // stops.
-                                                // Part of the Stopping criterion
-                    if (arrivalStopId.equals(endStop.getStopId()) && arrivalTime < bestArrivalTime) {
+            if (shortestPath.getArrival(arrivalStop) > arrivalTime) {
+                // Update the shortest path, the parent of the arrival stop being the stop
+                // where the trip was boarded so that the path is rebuilt trip by trip
+                shortestPath.setArrival(arrivalStop, arrivalTime, shortestPath.getTripBoardStop(trip), trip,
+                        shortestPath.getTripBoardTime(trip));
+                for (int endStop : endStopIndices) { // Update bestArrivalTime if this arrivalStop is one of the
+                                                     // destination stops.
+                                                     // Part of the Stopping criterion
+                    if (arrivalStop == endStop && arrivalTime < bestArrivalTime) {
                         bestArrivalTime = arrivalTime;
                     }
                 }
@@ -197,23 +384,13 @@ public class PathFinder {
                 // Complexity:
                 // O(n) where n is the number of walks from the arrival stop
                 // ################################################################################
-                Stop arrivalStop = stopMap.get(arrivalStopId);
-                if (arrivalStop != null && arrivalStop.getWalk() != null) {
-                    for (Walk walk : arrivalStop.getWalk()) { // Run through all the walks from the arrival
-                                                              // stop
-                        String walkDestId = walk.getDestination().getStopId();
-                        int walkArrivalTime = arrivalTime + walk.getDuration();
-                        int currentWalkArrivalTime = shortestPath.get(walkDestId);
-                        // Check if the walk improves the shortest path
-                        if (currentWalkArrivalTime > walkArrivalTime) {
-                            shortestPath.put(walkDestId, walkArrivalTime);
-                            previousConnection.put(walkDestId, new Connexion(
-                                    null,
-                                    arrivalStopId,
-                                    walkDestId,
-                                    arrivalTime,
-                                    walkArrivalTime));
-                        }
+                // Run through all the walks from the arrival stop
+                for (int w = walkOffsets[arrivalStop]; w < walkOffsets[arrivalStop + 1]; w++) {
+                    int walkDest = walkTargets[w];
+                    int walkArrivalTime = arrivalTime + walkDurations[w];
+                    // Check if the walk improves the shortest path
+                    if (shortestPath.getArrival(walkDest) > walkArrivalTime) {
+                        shortestPath.setArrival(walkDest, walkArrivalTime, arrivalStop, -1, arrivalTime);
                     }
                 }
                 // ################################################################################
@@ -224,12 +401,14 @@ public class PathFinder {
         // The best end stop is the one with the minimum arrival time
         // ########################################################################################
         Stop bestEndStop = null;
+        int bestEndIndex = -1;
         int minArrivalTime = Integer.MAX_VALUE;
-        for (Stop endStop : endStops) {
-            int arrivalTime = shortestPath.get(endStop.getStopId());
+        for (int endStop : endStopIndices) {
+            int arrivalTime = shortestPath.getArrival(endStop);
             if (arrivalTime < minArrivalTime) {
                 minArrivalTime = arrivalTime;
-                bestEndStop = endStop;
+                bestEndIndex = endStop;
+                bestEndStop = timetable.getStop(endStop);
             }
         }
         // ########################################################################################
@@ -239,68 +418,732 @@ public class PathFinder {
         // Build the path from the best end stop to the starting stops
         // ########################################################################################
         List<Connexion> path = new ArrayList<>();
-        Stop currentStop = bestEndStop;
+        int currentStop = bestEndIndex;
         // Remake the path from the best end stop to the starting stops by following the
-        // previous connection
-        while (currentStop != null && previousConnection.containsKey(currentStop.getStopId())) {
-            Connexion connexion = previousConnection.get(currentStop.getStopId());
+        // parents stored in the workspace, every leg being a whole trip or a walk
+        while (currentStop != -1 && shortestPath.getParentStop(currentStop) != -1) {
+            int previousStop = shortestPath.getParentStop(currentStop);
+            int parentTrip = shortestPath.getParentTrip(currentStop);
+            String tripId = parentTrip == -1 ? null : timetable.getTripId(parentTrip);
+            Connexion connexion = new Connexion(tripId, timetable.getStop(previousStop).getStopId(),
+                    timetable.getStop(currentStop).getStopId(), shortestPath.getParentDeparture(currentStop),
+                    shortestPath.getArrival(currentStop));
             path.add(0, connexion); // Add to the beginning of the path
-            currentStop = stopMap.get(connexion.getFromId()); // Get the previous stop
+            currentStop = previousStop; // Get the previous stop
         }
 
         // ########################################################################################
-        // Print the path
+        // Return the journey, printed by findPath or written by the BatchRunner
         // ########################################################################################
         if (path.isEmpty() || bestEndStop == null) {
-            System.out.println("No path found from " + start + " to " + destination);
-        } else {
-            System.out.println("Path from " + start + " to " + destination + ":");
+            return new Journey(Journey.Status.NOT_FOUND, userStartTime);
+        }
+        return new Journey(Journey.Status.FOUND, userStartTime, path);
+    }
+
+    /**
+     * @brief Multi-criteria CSA: finds every journey between start and
+     *        destination that is Pareto-optimal regarding the arrival time and
+     *        the number of transfers, with at most maxTransfers transfers.
+     *
+     *        The connexions are scanned in the same order as findPath, but every
+     *        stop keeps a bag of earliest arrivals per number of trips taken
+     *        (see ParetoWorkspace), and every trip the fewest trips used to be
+     *        seated in it. A connexion is taken with the fewest trips among
+     *        staying seated and boarding at its departure stop.
+     *        The stopping criterion is weaker than in findPath: a journey with
+     *        fewer transfers may arrive later than the fastest one, so the scan
+     *        only stops once no connexion can improve the direct (one trip)
+     *        arrival at the destination.
+     *        Complexity: O((n - k) * t) where t is the maximum number of trips,
+     *        without any allocation during the scan.
+     * @param start        The starting position.
+     * @param destination  The ending position.
+     * @param time         The time at which the journey starts.
+     * @param variant      Whether the transportation mode flags apply.
+     * @param maxTransfers The maximum number of transfers, at most MAX_TRANSFERS.
+     */
+    public void findParetoPaths(String start, String destination, String time, boolean variant, int maxTransfers) {
+        // #######################################################################################
+        // Check the validity of the input parameters
+        // #######################################################################################
+        if (!isValidTimeFormat(time)) {
+            System.err.println("Invalid time format: " + time);
+            return;
+        }
+        if (maxTransfers < 0 || maxTransfers > MAX_TRANSFERS) {
+            System.err.println("Invalid number of transfers: " + maxTransfers + " (between 0 and " + MAX_TRANSFERS
+                    + ")");
+            return;
+        }
+        int userStartTime = Calculator.timeToInt(time);
+        List<Stop> startingStops = findStopsByName(start);
+        if (startingStops.isEmpty()) {
+            System.err.println("No stops found with the name: " + start);
+            printSuggestions(start);
+            return;
+        }
+        List<Stop> endStops = findStopsByName(destination);
+        if (endStops.isEmpty()) {
+            System.err.println("No stops found with the name: " + destination);
+            printSuggestions(destination);
+            return;
+        }
+        // #######################################################################################
+
+        // #######################################################################################
+        // Initialize the bags of the starting stops (zero trip)
+        // #######################################################################################
+        int maxLegs = maxTransfers + 1;
+        ParetoWorkspace bags = paretoWorkspaces.get();
+        bags.reset();
+        for (Stop startingStop : startingStops) {
+            bags.improve(timetable.getStopIndex(startingStop.getStopId()), 0, userStartTime, -1, -1, userStartTime,
+                    0);
+        }
+        int[] endStopIndices = new int[endStops.size()];
+        for (int e = 0; e < endStopIndices.length; e++) {
+            endStopIndices[e] = timetable.getStopIndex(endStops.get(e).getStopId());
+        }
+        int directArrival = Integer.MAX_VALUE; // earliest arrival at the destination with one trip
+        // #######################################################################################
+
+        // #######################################################################################
+        // Main loop of the algorithm
+        // #######################################################################################
+        // In variant mode, the connexions of the excluded modes are skipped with a
+        // single AND, or not scanned at all once the filtered timetable of this
+        // combination of modes is cached
+        int modeMask = variant ? getModeMask() : Timetable.ALL_MODES;
+        Timetable scanned = timetable.forDate(this.date).forModes(modeMask);
+        int[] departures = scanned.getDepartures();
+        int[] arrivals = scanned.getArrivals();
+        int[] fromStops = scanned.getFromStops();
+        int[] toStops = scanned.getToStops();
+        int[] trips = scanned.getTrips();
+        byte[] modes = scanned.getModes();
+        int[] walkOffsets = scanned.getWalkOffsets();
+        int[] walkTargets = scanned.getWalkTargets();
+        int[] walkDurations = scanned.getWalkDurations();
+        int startIndex = scanned.getMinuteIndex().startIndex(userStartTime);
+
+        for (int i = startIndex; i < departures.length; i++) {
+            if ((modes[i] & modeMask) == 0) {
+                continue; // skip the connexion if not demanded by the user
+            }
+            if (departures[i] > directArrival) { // Stopping criterion
+                break;
+            }
+            int trip = trips[i];
+            int departureTime = departures[i];
+
+            // staying seated, or boarding at the departure stop with fewer trips
+            int legs = bags.getTripLegs(trip);
+            int boardLegs = bags.getLegsAt(fromStops[i], departureTime);
+            if (boardLegs != -1 && boardLegs + 1 <= maxLegs && (legs == -1 || boardLegs + 1 < legs)) {
+                legs = boardLegs + 1;
+                bags.boardTrip(trip, legs, fromStops[i], departureTime);
+            }
+            if (legs == -1) {
+                continue; // the trip cannot be reached
+            }
+
+            int arrivalStop = toStops[i];
+            int arrivalTime = arrivals[i];
+            if (!bags.improve(arrivalStop, legs, arrivalTime, bags.getTripBoardStop(trip), trip,
+                    bags.getTripBoardTime(trip), legs - 1)) {
+                continue;
+            }
+            directArrival = Math.min(directArrival, directArrivalAt(bags, endStopIndices, arrivalStop));
+
+            // walks from the arrival stop, with the same number of trips
+            for (int w = walkOffsets[arrivalStop]; w < walkOffsets[arrivalStop + 1]; w++) {
+                int walkDest = walkTargets[w];
+                if (bags.improve(walkDest, legs, arrivalTime + walkDurations[w], arrivalStop, -1, arrivalTime,
+                        legs)) {
+                    directArrival = Math.min(directArrival, directArrivalAt(bags, endStopIndices, walkDest));
+                }
+            }
+        }
+        // #######################################################################################
+
+        // #######################################################################################
+        // Print every Pareto-optimal journey, by increasing number of transfers
+        // #######################################################################################
+        int previousArrival = Integer.MAX_VALUE;
+        boolean found = false;
+        for (int legs = 1; legs <= maxLegs; legs++) {
+            int bestEndStop = -1;
+            int bestArrival = Integer.MAX_VALUE;
+            for (int endStop : endStopIndices) {
+                if (bags.getArrival(endStop, legs) < bestArrival) {
+                    bestArrival = bags.getArrival(endStop, legs);
+                    bestEndStop = endStop;
+                }
+            }
+            if (bestArrival >= previousArrival) {
+                continue; // dominated by a journey with fewer transfers
+            }
+            previousArrival = bestArrival;
+            if (!found) {
+                System.out.println("Paths from " + start + " to " + destination + ":");
+                found = true;
+            }
+            System.out.println("With " + (legs - 1) + " transfer(s), arriving at "
+                    + Calculator.intToTime(bestArrival) + ":");
+
+            List<Connexion> path = new ArrayList<>();
+            int currentStop = bestEndStop;
+            int currentSlot = legs;
+            while (bags.getParentStop(currentStop, currentSlot) != -1) {
+                int previousStop = bags.getParentStop(currentStop, currentSlot);
+                int parentTrip = bags.getParentTrip(currentStop, currentSlot);
+                String tripId = parentTrip == -1 ? null : timetable.getTripId(parentTrip);
+                path.add(0, new Connexion(tripId, timetable.getStop(previousStop).getStopId(),
+                        timetable.getStop(currentStop).getStopId(),
+                        bags.getParentDeparture(currentStop, currentSlot), bags.getArrival(currentStop, currentSlot)));
+                currentSlot = bags.getParentSlot(currentStop, currentSlot);
+                currentStop = previousStop;
+            }
             for (Connexion connexion : path) {
                 if (connexion.getTripId() != null) {
-                    printTransport(connexion, previousConnection.get(connexion.getToId()));
+                    printTransport(connexion);
                 } else {
                     printWalk(connexion);
                 }
             }
         }
+        if (!found) {
+            System.out.println("No path found from " + start + " to " + destination);
+        }
+    }
+
+    /**
+     * @brief Returns the earliest arrival with a single trip at a stop if it is
+     *        one of the destination stops.
+     * @param bags           The bags of the multi-criteria scan.
+     * @param endStopIndices The dense indices of the destination stops.
+     * @param stop           The stop that was just improved.
+     * @return The arrival time, or Integer.MAX_VALUE if the stop is not a
+     *         destination stop.
+     */
+    private int directArrivalAt(ParetoWorkspace bags, int[] endStopIndices, int stop) {
+        for (int endStop : endStopIndices) {
+            if (endStop == stop) {
+                return bags.getArrival(stop, 1);
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * @brief Implementation of the profile CSA: computes, in a single backward
+     *        scan over the connexions, every Pareto-optimal journey between
+     *        start and destination departing within a time window.
+     *
+     *        The connexions are scanned by decreasing departure time, from the
+     *        last one down to the first one departing at windowStart. Every stop
+     *        keeps the Pareto set of (departure, arrival at destination) pairs
+     *        reachable from it, and every trip the earliest arrival at the
+     *        destination when staying seated. A connexion then arrives at the
+     *        destination at the earliest of:
+     *        - its arrival at a destination stop (or a walk from there to one),
+     *        - staying in the same trip,
+     *        - transferring at its arrival stop, or at a stop within walking
+     *        distance, to a connexion departing after it.
+     *        Complexity: O(n) profile insertions where n is the number of
+     *        connexions departing after windowStart, instead of one forward scan
+     *        per candidate departure time.
+     * @param start       The starting position.
+     * @param destination The ending position.
+     * @param windowStart The earliest departure time.
+     * @param windowEnd   The latest departure time.
+     * @param variant     Whether the transportation mode flags apply.
+     * @return The earliest-arrival function of the journey, empty if no journey
+     *         departs within the window, or null if the input is invalid.
+     */
+    public Profile findProfile(String start, String destination, String windowStart, String windowEnd,
+            boolean variant) {
+        // #######################################################################################
+        // Check the validity of the input parameters
+        // #######################################################################################
+        if (!isValidTimeFormat(windowStart) || !isValidTimeFormat(windowEnd)) {
+            System.err.println("Invalid time format: " + windowStart + " - " + windowEnd);
+            return null;
+        }
+        int earliestDeparture = Calculator.timeToInt(windowStart);
+        int latestDeparture = Calculator.timeToInt(windowEnd);
+        if (latestDeparture < earliestDeparture) {
+            System.err.println("Invalid time window: " + windowStart + " - " + windowEnd);
+            return null;
+        }
+        List<Stop> startingStops = findStopsByName(start);
+        if (startingStops.isEmpty()) {
+            System.err.println("No stops found with the name: " + start);
+            printSuggestions(start);
+            return null;
+        }
+        List<Stop> endStops = findStopsByName(destination);
+        if (endStops.isEmpty()) {
+            System.err.println("No stops found with the name: " + destination);
+            printSuggestions(destination);
+            return null;
+        }
+        // #######################################################################################
+
+        // #######################################################################################
+        // Walking time from each stop to the nearest destination stop
+        // Walks are symmetric (same distance both ways), so they are read from the
+        // destination stops instead of scanning every stop
+        // #######################################################################################
+        int stopCount = timetable.getStopCount();
+        int[] walkToDestination = new int[stopCount];
+        Arrays.fill(walkToDestination, Integer.MAX_VALUE);
+        for (Stop endStop : endStops) {
+            walkToDestination[timetable.getStopIndex(endStop.getStopId())] = 0;
+        }
+        int[] endWalkOffsets = timetable.getWalkOffsets();
+        int[] endWalkTargets = timetable.getWalkTargets();
+        int[] endWalkDurations = timetable.getWalkDurations();
+        for (Stop endStop : endStops) {
+            int end = timetable.getStopIndex(endStop.getStopId());
+            for (int w = endWalkOffsets[end]; w < endWalkOffsets[end + 1]; w++) {
+                int walkStart = endWalkTargets[w];
+                walkToDestination[walkStart] = Math.min(walkToDestination[walkStart], endWalkDurations[w]);
+            }
+        }
+
+        Profile[] profiles = new Profile[stopCount]; // created when a stop gets its first entry
+        int[] tripArrival = new int[timetable.getTripSlotCount()]; // arrival at destination staying seated
+        Arrays.fill(tripArrival, Integer.MAX_VALUE);
+        // #######################################################################################
+
+        // #######################################################################################
+        // Main loop: connexions by decreasing departure time, down to windowStart
+        // #######################################################################################
+        // In variant mode, the connexions of the excluded modes are skipped with a
+        // single AND, or not scanned at all once the filtered timetable of this
+        // combination of modes is cached
+        int modeMask = variant ? getModeMask() : Timetable.ALL_MODES;
+        Timetable scanned = timetable.forDate(this.date).forModes(modeMask);
+        int[] departures = scanned.getDepartures();
+        int[] arrivals = scanned.getArrivals();
+        int[] fromStops = scanned.getFromStops();
+        int[] toStops = scanned.getToStops();
+        int[] trips = scanned.getTrips();
+        byte[] modes = scanned.getModes();
+        int[] walkOffsets = scanned.getWalkOffsets();
+        int[] walkTargets = scanned.getWalkTargets();
+        int[] walkDurations = scanned.getWalkDurations();
+        int startIndex = scanned.getMinuteIndex().startIndex(earliestDeparture);
+
+        for (int i = departures.length - 1; i >= startIndex; i--) {
+            if ((modes[i] & modeMask) == 0) {
+                continue; // skip the connexion if not demanded by the user
+            }
+            int arrivalStop = toStops[i];
+            int arrivalTime = arrivals[i];
+
+            // walking (or being) at the destination
+            int best = walkToDestination[arrivalStop] == Integer.MAX_VALUE ? Integer.MAX_VALUE
+                    : arrivalTime + walkToDestination[arrivalStop];
+            // staying seated
+            best = Math.min(best, tripArrival[trips[i]]);
+            // transferring at the arrival stop
+            if (profiles[arrivalStop] != null) {
+                best = Math.min(best, profiles[arrivalStop].evaluate(arrivalTime));
+            }
+            // transferring after a walk
+            for (int w = walkOffsets[arrivalStop]; w < walkOffsets[arrivalStop + 1]; w++) {
+                int walkDest = walkTargets[w];
+                if (profiles[walkDest] != null) {
+                    best = Math.min(best, profiles[walkDest].evaluate(arrivalTime + walkDurations[w]));
+                }
+            }
+            if (best == Integer.MAX_VALUE) {
+                continue; // the destination is not reachable with this connexion
+            }
+
+            tripArrival[trips[i]] = Math.min(tripArrival[trips[i]], best);
+            int departureStop = fromStops[i];
+            if (profiles[departureStop] == null) {
+                profiles[departureStop] = new Profile();
+            }
+            profiles[departureStop].add(departures[i], best);
+        }
+        // #######################################################################################
+
+        // #######################################################################################
+        // Merge the profiles of the starting stops with the same name, keeping the
+        // departures within the window
+        // #######################################################################################
+        List<int[]> candidates = new ArrayList<>();
+        for (Stop startingStop : startingStops) {
+            Profile profile = profiles[timetable.getStopIndex(startingStop.getStopId())];
+            if (profile == null)
+                continue;
+            for (int k = 0; k < profile.size(); k++) {
+                if (profile.getDeparture(k) <= latestDeparture) {
+                    candidates.add(new int[] { profile.getDeparture(k), profile.getArrival(k) });
+                }
+            }
+        }
+        candidates.sort((a, b) -> Integer.compare(b[0], a[0])); // by decreasing departure time
+        Profile result = new Profile();
+        for (int[] candidate : candidates) {
+            result.add(candidate[0], candidate[1]);
+        }
+        return result;
+    }
+
+    /**
+     * @brief One-to-all CSA: finds the earliest arrival at every stop reachable
+     *        from start within a travel time budget.
+     *
+     *        The scan is the one of findJourney without a destination: it starts
+     *        at the first connexion departing at the departure time and stops at
+     *        the first one departing after departure + budget, so that a single
+     *        scan replaces one query per destination. The walks from the
+     *        starting stops are taken before the scan.
+     *        Complexity: O(n - k) where k is the number of connexions departing
+     *        before the departure time or after departure + budget.
+     * @param start   The starting position.
+     * @param time    The time at which the journey starts.
+     * @param budget  The travel time budget in seconds.
+     * @param variant Whether the transportation mode flags apply.
+     * @return The earliest arrival at every stop, or null if the input is
+     *         invalid.
+     */
+    public Isochrone findIsochrone(String start, String time, int budget, boolean variant) {
+        // #######################################################################################
+        // Check the validity of the input parameters
+        // #######################################################################################
+        if (!isValidTimeFormat(time)) {
+            System.err.println("Invalid time format: " + time);
+            return null;
+        }
+        int userStartTime = Calculator.timeToInt(time);
+        if (userStartTime < 0 || budget < 0) {
+            System.err.println("Invalid time given: " + time + " (budget " + budget + " s)");
+            return null;
+        }
+        List<Stop> startingStops = findStopsByName(start);
+        if (startingStops.isEmpty()) {
+            System.err.println("No stops found with the name: " + start);
+            printSuggestions(start);
+            return null;
+        }
+        int limit = userStartTime + budget;
+        // #######################################################################################
+
+        int modeMask = variant ? getModeMask() : Timetable.ALL_MODES;
+        Timetable scanned = timetable.forDate(this.date).forModes(modeMask);
+        int[] departures = scanned.getDepartures();
+        int[] arrivals = scanned.getArrivals();
+        int[] fromStops = scanned.getFromStops();
+        int[] toStops = scanned.getToStops();
+        int[] trips = scanned.getTrips();
+        byte[] modes = scanned.getModes();
+        int[] walkOffsets = scanned.getWalkOffsets();
+        int[] walkTargets = scanned.getWalkTargets();
+        int[] walkDurations = scanned.getWalkDurations();
+
+        // ########################################################################################
+        // The starting stops and the stops within walking distance of them
+        // ########################################################################################
+        QueryWorkspace reached = workspaces.get();
+        reached.reset();
+        for (Stop startingStop : startingStops) {
+            reached.setArrival(timetable.getStopIndex(startingStop.getStopId()), userStartTime);
+        }
+        for (Stop startingStop : startingStops) {
+            int s = timetable.getStopIndex(startingStop.getStopId());
+            for (int w = walkOffsets[s]; w < walkOffsets[s + 1]; w++) {
+                int walkArrivalTime = userStartTime + walkDurations[w];
+                if (walkArrivalTime <= limit && reached.getArrival(walkTargets[w]) > walkArrivalTime) {
+                    reached.setArrival(walkTargets[w], walkArrivalTime);
+                }
+            }
+        }
+
+        // ########################################################################################
+        // Main loop, from the starting criterion to the end of the budget
+        // ########################################################################################
+        // nothing departing after the limit arrives within the budget
+        MinuteIndex minuteIndex = scanned.getMinuteIndex();
+        int endIndex = minuteIndex.startIndex(limit + 1);
+        for (int i = minuteIndex.startIndex(userStartTime); i < endIndex; i++) {
+            if ((modes[i] & modeMask) == 0) {
+                continue;
+            }
+            int trip = trips[i];
+            if (!reached.isTripReached(trip)) {
+                if (reached.getArrival(fromStops[i]) > departures[i]) {
+                    continue;
+                }
+                reached.reachTrip(trip, fromStops[i], departures[i]);
+            }
+            int arrivalStop = toStops[i];
+            int arrivalTime = arrivals[i];
+            if (arrivalTime <= limit && reached.getArrival(arrivalStop) > arrivalTime) {
+                reached.setArrival(arrivalStop, arrivalTime);
+                for (int w = walkOffsets[arrivalStop]; w < walkOffsets[arrivalStop + 1]; w++) {
+                    int walkArrivalTime = arrivalTime + walkDurations[w];
+                    if (walkArrivalTime <= limit && reached.getArrival(walkTargets[w]) > walkArrivalTime) {
+                        reached.setArrival(walkTargets[w], walkArrivalTime);
+                    }
+                }
+            }
+        }
+
+        // ########################################################################################
+        // Copy the arrivals out of the workspace, which the next query reuses
         // ########################################################################################
+        int[] result = new int[timetable.getStopCount()];
+        for (int s = 0; s < result.length; s++) {
+            result[s] = reached.getArrival(s);
+        }
+        return new Isochrone(timetable, userStartTime, budget, result);
     }
 
     /**
-     * @brief Finds all stops with the given name.
+     * @brief Finds the earliest arrival at the destination for up to 64
+     *        departure times from the same start, in a single scan.
+     *
+     *        Same journeys as findPath for each departure time, but the
+     *        connexions are read once for all of them (see scanLanes).
+     * @param start       The starting position.
+     * @param destination The ending position.
+     * @param times       The departure times, at most LaneWorkspace.LANES.
+     * @param variant     Whether the transportation mode flags apply.
+     * @return The arrival time for each departure time (Integer.MAX_VALUE if
+     *         the destination cannot be reached), or null if the input is
+     *         invalid.
+     */
+    public int[] findArrivals(String start, String destination, String[] times, boolean variant) {
+        if (times.length == 0 || times.length > LaneWorkspace.LANES) {
+            System.err.println("Between 1 and " + LaneWorkspace.LANES + " departure times expected: " + times.length);
+            return null;
+        }
+        int[] laneTimes = new int[times.length];
+        for (int l = 0; l < times.length; l++) {
+            if (!isValidTimeFormat(times[l]) || Calculator.timeToInt(times[l]) < 0) {
+                System.err.println("Invalid time format: " + times[l]);
+                return null;
+            }
+            laneTimes[l] = Calculator.timeToInt(times[l]);
+        }
+        int[] startIndices = findStopIndices(start);
+        int[] endIndices = findStopIndices(destination);
+        if (startIndices == null || endIndices == null)
+            return null;
+        int[][] laneStops = new int[times.length][];
+        Arrays.fill(laneStops, startIndices);
+        return scanLanes(laneStops, laneTimes, endIndices, variant ? getModeMask() : Timetable.ALL_MODES);
+    }
+
+    /**
+     * @brief Finds the earliest arrival at the destination from up to 64
+     *        starts leaving at the same time, in a single scan.
+     * @param starts      The starting positions, at most LaneWorkspace.LANES.
+     * @param destination The ending position.
+     * @param time        The departure time.
+     * @param variant     Whether the transportation mode flags apply.
+     * @return The arrival time from each start (Integer.MAX_VALUE if the
+     *         destination cannot be reached), or null if the input is invalid.
+     */
+    public int[] findArrivalsFrom(String[] starts, String destination, String time, boolean variant) {
+        if (starts.length == 0 || starts.length > LaneWorkspace.LANES) {
+            System.err.println("Between 1 and " + LaneWorkspace.LANES + " starts expected: " + starts.length);
+            return null;
+        }
+        if (!isValidTimeFormat(time) || Calculator.timeToInt(time) < 0) {
+            System.err.println("Invalid time format: " + time);
+            return null;
+        }
+        int[][] laneStops = new int[starts.length][];
+        for (int l = 0; l < starts.length; l++) {
+            laneStops[l] = findStopIndices(starts[l]);
+            if (laneStops[l] == null)
+                return null;
+        }
+        int[] endIndices = findStopIndices(destination);
+        if (endIndices == null)
+            return null;
+        int[] laneTimes = new int[starts.length];
+        Arrays.fill(laneTimes, Calculator.timeToInt(time));
+        return scanLanes(laneStops, laneTimes, endIndices, variant ? getModeMask() : Timetable.ALL_MODES);
+    }
+
+    /**
+     * @brief Bit-parallel CSA: runs the scan of findJourney for up to 64
+     *        queries (lanes) at once.
+     *
+     *        Each connexion is read once for every lane: the lanes seated in
+     *        its trip and the lanes waiting at its departure stop in time are
+     *        combined into one mask, and the arrival stop is improved for the
+     *        lanes of that mask. A connexion no lane can take is skipped with
+     *        the same two tests as in findJourney, so the scan costs about one
+     *        single query plus the work of the lanes that actually move,
+     *        instead of one full scan per lane.
+     *        The scan starts at the earliest departure time and stops once every
+     *        lane has reached the destination before the current connexion.
+     * @param laneStops      The dense indices of the starting stops of each lane.
+     * @param laneTimes      The departure time of each lane.
+     * @param endStopIndices The dense indices of the destination stops.
+     * @param modeMask       The transportation modes that may be used.
+     * @return The arrival time of each lane at the destination.
+     */
+    private int[] scanLanes(int[][] laneStops, int[] laneTimes, int[] endStopIndices, int modeMask) {
+        int laneCount = laneTimes.length;
+        LaneWorkspace lanes = laneWorkspaces.get();
+        lanes.reset();
+        int earliestDeparture = Integer.MAX_VALUE;
+        for (int l = 0; l < laneCount; l++) {
+            for (int stop : laneStops[l]) {
+                lanes.improve(stop, 1L << l, laneTimes[l]);
+            }
+            earliestDeparture = Math.min(earliestDeparture, laneTimes[l]);
+        }
+
+        // best arrival at the destination of each lane, for the stopping criterion
+        int[] best = new int[laneCount];
+        for (int l = 0; l < laneCount; l++) {
+            best[l] = bestArrival(lanes, endStopIndices, l);
+        }
+        int latestBest = max(best);
+
+        Timetable scanned = timetable.forDate(this.date).forModes(modeMask);
+        int[] departures = scanned.getDepartures();
+        int[] arrivals = scanned.getArrivals();
+        int[] fromStops = scanned.getFromStops();
+        int[] toStops = scanned.getToStops();
+        int[] trips = scanned.getTrips();
+        byte[] modes = scanned.getModes();
+        int[] walkOffsets = scanned.getWalkOffsets();
+        int[] walkTargets = scanned.getWalkTargets();
+        int[] walkDurations = scanned.getWalkDurations();
+        for (int i = scanned.getMinuteIndex().startIndex(earliestDeparture); i < departures.length; i++) {
+            if (departures[i] > latestBest) {
+                break; // stopping criterion of every lane
+            }
+            if ((modes[i] & modeMask) == 0) {
+                continue;
+            }
+            int trip = trips[i];
+            long seated = lanes.getTripLanes(trip);
+            if (seated == 0 && lanes.getMinArrival(fromStops[i]) > departures[i]) {
+                continue; // no lane can take this connexion
+            }
+            long taking = seated | lanes.getLanesAt(fromStops[i], departures[i]);
+            if (taking != seated) {
+                lanes.setTripLanes(trip, taking);
+            }
+            int arrivalStop = toStops[i];
+            int arrivalTime = arrivals[i];
+            long improved = lanes.improve(arrivalStop, taking, arrivalTime);
+            if (improved == 0) {
+                continue;
+            }
+            boolean destinationReached = false;
+            for (int endStop : endStopIndices) {
+                destinationReached |= arrivalStop == endStop;
+            }
+            for (int w = walkOffsets[arrivalStop]; w < walkOffsets[arrivalStop + 1]; w++) {
+                if (lanes.improve(walkTargets[w], improved, arrivalTime + walkDurations[w]) != 0) {
+                    for (int endStop : endStopIndices) {
+                        destinationReached |= walkTargets[w] == endStop;
+                    }
+                }
+            }
+            if (destinationReached) {
+                for (int l = 0; l < laneCount; l++) {
+                    best[l] = bestArrival(lanes, endStopIndices, l);
+                }
+                latestBest = max(best);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @brief Returns the earliest arrival of a lane at the destination stops.
+     * @param lanes          The workspace of the scan.
+     * @param endStopIndices The dense indices of the destination stops.
+     * @param lane           The lane.
+     * @return The arrival time, or Integer.MAX_VALUE if none is reached.
+     */
+    private int bestArrival(LaneWorkspace lanes, int[] endStopIndices, int lane) {
+        int best = Integer.MAX_VALUE;
+        for (int endStop : endStopIndices) {
+            best = Math.min(best, lanes.getArrival(endStop, lane));
+        }
+        return best;
+    }
+
+    private static int max(int[] values) {
+        int max = Integer.MIN_VALUE;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    /**
+     * @brief Finds the dense indices of the stops with the given name, printing
+     *        an error if there is none.
+     * @param stopName The name of the stops.
+     * @return The dense stop indices, or null if no stop has this name.
+     */
+    private int[] findStopIndices(String stopName) {
+        List<Stop> stops = findStopsByName(stopName);
+        if (stops.isEmpty()) {
+            System.err.println("No stops found with the name: " + stopName);
+            printSuggestions(stopName);
+            return null;
+        }
+        int[] indices = new int[stops.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = timetable.getStopIndex(stops.get(i).getStopId());
+        }
+        return indices;
+    }
+
+    /**
+     * @brief Finds all stops with the given name, ignoring case and accents.
      * @param stopName The name of the stop to find.
      * @return A list of stops with the given name.
      */
     private List<Stop> findStopsByName(String stopName) {
-        List<Stop> stops = new ArrayList<>();
-        if (stopName == null)
-            return stops;
+        return stopNameIndex.find(stopName);
+    }
 
-        String targetName = stopName.toLowerCase();
-        for (Stop stop : stopMap.values()) {
-            String currentName = stop.getStopName();
-            if (currentName != null && currentName.toLowerCase().equals(targetName)) {
-                stops.add(stop);
-            }
+    /**
+     * @brief Prints the stop names starting with the given name, if any.
+     * @param stopName The name that did not match any stop.
+     */
+    private void printSuggestions(String stopName) {
+        List<String> suggestions = stopNameIndex.findByPrefix(stopName, 5);
+        if (!suggestions.isEmpty()) {
+            System.err.println("Did you mean: " + String.join(", ", suggestions) + " ?");
         }
-        return stops;
     }
 
     /**
      * @brief Prints the transport information.
-     * @param start The starting connexion.
-     * @param end   The ending connexion.
+     * @param leg The leg of the path, from the stop where the trip is boarded to
+     *            the stop where it is left.
      */
-    private void printTransport(Connexion start, Connexion end) {
-        if (start == null || end == null || start.getTripId() == null)
+    private void printTransport(Connexion leg) {
+        if (leg == null || leg.getTripId() == null)
             return;
 
-        String fromName = stopMap.get(start.getFromId()).getStopName();
-        String toName = stopMap.get(end.getToId()).getStopName();
-        Route route = routeMap.get(tripMap.get(start.getTripId()).getRouteId());
+        String fromName = stopMap.get(leg.getFromId()).getStopName();
+        String toName = stopMap.get(leg.getToId()).getStopName();
+        Route route = routeMap.get(tripMap.get(leg.getTripId()).getRouteId());
 
-        String departureTimeStr = Calculator.intToTime(start.getDepartureTime());
-        String arrivalTimeStr = Calculator.intToTime(end.getArrivalTime());
+        String departureTimeStr = Calculator.intToTime(leg.getDepartureTime());
+        String arrivalTimeStr = Calculator.intToTime(leg.getArrivalTime());
 
         System.out.println("Take " + route.getRouteType() + " " + route.getRouteShortName() +
                 " from " + fromName + " (" + departureTimeStr + ")" +
@@ -332,48 +1175,33 @@ public class PathFinder {
      * @return true if the time format is valid, false otherwise.
      */
     private boolean isValidTimeFormat(String time) {
-        return time != null && time.matches("^\\d{2};\\d{2}(;\\d{2})?$");
+        return time != null && TIME_FORMAT.matcher(time).matches();
     }
 
     /**
-     * @brief Checks the flags for the given connexion.
-     * @param connexion The connexion to check.
-     * @return true if the flags are valid, false otherwise.
+     * @brief Combines the flags into a mask of transportation mode bits.
+     * @return The mode mask of the variant mode.
      */
-    private boolean checkFlags(Connexion connexion) {
-        if (connexion.getTripId() == null) {
-            return true;
-        }
-
-        String routeType = getRouteType(connexion);
-        if (routeType == null) {
-            return false; 
-        }
-        switch (routeType.toLowerCase()) {
-            case "bus":
-                return bus;
-            case "train":
-                return train;
-            case "tram":
-                return tram;
-            case "metro":
-                return metro;
-            default:
-                return false; 
-        }
+    private int getModeMask() {
+        return (bus ? Timetable.BUS : 0) | (train ? Timetable.TRAIN : 0) | (tram ? Timetable.TRAM : 0)
+                | (metro ? Timetable.METRO : 0);
     }
 
     /**
-     * @brief Gets the route type for a given connexion.
-     * @param connexion The connexion to get the route type for.
-     * @return The route type as a string.
+     * @brief Sets the cache of the journeys found by findJourney.
+     * @param cache The cache, null to disable caching. It must only hold
+     *              journeys of this network.
      */
-    private String getRouteType(Connexion connexion) {
-        if (connexion.getTripId() == null) {
-            return null;
-        }
-        String routeId = tripMap.get(connexion.getTripId()).getRouteId();
-        return routeMap.get(routeId).getRouteType();
+    public void setCache(JourneyCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @brief Returns the cache of the journeys found by findJourney.
+     * @return The cache, null if caching is disabled.
+     */
+    public JourneyCache getCache() {
+        return this.cache;
     }
 
     /**
@@ -407,4 +1235,13 @@ public class PathFinder {
     public void setMetro(boolean metro) {
         this.metro = metro;
     }
+
+    /**
+     * @brief Sets the date of the searches other than findJourney, only the
+     *        trips running on it being taken.
+     * @param date The date, null to take the trips of every day.
+     */
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,675 @@
+package functional;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import structures.Journey;
+import structures.JourneyCache;
+import structures.LiveTimetable;
+import structures.Network;
+import structures.Timetable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @brief HTTP/JSON routing service over a loaded network, built on the JDK
+ *        HTTP server.
+ *
+ *        Endpoints:
+ *        - GET /journey?from=...&to=...&time=HH:MM:SS[&modes=bus+tram]
+ *        [&date=YYYY-MM-DD]: the earliest-arrival journey, in the JSON format
+ *        of the BatchRunner, on the trips of every day if no date is given;
+ *        - GET /stats: the request count and rate, the latency percentiles of
+ *        the last requests, the hits and misses of the journey cache and the
+ *        version of the network;
+ *        - POST /reload[?agencies=A,B]: rebuilds the network from the GTFS
+ *        files in the background, reading again only the files of the given
+ *        agency directories if any (see Initializer.reload);
+ *        - POST /delays: applies the delays of the body, one
+ *        'trip_id,stop_sequence,delay' line each with the delay in seconds
+ *        (see LiveTimetable).
+ *
+ *        Every request is handled on its own virtual thread when the JDK has
+ *        them (Java 21 and later), and on a cached pool of platform threads
+ *        otherwise. The scans themselves run on a fixed pool of platform
+ *        threads, one per core by default: the handler waits for its scan,
+ *        which costs nothing on a virtual thread, and every scan thread keeps
+ *        reusing its own workspace instead of allocating one per request.
+ *
+ *        The network, its PathFinder and its cache are published together as
+ *        one immutable Routing through an atomic reference: a request reads
+ *        the reference once and uses that network until it is answered, so a
+ *        reload swaps the network without any lock on the query path and
+ *        without stopping the service, the requests in progress finishing on
+ *        the previous network and the next ones using the new one. Delays are
+ *        published the same way, as a network sharing everything with the
+ *        scheduled one but its timetable, and are applied again to the network
+ *        of a reload. The PathFinder of a delayed version keeps the workspaces
+ *        and the cache of the previous one.
+ */
+public class RoutingServer {
+
+    private static final int LATENCY_WINDOW = 8192; // number of last requests the statistics are computed on
+    public static final int DEFAULT_CACHE_SIZE = 50000; // journeys kept by the cache
+    private static final LocalDate INVALID_DATE = LocalDate.MIN; // date parameter that could not be parsed
+
+    /**
+     * @brief A network along with the PathFinder and the cache searching it,
+     *        published at once.
+     */
+    private static final class Routing {
+        final Network network;
+        final PathFinder finder;
+        final int version; // 1 for the first network, incremented by every publication
+
+        Routing(Network network, PathFinder finder, int version) {
+            this.network = network;
+            this.finder = finder;
+            this.version = version;
+        }
+    }
+
+    // #### Attributes ####
+
+    private final AtomicReference<Routing> routing = new AtomicReference<>();
+    private final int cacheSize;
+    private final HttpServer server;
+    private final ExecutorService requestExecutor; // handles the exchanges
+    private final ExecutorService searchExecutor; // runs the scans
+    private final boolean virtualThreads;
+    private final int searchThreads;
+
+    // reloads
+    private volatile Initializer initializer = null; // rebuilds the network, null if reloads are not supported
+    private final ExecutorService reloadExecutor; // runs the reloads, one at a time
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private volatile long lastReloadMillis = -1; // duration of the last successful reload, -1 if none
+
+    // delays, the publications being serialized by the lock of updates (never
+    // taken by the queries)
+    private final Object updates = new Object();
+    private Network scheduled; // the network without delays
+    private volatile LiveTimetable live = null; // over the timetable of scheduled, null until a delay is announced
+    private volatile long lastDelayMicros = -1; // time taken to apply the last delays, -1 if none
+
+    // statistics
+    private final long startTime = System.nanoTime();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder(); // responses with a 4xx or 5xx status
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_WINDOW); // ring of the last latencies, in ns
+    private final AtomicLongArray completions = new AtomicLongArray(LATENCY_WINDOW); // and of their end times
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the RoutingServer class, with a journey cache of
+     *        DEFAULT_CACHE_SIZE journeys.
+     *
+     * @param network       The network the journeys are searched on.
+     * @param port          The port to listen on, 0 for any free port.
+     * @param searchThreads The number of threads running the scans.
+     * @throws IOException If the port cannot be bound.
+     */
+    public RoutingServer(Network network, int port, int searchThreads) throws IOException {
+        this(network, port, searchThreads, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @brief Constructor for the RoutingServer class, the server being started
+     *        by start().
+     *
+     * @param network       The network the journeys are searched on.
+     * @param port          The port to listen on, 0 for any free port.
+     * @param searchThreads The number of threads running the scans.
+     * @param cacheSize     The number of journeys kept by the cache, 0 for no
+     *                      cache.
+     * @throws IOException If the port cannot be bound.
+     */
+    public RoutingServer(Network network, int port, int searchThreads, int cacheSize) throws IOException {
+        this.cacheSize = cacheSize;
+        publish(network);
+        this.searchThreads = Math.max(1, searchThreads);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.searchExecutor = Executors.newFixedThreadPool(this.searchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "search-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reloadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.requestExecutor = virtual != null ? virtual : Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "request-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext("/journey", this::handleJourney);
+        this.server.createContext("/stats", this::handleStats);
+        this.server.createContext("/reload", this::handleReload);
+        this.server.createContext("/delays", this::handleDelays);
+        this.server.setExecutor(this.requestExecutor);
+    }
+
+    // #### Methods ####
+
+    /**
+     * @brief Creates an executor starting a virtual thread per task, through
+     *        reflection so that the code still compiles and runs on a JDK
+     *        without virtual threads.
+     *
+     * @return The executor, or null if the JDK has no virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null; // before Java 21, or a preview not enabled
+        }
+    }
+
+    /**
+     * @brief Publishes a network: the requests received from then on are
+     *        answered on it, with the delays announced so far and a new cache,
+     *        while the requests in progress finish on the previous one.
+     *
+     * @param network The network the journeys are searched on, without delays.
+     */
+    public void publish(Network network) {
+        synchronized (this.updates) {
+            List<LiveTimetable.Delay> announced = this.live == null ? List.of() : this.live.getDelays();
+            this.scheduled = network;
+            this.live = null;
+            if (!announced.isEmpty()) {
+                this.live = new LiveTimetable(network.getTimetable());
+                if (this.live.apply(announced) > 0) { // the delayed trips may be gone
+                    network = new Network(network.getStops(), network.getTrips(), network.getRoutes(),
+                            this.live.getTimetable(), network.getStopNameIndex());
+                }
+            }
+            install(network);
+        }
+    }
+
+    /**
+     * @brief Applies delays to the published network, which is published again
+     *        with them. The PathFinder of the new version keeps the workspaces
+     *        of its threads and the cache, which only loses the journeys that
+     *        went through a moved connexion.
+     *
+     * @param delays The delays, applied in order.
+     * @return The number of delays applied, those of unknown trips being
+     *         ignored.
+     */
+    public int applyDelays(List<LiveTimetable.Delay> delays) {
+        synchronized (this.updates) {
+            long start = System.nanoTime();
+            if (this.live == null) {
+                this.live = new LiveTimetable(this.scheduled.getTimetable());
+            }
+            int applied = this.live.apply(delays);
+            if (applied > 0) {
+                Timetable timetable = this.live.getTimetable();
+                Network network = new Network(this.scheduled.getStops(), this.scheduled.getTrips(),
+                        this.scheduled.getRoutes(), timetable, this.scheduled.getStopNameIndex());
+                PathFinder previous = this.routing.get().finder;
+                JourneyCache cache = previous.getCache();
+                if (cache != null) {
+                    cache.update(timetable, this.live.getChangedDepartures());
+                }
+                PathFinder finder = previous.withTimetable(timetable);
+                this.routing.updateAndGet(current -> new Routing(network, finder, current.version + 1));
+            }
+            this.lastDelayMicros = (System.nanoTime() - start) / 1000;
+            return applied;
+        }
+    }
+
+    /**
+     * @brief Swaps the network the requests are answered on, with a new
+     *        PathFinder and a new cache.
+     *
+     * @param network The network, delays included.
+     */
+    private void install(Network network) {
+        PathFinder finder = new PathFinder(network.getStops(), network.getTrips(), network.getRoutes(),
+                network.getTimetable(), network.getStopNameIndex());
+        if (this.cacheSize > 0) {
+            finder.setCache(new JourneyCache(this.cacheSize));
+        }
+        this.routing.updateAndGet(previous -> new Routing(network, finder, previous == null ? 1
+                : previous.version + 1));
+    }
+
+    /**
+     * @brief Sets the initializer the network was built with, which enables
+     *        reloads.
+     *
+     * @param initializer The initializer, null to disable reloads.
+     */
+    public void setInitializer(Initializer initializer) {
+        this.initializer = initializer;
+    }
+
+    /**
+     * @brief Starts rebuilding the network in the background, then publishes
+     *        it. The current network keeps answering until then, and also if
+     *        the rebuild fails.
+     *
+     * @param agencies The names of the agency directories that changed, null
+     *                 for all of them.
+     * @return false if a reload is already in progress, nothing being started.
+     * @throws IllegalStateException If no initializer was set.
+     */
+    public boolean reload(Set<String> agencies) {
+        Initializer initializer = this.initializer;
+        if (initializer == null)
+            throw new IllegalStateException("No initializer to reload the network with");
+        if (!this.reloading.compareAndSet(false, true))
+            return false;
+        this.reloadExecutor.execute(() -> {
+            try {
+                long start = System.nanoTime();
+                publish(initializer.reload(agencies, false));
+                this.lastReloadMillis = (System.nanoTime() - start) / 1_000_000;
+                System.out.println("[\033[92mINFO\033[0m] Network reloaded in " + this.lastReloadMillis
+                        + " ms (version " + getNetworkVersion() + ").");
+            } catch (RuntimeException e) {
+                System.err.println("[\033[91mERROR\033[0m] Reload failed, keeping the current network.");
+                e.printStackTrace();
+            } finally {
+                this.reloading.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @brief Starts listening.
+     */
+    public void start() {
+        this.server.start();
+    }
+
+    /**
+     * @brief Stops listening and releases the threads.
+     */
+    public void stop() {
+        this.server.stop(0);
+        this.requestExecutor.shutdown();
+        this.searchExecutor.shutdown();
+        this.reloadExecutor.shutdown();
+    }
+
+    /**
+     * @brief Answers GET /journey.
+     *
+     * @param exchange The HTTP exchange.
+     * @throws IOException If the response cannot be sent.
+     */
+    private void handleJourney(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        Routing current = this.routing.get(); // answered on this network, even if another is published meanwhile
+        int code;
+        StringBuilder json = new StringBuilder(512);
+        try {
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            String from = parameters.get("from");
+            String to = parameters.get("to");
+            String time = parameters.get("time");
+            int modeMask = Timetable.parseModes(parameters.get("modes"));
+            LocalDate date = parseDate(parameters.get("date"));
+            json.append("{\"from\":");
+            JourneyJson.appendString(json, from);
+            json.append(",\"to\":");
+            JourneyJson.appendString(json, to);
+            json.append(",\"time\":");
+            JourneyJson.appendString(json, time);
+            if (!exchange.getRequestMethod().equals("GET")) {
+                code = 405;
+                json.append(",\"status\":\"METHOD_NOT_ALLOWED\"");
+            } else if (from == null || to == null || time == null || modeMask == 0 || date == INVALID_DATE) {
+                code = 400;
+                JourneyJson.appendJourney(json, current.network, null);
+            } else {
+                Future<Journey> search = this.searchExecutor.submit(
+                        () -> current.finder.findJourney(from, to, time.replace(':', ';'), modeMask, date));
+                Journey journey = search.get();
+                code = statusCode(journey.getStatus());
+                JourneyJson.appendJourney(json, current.network, journey);
+            }
+            json.append('}');
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            code = 503;
+            json.setLength(0);
+            json.append("{\"status\":\"INTERRUPTED\"}");
+        } catch (ExecutionException | RuntimeException e) {
+            code = 500;
+            json.setLength(0);
+            json.append("{\"status\":\"ERROR\",\"error\":");
+            JourneyJson.appendString(json, String.valueOf(e instanceof ExecutionException ? e.getCause() : e));
+            json.append('}');
+        }
+        send(exchange, code, json.toString());
+        record(code, System.nanoTime() - start);
+    }
+
+    /**
+     * @brief Answers GET /stats.
+     *
+     * @param exchange The HTTP exchange.
+     * @throws IOException If the response cannot be sent.
+     */
+    private void handleStats(HttpExchange exchange) throws IOException {
+        long now = System.nanoTime();
+        long count = this.requests.sum();
+        long[] window = latencyWindow();
+        Arrays.sort(window);
+        double uptime = (now - this.startTime) / 1e9;
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"uptime_s\":").append(String.format("%.1f", uptime));
+        json.append(",\"requests\":").append(count);
+        json.append(",\"errors\":").append(this.errors.sum());
+        json.append(",\"rate_per_s\":").append(String.format("%.1f", count / Math.max(1e-9, uptime)));
+        json.append(",\"recent_rate_per_s\":").append(String.format("%.1f", recentRate(now)));
+        json.append(",\"latency_ms\":{\"window\":").append(window.length);
+        json.append(",\"p50\":").append(String.format("%.3f", percentile(window, 50) / 1e6));
+        json.append(",\"p90\":").append(String.format("%.3f", percentile(window, 90) / 1e6));
+        json.append(",\"p99\":").append(String.format("%.3f", percentile(window, 99) / 1e6));
+        json.append(",\"max\":").append(String.format("%.3f", percentile(window, 100) / 1e6)).append('}');
+        Routing current = this.routing.get();
+        JourneyCache cache = current.finder.getCache();
+        if (cache != null) {
+            long hits = cache.getHits();
+            long misses = cache.getMisses();
+            json.append(",\"cache\":{\"size\":").append(cache.size());
+            json.append(",\"capacity\":").append(cache.getCapacity());
+            json.append(",\"hits\":").append(hits);
+            json.append(",\"misses\":").append(misses);
+            json.append(",\"hit_ratio\":").append(String.format("%.3f", hits / (double) Math.max(1, hits + misses)))
+                    .append('}');
+        }
+        Timetable timetable = current.network.getTimetable();
+        json.append(",\"network\":{\"version\":").append(current.version);
+        json.append(",\"stops\":").append(timetable.getStopCount());
+        json.append(",\"connexions\":").append(timetable.getConnexionCount());
+        json.append(",\"reloading\":").append(this.reloading.get());
+        json.append(",\"last_reload_ms\":").append(this.lastReloadMillis);
+        LiveTimetable delays = this.live;
+        json.append(",\"delayed_trips\":").append(delays == null ? 0 : delays.getDelayedTripCount());
+        json.append(",\"last_delays_us\":").append(this.lastDelayMicros).append('}');
+        json.append(",\"virtual_threads\":").append(this.virtualThreads);
+        json.append(",\"search_threads\":").append(this.searchThreads).append('}');
+        send(exchange, 200, json.toString());
+    }
+
+    /**
+     * @brief Answers POST /reload, the optional 'agencies' parameter listing
+     *        the agency directories that changed, separated by commas.
+     *
+     * @param exchange The HTTP exchange.
+     * @throws IOException If the response cannot be sent.
+     */
+    private void handleReload(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            send(exchange, 405, "{\"status\":\"METHOD_NOT_ALLOWED\"}");
+            return;
+        }
+        if (this.initializer == null) {
+            send(exchange, 501, "{\"status\":\"RELOAD_NOT_SUPPORTED\"}");
+            return;
+        }
+        String list = parseQuery(exchange.getRequestURI().getRawQuery()).get("agencies");
+        Set<String> agencies = null;
+        if (list != null && !list.isBlank()) {
+            agencies = new TreeSet<>();
+            for (String agency : list.split(",")) {
+                if (!agency.isBlank())
+                    agencies.add(agency.trim());
+            }
+        }
+        if (!reload(agencies)) {
+            send(exchange, 409, "{\"status\":\"ALREADY_RELOADING\"}");
+            return;
+        }
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"status\":\"RELOADING\",\"version\":").append(getNetworkVersion());
+        json.append(",\"agencies\":");
+        if (agencies == null) {
+            json.append("\"all\"");
+        } else {
+            json.append('[');
+            for (String agency : agencies) {
+                if (json.charAt(json.length() - 1) != '[')
+                    json.append(',');
+                JourneyJson.appendString(json, agency);
+            }
+            json.append(']');
+        }
+        send(exchange, 202, json.append('}').toString());
+    }
+
+    /**
+     * @brief Answers POST /delays, whose body holds a 'trip_id,stop_sequence,delay'
+     *        line per delay, a header and empty lines being skipped. No delay is
+     *        applied if a line is invalid.
+     *
+     * @param exchange The HTTP exchange.
+     * @throws IOException If the body cannot be read or the response sent.
+     */
+    private void handleDelays(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            send(exchange, 405, "{\"status\":\"METHOD_NOT_ALLOWED\"}");
+            return;
+        }
+        List<LiveTimetable.Delay> delays = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            String line;
+            int number = 0;
+            while ((line = in.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || (delays.isEmpty() && line.startsWith("trip_id")))
+                    continue;
+                String[] fields = Parser.parseCSVLine(line);
+                try {
+                    if (fields.length < 3)
+                        throw new NumberFormatException(line);
+                    delays.add(new LiveTimetable.Delay(fields[0], Integer.parseInt(fields[1].trim()),
+                            Integer.parseInt(fields[2].trim())));
+                } catch (NumberFormatException e) {
+                    send(exchange, 400, "{\"status\":\"INVALID_DELAY\",\"line\":" + number + "}");
+                    return;
+                }
+            }
+        }
+        int applied = applyDelays(delays);
+        send(exchange, 200, "{\"status\":\"APPLIED\",\"received\":" + delays.size() + ",\"applied\":" + applied
+                + ",\"version\":" + getNetworkVersion() + ",\"apply_us\":" + this.lastDelayMicros + "}");
+    }
+
+    /**
+     * @brief Maps the status of a journey to an HTTP status code.
+     *
+     * @param status The status of the journey.
+     * @return 200 when the query was answered, 404 for an unknown stop name,
+     *         400 for an invalid query.
+     */
+    private static int statusCode(Journey.Status status) {
+        switch (status) {
+            case FOUND:
+            case NOT_FOUND:
+                return 200;
+            case UNKNOWN_START:
+            case UNKNOWN_DESTINATION:
+                return 404;
+            default:
+                return 400;
+        }
+    }
+
+    /**
+     * @brief Parses the date parameter of /journey.
+     *
+     * @param date The date as 'YYYY-MM-DD' or 'YYYYMMDD', null if absent.
+     * @return The date, null if absent, INVALID_DATE if invalid.
+     */
+    private static LocalDate parseDate(String date) {
+        try {
+            return Calculator.parseDate(date);
+        } catch (IllegalArgumentException e) {
+            return INVALID_DATE;
+        }
+    }
+
+    /**
+     * @brief Decodes the parameters of a query string.
+     *
+     * @param rawQuery The raw query string, null if none.
+     * @return The parameters by name.
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null)
+            return parameters;
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals <= 0)
+                continue;
+            parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static void send(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @brief Records a request answered by /journey.
+     *
+     * @param code    The HTTP status code of the response.
+     * @param latency The time taken to answer in ns.
+     */
+    private void record(int code, long latency) {
+        this.requests.increment();
+        if (code >= 400)
+            this.errors.increment();
+        int slot = (int) (this.recorded.getAndIncrement() % LATENCY_WINDOW);
+        this.latencies.set(slot, latency);
+        this.completions.set(slot, System.nanoTime());
+    }
+
+    /**
+     * @brief Returns the latencies of the last requests.
+     *
+     * @return A copy of the latencies, at most LATENCY_WINDOW of them.
+     */
+    private long[] latencyWindow() {
+        int size = (int) Math.min(LATENCY_WINDOW, this.recorded.get());
+        long[] window = new long[size];
+        for (int i = 0; i < size; i++) {
+            window[i] = this.latencies.get(i);
+        }
+        return window;
+    }
+
+    /**
+     * @brief Returns the request rate over the last requests.
+     *
+     * @param now The current time in ns.
+     * @return The number of requests per second since the oldest request of
+     *         the window ended.
+     */
+    private double recentRate(long now) {
+        int size = (int) Math.min(LATENCY_WINDOW, this.recorded.get());
+        if (size == 0)
+            return 0;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            oldest = Math.min(oldest, this.completions.get(i));
+        }
+        return size / Math.max(1e-9, (now - oldest) / 1e9);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0)
+            return 0;
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+
+    // #### Getters ####
+
+    /**
+     * @brief Returns the port the server listens on.
+     *
+     * @return The port, chosen by the system if 0 was given.
+     */
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    public boolean usesVirtualThreads() {
+        return this.virtualThreads;
+    }
+
+    public long getRequestCount() {
+        return this.requests.sum();
+    }
+
+    public Network getNetwork() {
+        return this.routing.get().network;
+    }
+
+    /**
+     * @brief Returns the version of the published network.
+     *
+     * @return 1 for the network given to the constructor, incremented by every
+     *         publication.
+     */
+    public int getNetworkVersion() {
+        return this.routing.get().version;
+    }
+
+    public boolean isReloading() {
+        return this.reloading.get();
+    }
+}
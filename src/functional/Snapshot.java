@@ -0,0 +1,340 @@
+package functional;
+
+import objects.Route;
+import objects.Stop;
+import objects.Trip;
+import structures.Network;
+import structures.ServiceCalendar;
+import structures.StopNameIndex;
+import structures.StopSequences;
+import structures.Timetable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * @brief Binary snapshot of a fully built Network, so that a restart does not
+ *        parse the CSV files, sort the connexions, build the BallTree and
+ *        compute the walks again.
+ *
+ *        Layout (big-endian): a header (magic, format version, fingerprint of
+ *        the GTFS directory), then the stop, route and trip tables, the
+ *        connexion arrays, the walks in compressed sparse row form, the
+ *        service calendars, the stop sequences of the connexions of every
+ *        trip (which the delays refer to) and the stop name index, and a
+ *        trailing magic proving the file is complete.
+ *        The file is memory-mapped when loaded, and the arrays are bulk-copied
+ *        out of the mapping.
+ */
+public class Snapshot {
+
+    private static final int MAGIC = 0x43534131; // "CSA1"
+    private static final int VERSION = 5; // to increment whenever the layout or the IDs change
+
+    /**
+     * @brief Computes a fingerprint of the GTFS directory (path, size and last
+     *        modification time of every file), of the parameters the walks
+     *        depend on and of the format version, so that a snapshot written by
+     *        a version reading the files differently is rebuilt.
+     *
+     * @param directory           The directory where the GTFS files are located.
+     * @param maxFootDistance     The maximum walking distance in meters.
+     * @param averageWalkingSpeed The average walking speed in m/s.
+     * @return The fingerprint.
+     * @throws IOException If the directory cannot be listed.
+     */
+    public static long fingerprint(String directory, double maxFootDistance, double averageWalkingSpeed)
+            throws IOException {
+        long hash = 1125899906842597L;
+        hash = 31 * hash + VERSION;
+        hash = 31 * hash + Double.hashCode(maxFootDistance);
+        hash = 31 * hash + Double.hashCode(averageWalkingSpeed);
+        Path root = Paths.get(directory);
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.filter(Files::isRegularFile).sorted().forEach(files::add);
+        }
+        for (Path file : files) {
+            hash = 31 * hash + root.relativize(file).toString().hashCode();
+            hash = 31 * hash + Files.size(file);
+            hash = 31 * hash + Files.getLastModifiedTime(file).toMillis();
+        }
+        return hash;
+    }
+
+    /**
+     * @brief Writes a network to a snapshot file. The file is written next to
+     *        its destination and then moved, so that a reader never sees a
+     *        partial snapshot.
+     *
+     * @param filePath    The path of the snapshot file.
+     * @param fingerprint The fingerprint of the GTFS directory it was built from.
+     * @param network     The network to write.
+     * @throws IOException If an error occurs while writing the file.
+     */
+    public static void save(String filePath, long fingerprint, Network network) throws IOException {
+        Timetable timetable = network.getTimetable();
+        Path target = Paths.get(filePath);
+        Path temporary = Paths.get(filePath + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporary.toFile()), 1 << 20))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+
+            // stops, in dense index order
+            int stopCount = timetable.getStopCount();
+            out.writeInt(stopCount);
+            for (int s = 0; s < stopCount; s++) {
+                Stop stop = timetable.getStop(s);
+                writeString(out, stop.getStopId());
+                writeString(out, stop.getStopName());
+                out.writeDouble(stop.getStopLat());
+                out.writeDouble(stop.getStopLon());
+            }
+
+            // routes
+            out.writeInt(network.getRoutes().size());
+            for (Route route : network.getRoutes().values()) {
+                writeString(out, route.getRouteId());
+                writeString(out, route.getRouteShortName());
+                writeString(out, route.getRouteLongName());
+                writeString(out, route.getRouteType());
+            }
+
+            // trips, in dense index order
+            int tripCount = timetable.getTripCount();
+            out.writeInt(tripCount);
+            for (int t = 0; t < tripCount; t++) {
+                String tripId = timetable.getTripId(t);
+                writeString(out, tripId);
+                writeString(out, network.getTrips().get(tripId).getRouteId());
+                writeString(out, network.getTrips().get(tripId).getServiceId());
+            }
+
+            // connexions
+            out.writeInt(timetable.getConnexionCount());
+            writeInts(out, timetable.getDepartures());
+            writeInts(out, timetable.getArrivals());
+            writeInts(out, timetable.getFromStops());
+            writeInts(out, timetable.getToStops());
+            writeInts(out, timetable.getTrips());
+            out.write(timetable.getModes());
+
+            // walks, already in compressed sparse row form
+            out.writeInt(timetable.getWalkCount());
+            writeInts(out, timetable.getWalkOffsets());
+            writeInts(out, timetable.getWalkTargets());
+            writeInts(out, timetable.getWalkDurations());
+
+            // service calendars, a negative count if every trip runs every day
+            ServiceCalendar calendar = timetable.getCalendar();
+            out.writeInt(calendar == null ? -1 : calendar.getServiceCount());
+            if (calendar != null) {
+                out.writeLong(calendar.getFirstDay());
+                out.writeInt(calendar.getDayCount());
+                for (int s = 0; s < calendar.getServiceCount(); s++) {
+                    writeString(out, calendar.getServiceId(s));
+                }
+                for (long word : calendar.getBits()) {
+                    out.writeLong(word);
+                }
+                writeInts(out, timetable.getTripServices());
+            }
+
+            // stop sequences, a negative count if they are unknown
+            StopSequences stopSequences = timetable.getStopSequences();
+            out.writeInt(stopSequences == null ? -1 : stopSequences.getDepartureSequences().length);
+            if (stopSequences != null) {
+                writeInts(out, stopSequences.getOffsets());
+                writeInts(out, stopSequences.getDepartureSequences());
+                writeInts(out, stopSequences.getArrivalSequences());
+            }
+
+            // stop name index
+            StopNameIndex stopNameIndex = network.getStopNameIndex();
+            String[] names = stopNameIndex.getSortedNames();
+            out.writeInt(names.length);
+            for (String name : names) {
+                writeString(out, name);
+                writeString(out, stopNameIndex.getDisplayName(name));
+                List<Stop> stops = stopNameIndex.find(name);
+                out.writeInt(stops.size());
+                for (Stop stop : stops) {
+                    out.writeInt(timetable.getStopIndex(stop.getStopId()));
+                }
+            }
+
+            out.writeInt(MAGIC); // the snapshot is complete
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @brief Loads a network from a snapshot file.
+     *
+     * @param filePath    The path of the snapshot file.
+     * @param fingerprint The fingerprint of the current GTFS directory.
+     * @return The network, or null if the file is missing, was written by
+     *         another format version, is incomplete or was built from other GTFS
+     *         files.
+     * @throws IOException If an error occurs while reading the file.
+     */
+    public static Network load(String filePath, long fingerprint) throws IOException {
+        Path path = Paths.get(filePath);
+        if (!Files.isRegularFile(path))
+            return null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < 20 || in.getInt() != MAGIC || in.getInt() != VERSION || in.getLong() != fingerprint)
+                return null;
+            if (in.getInt(in.limit() - 4) != MAGIC)
+                return null; // incomplete
+
+            // stops
+            int stopCount = in.getInt();
+            Stop[] stops = new Stop[stopCount];
+            Map<String, Stop> stopMap = new HashMap<>();
+            Map<String, Integer> stopIndex = new HashMap<>();
+            for (int s = 0; s < stopCount; s++) {
+                String id = readString(in);
+                String name = readString(in);
+                double lat = in.getDouble();
+                double lon = in.getDouble();
+                stops[s] = new Stop(id, name, lat, lon);
+                stopMap.put(id, stops[s]);
+                stopIndex.put(id, s);
+            }
+
+            // routes
+            int routeCount = in.getInt();
+            Map<String, Route> routeMap = new HashMap<>();
+            for (int r = 0; r < routeCount; r++) {
+                Route route = new Route(readString(in), readString(in), readString(in), readString(in));
+                routeMap.put(route.getRouteId(), route);
+            }
+
+            // trips (their stop times are not needed once the connexions are built)
+            int tripCount = in.getInt();
+            String[] tripIds = new String[tripCount];
+            Map<String, Trip> tripMap = new HashMap<>();
+            Map<String, Integer> tripIndex = new HashMap<>();
+            for (int t = 0; t < tripCount; t++) {
+                tripIds[t] = readString(in);
+                tripMap.put(tripIds[t], new Trip(tripIds[t], readString(in), readString(in)));
+                tripIndex.put(tripIds[t], t);
+            }
+
+            // connexions
+            int connexionCount = in.getInt();
+            int[] departures = readInts(in, connexionCount);
+            int[] arrivals = readInts(in, connexionCount);
+            int[] fromStops = readInts(in, connexionCount);
+            int[] toStops = readInts(in, connexionCount);
+            int[] trips = readInts(in, connexionCount);
+            byte[] modes = new byte[connexionCount];
+            in.get(modes);
+
+            // walks
+            int walkCount = in.getInt();
+            int[] walkOffsets = readInts(in, stopCount + 1);
+            int[] walkTargets = readInts(in, walkCount);
+            int[] walkDurations = readInts(in, walkCount);
+            Timetable timetable = new Timetable(stops, stopIndex, tripIds, tripIndex, departures, arrivals,
+                    fromStops, toStops, trips, modes, walkOffsets, walkTargets, walkDurations);
+
+            // service calendars
+            int serviceCount = in.getInt();
+            if (serviceCount >= 0) {
+                long firstDay = in.getLong();
+                int dayCount = in.getInt();
+                String[] serviceIds = new String[serviceCount];
+                for (int s = 0; s < serviceCount; s++) {
+                    serviceIds[s] = readString(in);
+                }
+                long[] bits = new long[serviceCount * ((dayCount + 63) / 64)];
+                in.asLongBuffer().get(bits);
+                in.position(in.position() + bits.length * Long.BYTES);
+                timetable = timetable.withCalendar(new ServiceCalendar(firstDay, dayCount, serviceIds, bits),
+                        readInts(in, tripCount));
+            }
+
+            // stop sequences
+            int sequenceCount = in.getInt();
+            if (sequenceCount >= 0) {
+                timetable = timetable.withStopSequences(new StopSequences(readInts(in, tripCount + 1),
+                        readInts(in, sequenceCount), readInts(in, sequenceCount)));
+            }
+
+            // stop name index
+            int nameCount = in.getInt();
+            String[] names = new String[nameCount];
+            String[] displayNames = new String[nameCount];
+            List<List<Stop>> stopsByName = new ArrayList<>(nameCount);
+            for (int n = 0; n < nameCount; n++) {
+                names[n] = readString(in);
+                displayNames[n] = readString(in);
+                int count = in.getInt();
+                List<Stop> sharing = new ArrayList<>(count);
+                for (int k = 0; k < count; k++) {
+                    sharing.add(stops[in.getInt()]);
+                }
+                stopsByName.add(sharing);
+            }
+            StopNameIndex stopNameIndex = new StopNameIndex(names, displayNames, stopsByName);
+
+            return new Network(stopMap, tripMap, routeMap, timetable, stopNameIndex);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            System.err.println("Corrupted snapshot: " + filePath);
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(MappedByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values); // bulk copy out of the mapping
+        in.position(in.position() + count * Integer.BYTES);
+        return values;
+    }
+}
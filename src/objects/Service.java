@@ -0,0 +1,111 @@
+package objects;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+
+public class Service {
+
+    // #### Attributes ####
+
+    private final String serviceId;
+
+    // calendar.csv: the days of the week the service runs between two dates
+    private int weekdays = 0; // bit d - 1 for the DayOfWeek d (monday = bit 0)
+    private LocalDate startDate = null; // null if the service is not in calendar.csv
+    private LocalDate endDate = null;
+
+    // calendar_dates.csv: exceptions to the days of the week
+    private final Set<LocalDate> addedDates = new HashSet<>();
+    private final Set<LocalDate> removedDates = new HashSet<>();
+
+    // #### Constructors ####
+
+    /**
+     * Constructor for Service class, running on no day until its days are set.
+     *
+     * @param serviceId Unique identifier for the service.
+     */
+    public Service(String serviceId) {
+        this.serviceId = serviceId;
+    }
+
+    // #### Methods ####
+
+    /**
+     * Sets the days of the week the service runs between two dates (a line of
+     * calendar.csv).
+     *
+     * @param weekdays  The days of the week, bit d - 1 for the DayOfWeek d.
+     * @param startDate The first date, included.
+     * @param endDate   The last date, included.
+     */
+    public void setWeekdays(int weekdays, LocalDate startDate, LocalDate endDate) {
+        this.weekdays = weekdays;
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    /**
+     * Adds an exception to the days of the week (a line of calendar_dates.csv).
+     *
+     * @param date  The date.
+     * @param added Whether the service runs on that date (exception_type 1) or
+     *              not (exception_type 2).
+     */
+    public void addException(LocalDate date, boolean added) {
+        (added ? this.addedDates : this.removedDates).add(date);
+        (added ? this.removedDates : this.addedDates).remove(date);
+    }
+
+    /**
+     * Tells whether the service runs on a date.
+     *
+     * @param date The date.
+     * @return true if the service runs on that date.
+     */
+    public boolean runsOn(LocalDate date) {
+        if (this.addedDates.contains(date))
+            return true;
+        if (this.removedDates.contains(date) || this.startDate == null)
+            return false;
+        return !date.isBefore(this.startDate) && !date.isAfter(this.endDate)
+                && (this.weekdays & (1 << (date.getDayOfWeek().getValue() - 1))) != 0;
+    }
+
+    // #### Getters ####
+
+    public String getServiceId() {
+        return this.serviceId;
+    }
+
+    /**
+     * Returns the first date the service may run on.
+     *
+     * @return The earliest of the start date and of the added dates, null if
+     *         the service never runs.
+     */
+    public LocalDate getFirstDate() {
+        LocalDate first = this.startDate;
+        for (LocalDate date : this.addedDates) {
+            if (first == null || date.isBefore(first))
+                first = date;
+        }
+        return first;
+    }
+
+    /**
+     * Returns the last date the service may run on.
+     *
+     * @return The latest of the end date and of the added dates, null if the
+     *         service never runs.
+     */
+    public LocalDate getLastDate() {
+        LocalDate last = this.endDate;
+        for (LocalDate date : this.addedDates) {
+            if (last == null || date.isAfter(last))
+                last = date;
+        }
+        return last;
+    }
+}
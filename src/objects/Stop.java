@@ -15,8 +15,6 @@ public class Stop {
     private final double stopLon;
     List<String> tripIds = new ArrayList<String>(); // a list of trips departing from this stop
 
-    private List<Walk> walks = new ArrayList<Walk>(); // all walks departing from this stop
-
     // #### Constructors ####
 
     /**
@@ -56,10 +54,6 @@ public class Stop {
         return this.tripIds;
     }
 
-    public List<Walk> getWalk() {
-        return this.walks;
-    }
-
     // #### Methods ####
 
     /**
@@ -71,15 +65,6 @@ public class Stop {
         this.tripIds.add(trip_id);
     }
 
-    /**
-     * @brief Add a walk to this stop
-     * 
-     * @param walk A new walk departing from this Stop
-     */
-    public void addWalk(Walk walk) {
-        this.walks.add(walk);
-    }
-
     /**
      * @brief Returns the distance to another stop.
      * 
@@ -9,6 +9,7 @@ public class Trip {
 
     private final String tripId;
     private final String routeId;
+    private final String serviceId; // null if the trip runs every day
 
     // key -> the stop_sequence of the stop
     // value -> StopTime
@@ -22,8 +23,20 @@ public class Trip {
      * @param routeId Unique identifier for the route.
      */
     public Trip(String tripId, String routeId) {
+        this(tripId, routeId, null);
+    }
+
+    /**
+     * Constructor for Trip class, with a service calendar.
+     *
+     * @param tripId    Unique identifier for the trip.
+     * @param routeId   Unique identifier for the route.
+     * @param serviceId Identifier of the days the trip runs, null for every day.
+     */
+    public Trip(String tripId, String routeId, String serviceId) {
         this.tripId = tripId;
         this.routeId = routeId;
+        this.serviceId = serviceId;
     }
 
     // #### Getters ####
@@ -36,6 +49,10 @@ public class Trip {
         return this.routeId;
     }
 
+    public String getServiceId() {
+        return this.serviceId;
+    }
+
     public List<StopTime> getstopTimes() {
         return this.stopTimes;
     }
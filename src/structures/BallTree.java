@@ -1,210 +1,427 @@
 package structures;
 
-import objects.*;
+import functional.Calculator;
+import objects.Stop;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * @brief BallTree class used to partition stops into a tree structure in order
  *        to optimize the search for the nearest stop by having quick access to
  *        the neighbours of a Stop.
+ *
+ *        The tree is stored as flat arrays: node n has its center (latitude and
+ *        longitude in radians, cosine of the latitude) and radius in the node
+ *        arrays, its children in lefts[n] and rights[n] (-1 for a leaf), and
+ *        covers the stops starts[n] to ends[n] - 1 of the permuted stop arrays,
+ *        which hold the coordinates of the stops in tree order. Queries thus
+ *        read contiguous primitive arrays and never convert degrees to radians.
+ *
+ *        Stops are identified by their index in the array the tree was built
+ *        from.
  */
 public class BallTree {
-    private final BallTreeNode root;
-    private final int leafSize;
-
-    // Node class that represents a node in the Ball Tree
-    private class BallTreeNode {
-        Stop center;
-        double radius;
-        Collection<Stop> stops;
-        BallTreeNode left;
-        BallTreeNode right;
 
+    /**
+     * @brief Receives the stops found by a range query.
+     */
+    public interface NeighbourVisitor {
         /**
-         * @brief Constructor for a leaf.
-         * 
-         * @param stops
+         * @param stop     The index of the stop in the array the tree was built
+         *                 from.
+         * @param distance The distance to the stop in meters.
          */
-        BallTreeNode(Collection<Stop> stops) {
-            this.stops = stops;
-        }
+        void visit(int stop, double distance);
+    }
 
-        /**
-         * @brief Constuctor for a partitionning node.
-         * 
-         * @param center
-         * @param radius
-         */
-        BallTreeNode(Stop center, double radius) {
-            this.center = center;
-            this.radius = radius;
-        }
+    // #### Attributes ####
 
-        /**
-         * Checks if current node is a leaf node in the ball tree.
-         * 
-         * @return true if node contains stops data, false if it's an internal node
-         */
-        boolean isLeaf() {
-            return this.stops != null;
-        }
-    }
+    private final Stop[] stops;
+    private final int leafSize;
+
+    // stops in tree order: index in the original array, coordinates in radians
+    private final int[] order;
+    private final double[] lats;
+    private final double[] lons;
+    private final double[] cosLats;
+
+    // nodes
+    private int nodeCount = 0;
+    private double[] centerLats;
+    private double[] centerLons;
+    private double[] centerCosLats;
+    private double[] radii;
+    private int[] lefts;
+    private int[] rights;
+    private int[] starts;
+    private int[] ends;
+    private final int root;
+
+    // #### Constructors ####
 
     public BallTree(Collection<Stop> stops, int leafSize) {
-        this.leafSize = leafSize;
-        this.root = buildTree(stops);
+        this(stops.toArray(new Stop[0]), leafSize);
     }
 
     /**
-     * @brief Builds the Ball Tree recursively based on a list of unordered stops.
+     * @brief Constructor for the BallTree class.
      *
-     * @param stops The list of stops to be used for building the tree.
-     * @return The root node of the constructed Ball Tree.
+     * @param stops    The stops, identified by their index in this array.
+     * @param leafSize The maximum number of stops per leaf.
      */
-    private BallTreeNode buildTree(Collection<Stop> stops) {
-        if (stops == null || stops.isEmpty()) {
+    public BallTree(Stop[] stops, int leafSize) {
+        this.stops = stops;
+        this.leafSize = Math.max(1, leafSize);
+
+        int size = stops.length;
+        this.order = new int[size];
+        double[] stopLats = new double[size];
+        double[] stopLons = new double[size];
+        double[] stopCosLats = new double[size];
+        for (int i = 0; i < size; i++) {
+            this.order[i] = i;
+            stopLats[i] = Math.toRadians(stops[i].getStopLat());
+            stopLons[i] = Math.toRadians(stops[i].getStopLon());
+            stopCosLats[i] = Math.cos(stopLats[i]);
+        }
+
+        int capacity = Math.max(1, 4 * size / this.leafSize + 1);
+        this.centerLats = new double[capacity];
+        this.centerLons = new double[capacity];
+        this.centerCosLats = new double[capacity];
+        this.radii = new double[capacity];
+        this.lefts = new int[capacity];
+        this.rights = new int[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+
+        if (size == 0) {
             System.out.println("[\033[92mINFO\033[0m] Empty stop collection received, returning null.");
-            return null;
+            this.root = -1;
+        } else {
+            this.root = buildTree(0, size, stopLats, stopLons, stopCosLats);
+        }
+
+        // coordinates in tree order, so that leaves are scanned sequentially
+        this.lats = new double[size];
+        this.lons = new double[size];
+        this.cosLats = new double[size];
+        for (int p = 0; p < size; p++) {
+            this.lats[p] = stopLats[this.order[p]];
+            this.lons[p] = stopLons[this.order[p]];
+            this.cosLats[p] = stopCosLats[this.order[p]];
         }
-        // Base case for recursion
-        // If there is only one stop, create a leaf node
-        if (stops.size() <= this.leafSize) {
-            return new BallTreeNode(stops);
-        }
-        Stop[] pivots = findFarthest(stops);
-        Stop pivot1 = pivots[0], pivot2 = pivots[1];
-
-        Collection<Stop> left = new ArrayList<>();
-        Collection<Stop> right = new ArrayList<>();
-
-        for (Stop s : stops) {
-            double d1 = pivot1.getDistanceToOther(s);
-            double d2 = pivot2.getDistanceToOther(s);
-            if (d1 < d2)
-                left.add(s);
-            else
-                right.add(s);
-        }
-        Stop center = computeCenter(stops);
-        double radius = computeRadius(stops, center);
-
-        BallTreeNode node = new BallTreeNode(center, radius);
-        node.left = buildTree(left);
-        node.right = buildTree(right);
-        return node;
     }
 
+    // #### Methods ####
+
     /**
-     * @brief Finds the two farthest stops in a collection of stops.
-     * 
-     * @param stops The collection of stops to search.
-     * @return An array containing the two farthest stops.
+     * @brief Builds the Ball Tree recursively over the stops order[start] to
+     *        order[end - 1], which are partitioned in place.
+     *
+     * @return The index of the root node of the constructed subtree.
      */
-    private Stop[] findFarthest(Collection<Stop> stops) {
-        // First pass: find farthest point from arbitrary first point
-        Stop stopA = stops.iterator().next();
-        Stop stopB = stopA;
-        double maxDist = Double.MIN_VALUE;
-
-        for (Stop s : stops) {
-            double d = stopA.getDistanceToOther(s);
-            if (d > maxDist) {
-                maxDist = d;
-                stopB = s;
-            }
+    private int buildTree(int start, int end, double[] stopLats, double[] stopLons, double[] stopCosLats) {
+        int node = newNode(start, end);
+
+        // center: average of the coordinates, radius: farthest stop from it
+        double sumLat = 0, sumLon = 0;
+        for (int p = start; p < end; p++) {
+            sumLat += stopLats[this.order[p]];
+            sumLon += stopLons[this.order[p]];
         }
+        double centerLat = sumLat / (end - start);
+        double centerLon = sumLon / (end - start);
+        double centerCosLat = Math.cos(centerLat);
+        double radius = 0;
+        for (int p = start; p < end; p++) {
+            int s = this.order[p];
+            radius = Math.max(radius, Calculator.haversine_distance(centerLat, centerLon, centerCosLat,
+                    stopLats[s], stopLons[s], stopCosLats[s]));
+        }
+        this.centerLats[node] = centerLat;
+        this.centerLons[node] = centerLon;
+        this.centerCosLats[node] = centerCosLat;
+        this.radii[node] = radius;
 
-        // Second pass: find farthest point from stopB
-        Stop stopC = stopB;
-        maxDist = Double.MIN_VALUE;
-        for (Stop s : stops) {
-            double d = stopB.getDistanceToOther(s);
-            if (d > maxDist) {
-                maxDist = d;
-                stopC = s;
+        // Base case for recursion
+        if (end - start <= this.leafSize) {
+            return node;
+        }
+
+        // two farthest stops (approximately) used as pivots
+        int pivot1 = farthest(this.order[start], start, end, stopLats, stopLons, stopCosLats);
+        int pivot2 = farthest(pivot1, start, end, stopLats, stopLons, stopCosLats);
+
+        // partition: stops closer to the first pivot go to the left
+        int mid = start;
+        for (int p = start; p < end; p++) {
+            int s = this.order[p];
+            double d1 = Calculator.haversine_distance(stopLats[pivot1], stopLons[pivot1], stopCosLats[pivot1],
+                    stopLats[s], stopLons[s], stopCosLats[s]);
+            double d2 = Calculator.haversine_distance(stopLats[pivot2], stopLons[pivot2], stopCosLats[pivot2],
+                    stopLats[s], stopLons[s], stopCosLats[s]);
+            if (d1 < d2) {
+                this.order[p] = this.order[mid];
+                this.order[mid++] = s;
             }
         }
-        return new Stop[] { stopB, stopC };
+        if (mid == start || mid == end) {
+            return node; // the stops cannot be split (e.g., all at the same place)
+        }
+
+        int left = buildTree(start, mid, stopLats, stopLons, stopCosLats);
+        int right = buildTree(mid, end, stopLats, stopLons, stopCosLats);
+        this.lefts[node] = left;
+        this.rights[node] = right;
+        return node;
     }
 
     /**
-     * @brief Computes the center of a collection of stops.
-     * 
-     * @param stops The collection of stops to compute the center.
-     * @return A Stop object representing the center of the collection.
+     * @brief Finds the stop of order[start] to order[end - 1] farthest from a
+     *        given stop.
      */
-    private Stop computeCenter(Collection<Stop> stops) {
-        double sumLat = 0, sumLon = 0;
-        for (Stop s : stops) {
-            sumLat += s.getStopLat();
-            sumLon += s.getStopLon();
+    private int farthest(int from, int start, int end, double[] stopLats, double[] stopLons,
+            double[] stopCosLats) {
+        int farthest = from;
+        double maxDist = -1;
+        for (int p = start; p < end; p++) {
+            int s = this.order[p];
+            double d = Calculator.haversine_distance(stopLats[from], stopLons[from], stopCosLats[from],
+                    stopLats[s], stopLons[s], stopCosLats[s]);
+            if (d > maxDist) {
+                maxDist = d;
+                farthest = s;
+            }
         }
-        double avgLat = sumLat / stops.size();
-        double avgLon = sumLon / stops.size();
-        return new Stop("", "", avgLat, avgLon); // creating a virtual Stop used only for partitioning
+        return farthest;
     }
 
-    /**
-     * @brief Computes the radius of a collection of stops based on the center Stop
-     *        of the stops collection.
-     * 
-     * @param stops  The collection of stops to compute the radius.
-     * @param center The center of the collection.
-     * @return The radius of the collection.
-     */
-    private double computeRadius(Collection<Stop> stops, Stop center) {
-        double maxDist = 0;
-        for (Stop s : stops) {
-            double d = center.getDistanceToOther(s);
-            if (d > maxDist)
-                maxDist = d;
+    private int newNode(int start, int end) {
+        if (this.nodeCount == this.starts.length) {
+            int capacity = this.nodeCount * 2;
+            this.centerLats = Arrays.copyOf(this.centerLats, capacity);
+            this.centerLons = Arrays.copyOf(this.centerLons, capacity);
+            this.centerCosLats = Arrays.copyOf(this.centerCosLats, capacity);
+            this.radii = Arrays.copyOf(this.radii, capacity);
+            this.lefts = Arrays.copyOf(this.lefts, capacity);
+            this.rights = Arrays.copyOf(this.rights, capacity);
+            this.starts = Arrays.copyOf(this.starts, capacity);
+            this.ends = Arrays.copyOf(this.ends, capacity);
         }
-        return maxDist;
+        int node = this.nodeCount++;
+        this.lefts[node] = -1;
+        this.rights[node] = -1;
+        this.starts[node] = start;
+        this.ends[node] = end;
+        return node;
     }
 
     /**
      * @brief Queries the Ball Tree for stops within a given range from a query
      *        stop.
-     * 
+     *
      * @param query   The query stop.
      * @param maxDist The maximum range to search for neighbours.
      * @return A collection of stops within the specified range from the query stop.
      */
     public Collection<Stop> query_neighbours(Stop query, double maxDist) {
-        Collection<Stop> result = new ArrayList<>();
-        knn_search(root, query, maxDist, result);
+        List<Stop> result = new ArrayList<>();
+        forEachInRange(query.getStopLat(), query.getStopLon(), maxDist,
+                (stop, distance) -> result.add(this.stops[stop]));
         return result;
     }
 
     /**
-     * @brief Searches for stops within a given range from a query stop in the Ball
-     *        Tree using the KNN method.
-     * 
-     * @param node    The current node in the Ball Tree.
-     * @param q       The query stop.
-     * @param maxDist The maximum range to search for neighbours.
-     * @param out     The collection to store the found stops.
+     * @brief Visits every stop within a given range from a point, without
+     *        allocating.
+     *
+     * @param lat     The latitude of the point in degrees.
+     * @param lon     The longitude of the point in degrees.
+     * @param maxDist The maximum range in meters.
+     * @param visitor The visitor receiving each stop and its distance.
      */
-    private void knn_search(BallTreeNode node, Stop q, double maxDist, Collection<Stop> out) {
-        if (node == null) // base case of recursion
+    public void forEachInRange(double lat, double lon, double maxDist, NeighbourVisitor visitor) {
+        if (this.root == -1)
             return;
+        double qLat = Math.toRadians(lat);
+        range_search(this.root, qLat, Math.toRadians(lon), Math.cos(qLat), maxDist, visitor);
+    }
 
-        if (node.isLeaf()) { // if leaf is node, we retrieve all the stops within the given range
-            for (Stop s : node.stops) {
-                if (q.getDistanceToOther(s) <= maxDist) {
-                    out.add(s);
+    /**
+     * @brief Searches for stops within a given range from a point in the subtree
+     *        of a node.
+     */
+    private void range_search(int node, double qLat, double qLon, double qCosLat, double maxDist,
+            NeighbourVisitor visitor) {
+        double distToCenter = Calculator.haversine_distance(qLat, qLon, qCosLat, this.centerLats[node],
+                this.centerLons[node], this.centerCosLats[node]);
+        if (distToCenter - this.radii[node] > maxDist) { // the whole ball is out of range, we can prune this branch
+            return;
+        }
+        if (this.lefts[node] == -1) { // leaf: we retrieve all the stops within the given range
+            for (int p = this.starts[node]; p < this.ends[node]; p++) {
+                if (!Calculator.may_be_within(qLat, qLon, qCosLat, this.lats[p], this.lons[p], this.cosLats[p],
+                        maxDist))
+                    continue; // certainly out of range, no need for the exact distance
+                double d = Calculator.haversine_distance(qLat, qLon, qCosLat, this.lats[p], this.lons[p],
+                        this.cosLats[p]);
+                if (d <= maxDist) {
+                    visitor.visit(this.order[p], d);
                 }
             }
         } else { // we continue searching in subtrees
-            double distToCenter = q.getDistanceToOther(node.center);
-            if (distToCenter - node.radius > maxDist) { // if the distance to the center is greater than the radius, we
-                                                        // can prune this branch
-                return;
+            range_search(this.lefts[node], qLat, qLon, qCosLat, maxDist, visitor);
+            range_search(this.rights[node], qLat, qLon, qCosLat, maxDist, visitor);
+        }
+    }
+
+    /**
+     * @brief Finds the k stops nearest to a point.
+     *
+     *        Nodes are visited best-first, by increasing lower bound of their
+     *        distance to the point, and the k best stops so far are kept in a
+     *        bounded max-heap: the search stops as soon as the next node cannot
+     *        hold a stop closer than the k-th best.
+     *
+     * @param lat The latitude of the point in degrees.
+     * @param lon The longitude of the point in degrees.
+     * @param k   The number of stops to find.
+     * @return The indices of the nearest stops, nearest first (fewer than k if
+     *         the tree holds fewer stops).
+     */
+    public int[] kNearest(double lat, double lon, int k) {
+        k = Math.min(k, this.order.length);
+        if (k <= 0 || this.root == -1)
+            return new int[0];
+        double qLat = Math.toRadians(lat);
+        double qLon = Math.toRadians(lon);
+        double qCosLat = Math.cos(qLat);
+
+        // k best stops so far, max-heap on the distance
+        double[] bestDistances = new double[k];
+        int[] best = new int[k];
+        int found = 0;
+
+        // nodes to visit, min-heap on the lower bound of their distance
+        double[] bounds = new double[this.nodeCount];
+        int[] nodes = new int[this.nodeCount];
+        int queued = 0;
+        bounds[0] = 0;
+        nodes[0] = this.root;
+        queued++;
+
+        while (queued > 0) {
+            double bound = bounds[0];
+            int node = nodes[0];
+            queued--;
+            siftDown(bounds, nodes, queued, bounds[queued], nodes[queued], false);
+            if (found == k && bound >= bestDistances[0])
+                break; // no remaining node can improve the result
+
+            if (this.lefts[node] == -1) {
+                for (int p = this.starts[node]; p < this.ends[node]; p++) {
+                    if (found == k && !Calculator.may_be_within(qLat, qLon, qCosLat, this.lats[p], this.lons[p],
+                            this.cosLats[p], bestDistances[0]))
+                        continue; // certainly farther than the k-th best
+                    double d = Calculator.haversine_distance(qLat, qLon, qCosLat, this.lats[p], this.lons[p],
+                            this.cosLats[p]);
+                    if (found < k) {
+                        siftUp(bestDistances, best, found++, d, this.order[p], true);
+                    } else if (d < bestDistances[0]) {
+                        siftDown(bestDistances, best, k, d, this.order[p], true);
+                    }
+                }
+            } else {
+                double leftBound = lowerBound(this.lefts[node], qLat, qLon, qCosLat);
+                if (found < k || leftBound < bestDistances[0]) {
+                    siftUp(bounds, nodes, queued++, leftBound, this.lefts[node], false);
+                }
+                double rightBound = lowerBound(this.rights[node], qLat, qLon, qCosLat);
+                if (found < k || rightBound < bestDistances[0]) {
+                    siftUp(bounds, nodes, queued++, rightBound, this.rights[node], false);
+                }
             }
-            knn_search(node.left, q, maxDist, out);
-            knn_search(node.right, q, maxDist, out);
         }
+
+        // empty the max-heap from the farthest to the nearest
+        int[] result = new int[found];
+        for (int i = found - 1; i >= 0; i--) {
+            result[i] = best[0];
+            siftDown(bestDistances, best, i, bestDistances[i], best[i], true);
+        }
+        return result;
+    }
+
+    /**
+     * @brief Returns a lower bound of the distance from a point to the stops of
+     *        a node.
+     */
+    private double lowerBound(int node, double qLat, double qLon, double qCosLat) {
+        return Math.max(0, Calculator.haversine_distance(qLat, qLon, qCosLat, this.centerLats[node],
+                this.centerLons[node], this.centerCosLats[node]) - this.radii[node]);
+    }
+
+    /**
+     * @brief Inserts an entry at position size of a binary heap.
+     *
+     * @param max Whether the heap is a max-heap (a min-heap otherwise).
+     */
+    private static void siftUp(double[] keys, int[] values, int size, double key, int value, boolean max) {
+        int i = size;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (max ? keys[parent] >= key : keys[parent] <= key)
+                break;
+            keys[i] = keys[parent];
+            values[i] = values[parent];
+            i = parent;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * @brief Replaces the top of a binary heap of the given size by an entry.
+     *
+     * @param max Whether the heap is a max-heap (a min-heap otherwise).
+     */
+    private static void siftDown(double[] keys, int[] values, int size, double key, int value, boolean max) {
+        if (size == 0)
+            return;
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && (max ? keys[child + 1] > keys[child] : keys[child + 1] < keys[child]))
+                child++;
+            if (max ? keys[child] <= key : keys[child] >= key)
+                break;
+            keys[i] = keys[child];
+            values[i] = values[child];
+            i = child;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    // #### Getters ####
+
+    /**
+     * @brief Returns a stop of the tree.
+     *
+     * @param index The index of the stop in the array the tree was built from.
+     * @return The stop.
+     */
+    public Stop getStop(int index) {
+        return this.stops[index];
+    }
+
+    public int size() {
+        return this.stops.length;
     }
 }
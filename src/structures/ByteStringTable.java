@@ -0,0 +1,185 @@
+package structures;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @brief Open-addressing hash table whose keys are byte sequences, used to
+ *        look identifiers up straight from the bytes of a file without
+ *        creating a String per lookup.
+ *
+ *        Keys are stored as UTF-8 bytes. Looking a key up hashes and compares
+ *        the bytes of a range of a ByteBuffer in place; a String is only
+ *        created when a new key is interned.
+ */
+public class ByteStringTable<V> {
+
+    // #### Attributes ####
+
+    private byte[][] keys;
+    private int[] hashes;
+    private Object[] values;
+    private int size = 0;
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the ByteStringTable class.
+     *
+     * @param expectedSize The expected number of keys.
+     */
+    public ByteStringTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        this.keys = new byte[capacity][];
+        this.hashes = new int[capacity];
+        this.values = new Object[capacity];
+    }
+
+    // #### Methods ####
+
+    /**
+     * @brief Associates a value with a key.
+     *
+     * @param key   The key.
+     * @param value The value.
+     */
+    public void put(String key, V value) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes, 0, bytes.length);
+        int slot = find(bytes, 0, bytes.length, hash);
+        if (this.keys[slot] == null) {
+            insert(slot, bytes, hash, value);
+        } else {
+            this.values[slot] = value;
+        }
+    }
+
+    /**
+     * @brief Returns the value associated with the bytes of a buffer.
+     *
+     * @param buffer The buffer holding the key.
+     * @param start  The index of the first byte of the key.
+     * @param end    The index following the last byte of the key.
+     * @return The value, or null if the key is absent.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(ByteBuffer buffer, int start, int end) {
+        int slot = find(buffer, start, end, hash(buffer, start, end));
+        return (V) this.values[slot];
+    }
+
+    /**
+     * @brief Returns the String equal to the bytes of a buffer, the same
+     *        instance being returned for every occurrence of the same bytes.
+     *        Only meant for a table whose values are the keys themselves.
+     *
+     * @param buffer The buffer holding the key.
+     * @param start  The index of the first byte of the key.
+     * @param end    The index following the last byte of the key.
+     * @return The interned String.
+     */
+    @SuppressWarnings("unchecked")
+    public String intern(ByteBuffer buffer, int start, int end) {
+        int hash = hash(buffer, start, end);
+        int slot = find(buffer, start, end, hash);
+        if (this.keys[slot] == null) {
+            byte[] bytes = new byte[end - start];
+            buffer.get(start, bytes);
+            String key = new String(bytes, StandardCharsets.UTF_8);
+            insert(slot, bytes, hash, (V) key);
+            return key;
+        }
+        return (String) this.values[slot];
+    }
+
+    /**
+     * @brief Returns the number of keys.
+     *
+     * @return The number of keys.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    private void insert(int slot, byte[] bytes, int hash, V value) {
+        this.keys[slot] = bytes;
+        this.hashes[slot] = hash;
+        this.values[slot] = value;
+        this.size++;
+        if (this.size * 2 > this.keys.length) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        byte[][] oldKeys = this.keys;
+        int[] oldHashes = this.hashes;
+        Object[] oldValues = this.values;
+        this.keys = new byte[oldKeys.length * 2][];
+        this.hashes = new int[oldKeys.length * 2];
+        this.values = new Object[oldKeys.length * 2];
+        int mask = this.keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null)
+                continue;
+            int slot = oldHashes[i] & mask;
+            while (this.keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            this.keys[slot] = oldKeys[i];
+            this.hashes[slot] = oldHashes[i];
+            this.values[slot] = oldValues[i];
+        }
+    }
+
+    // slot holding the key, or the empty slot where it would be inserted
+    private int find(byte[] bytes, int start, int end, int hash) {
+        int mask = this.keys.length - 1;
+        int slot = hash & mask;
+        while (this.keys[slot] != null) {
+            if (this.hashes[slot] == hash && Arrays.equals(this.keys[slot], 0, this.keys[slot].length, bytes, start,
+                    end))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int find(ByteBuffer buffer, int start, int end, int hash) {
+        int mask = this.keys.length - 1;
+        int slot = hash & mask;
+        while (this.keys[slot] != null) {
+            if (this.hashes[slot] == hash && equals(this.keys[slot], buffer, start, end))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static boolean equals(byte[] key, ByteBuffer buffer, int start, int end) {
+        if (key.length != end - start)
+            return false;
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buffer.get(start + i))
+                return false;
+        }
+        return true;
+    }
+
+    private static int hash(byte[] bytes, int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(ByteBuffer buffer, int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,161 @@
+package structures;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import functional.Calculator;
+import objects.Stop;
+
+/**
+ * @brief Result of a one-to-all query: the earliest arrival time at every
+ *        stop reachable within a time budget, indexed by dense stop index.
+ *
+ *        The arrivals are kept as a single int array, Integer.MAX_VALUE
+ *        meaning that the stop cannot be reached within the budget.
+ */
+public class Isochrone {
+
+    // #### Attributes ####
+
+    private final Timetable timetable;
+    private final int departure;
+    private final int budget;
+    private final int[] arrivals;
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the Isochrone class.
+     *
+     * @param timetable The timetable whose dense stop indices the arrivals use.
+     * @param departure The departure time in seconds.
+     * @param budget    The travel time budget in seconds.
+     * @param arrivals  The earliest arrival time at every stop,
+     *                  Integer.MAX_VALUE if it is not reached.
+     */
+    public Isochrone(Timetable timetable, int departure, int budget, int[] arrivals) {
+        this.timetable = timetable;
+        this.departure = departure;
+        this.budget = budget;
+        this.arrivals = arrivals;
+    }
+
+    // #### Methods ####
+
+    /**
+     * @brief Adds the stops reachable on foot from the stops already reached,
+     *        within the budget and a maximum walking distance.
+     *
+     *        Walking twice is never faster than walking straight, so a single
+     *        range query around every stop reached by transit is enough.
+     *        Complexity: O(r * log n + w) where r is the number of reached
+     *        stops and w the number of stops found around them.
+     *
+     * @param tree                The BallTree over the stops of the timetable,
+     *                            identified by their dense stop index.
+     * @param maxWalkDistance     The maximum walking distance in meters.
+     * @param averageWalkingSpeed The average walking speed in m/s.
+     * @return A new isochrone, this one being left unchanged.
+     */
+    public Isochrone expandWalking(BallTree tree, double maxWalkDistance, double averageWalkingSpeed) {
+        int[] expanded = this.arrivals.clone();
+        int limit = this.departure + this.budget;
+        for (int s = 0; s < this.arrivals.length; s++) {
+            int arrival = this.arrivals[s];
+            if (arrival > limit)
+                continue;
+            double radius = Math.min(maxWalkDistance, (limit - arrival) * averageWalkingSpeed);
+            Stop stop = this.timetable.getStop(s);
+            tree.forEachInRange(stop.getStopLat(), stop.getStopLon(), radius, (other, distance) -> {
+                int walkArrival = arrival + (int) (distance / averageWalkingSpeed);
+                if (walkArrival < expanded[other])
+                    expanded[other] = walkArrival;
+            });
+        }
+        return new Isochrone(this.timetable, this.departure, this.budget, expanded);
+    }
+
+    /**
+     * @brief Writes the reached stops to a CSV file, by increasing arrival time.
+     *
+     *        Columns: stop_id, stop_name, stop_lat, stop_lon, arrival_time
+     *        (HH:MM:SS) and travel_time (in seconds).
+     *
+     * @param filePath The path of the CSV file, overwritten.
+     * @throws IOException If an error occurs while writing the file.
+     */
+    public void writeCsv(String filePath) throws IOException {
+        int[] reached = new int[getReachedCount()];
+        int count = 0;
+        for (int s = 0; s < this.arrivals.length; s++) {
+            if (this.arrivals[s] != Integer.MAX_VALUE)
+                reached[count++] = s;
+        }
+        // sorts the stops by (arrival, index) packed in a long
+        long[] keys = new long[count];
+        for (int r = 0; r < count; r++) {
+            keys[r] = ((long) this.arrivals[reached[r]] << 32) | reached[r];
+        }
+        Arrays.sort(keys);
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(filePath), 1 << 16)) {
+            out.write("stop_id,stop_name,stop_lat,stop_lon,arrival_time,travel_time");
+            out.newLine();
+            for (long key : keys) {
+                int s = (int) key;
+                Stop stop = this.timetable.getStop(s);
+                String name = stop.getStopName();
+                if (name.indexOf(',') >= 0 || name.indexOf('"') >= 0)
+                    name = "\"" + name.replace("\"", "\"\"") + "\"";
+                out.write(stop.getStopId() + "," + name + "," + stop.getStopLat() + "," + stop.getStopLon() + ","
+                        + Calculator.intToTime(this.arrivals[s]) + "," + (this.arrivals[s] - this.departure));
+                out.newLine();
+            }
+        }
+    }
+
+    // #### Getters ####
+
+    public int getDeparture() {
+        return this.departure;
+    }
+
+    public int getBudget() {
+        return this.budget;
+    }
+
+    /**
+     * @brief Returns the earliest arrival time at a stop.
+     *
+     * @param stop The dense index of the stop.
+     * @return The arrival time in seconds, Integer.MAX_VALUE if not reached.
+     */
+    public int getArrival(int stop) {
+        return this.arrivals[stop];
+    }
+
+    /**
+     * @brief Returns the earliest arrival time at every stop, as a compact
+     *        array indexed by dense stop index.
+     *
+     * @return The array itself, not to be modified.
+     */
+    public int[] getArrivals() {
+        return this.arrivals;
+    }
+
+    /**
+     * @brief Returns the number of stops reached within the budget.
+     *
+     * @return The number of reached stops, the starting stops included.
+     */
+    public int getReachedCount() {
+        int count = 0;
+        for (int arrival : this.arrivals) {
+            if (arrival != Integer.MAX_VALUE)
+                count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,103 @@
+package structures;
+
+import java.util.Collections;
+import java.util.List;
+
+import objects.Connexion;
+
+/**
+ * @brief Result of an earliest-arrival query: its status and, when a journey
+ *        was found, its legs in travel order. A leg with a trip ID is taken
+ *        on board that whole trip, a leg without one is a walk.
+ *
+ *        Journeys are immutable, so they can be handed from the thread that
+ *        computed them to the one that writes them.
+ */
+public class Journey {
+
+    /**
+     * @brief Outcome of a query, in the order the checks are made.
+     */
+    public enum Status {
+        FOUND, // a journey reaches the destination
+        NOT_FOUND, // the destination cannot be reached from the departure time
+        INVALID_TIME, // the departure time is not 'hour;minute[;second]'
+        UNKNOWN_START, // no stop has the starting name
+        UNKNOWN_DESTINATION, // no stop has the destination name
+        SAME_STOP // the start and the destination are the same
+    }
+
+    // #### Attributes ####
+
+    private final Status status;
+    private final int departureTime;
+    private final List<Connexion> legs;
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for a query that did not produce a journey.
+     *
+     * @param status        Why no journey was produced.
+     * @param departureTime The departure time of the query in seconds, -1 if it
+     *                      is invalid.
+     */
+    public Journey(Status status, int departureTime) {
+        this(status, departureTime, Collections.emptyList());
+    }
+
+    /**
+     * @brief Constructor for the Journey class.
+     *
+     * @param status        The outcome of the query.
+     * @param departureTime The departure time of the query in seconds.
+     * @param legs          The legs of the journey in travel order, empty if
+     *                      none was found.
+     */
+    public Journey(Status status, int departureTime, List<Connexion> legs) {
+        this.status = status;
+        this.departureTime = departureTime;
+        this.legs = Collections.unmodifiableList(legs);
+    }
+
+    // #### Getters ####
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    public boolean isFound() {
+        return this.status == Status.FOUND;
+    }
+
+    public int getDepartureTime() {
+        return this.departureTime;
+    }
+
+    public List<Connexion> getLegs() {
+        return this.legs;
+    }
+
+    /**
+     * @brief Returns the arrival time at the destination.
+     *
+     * @return The arrival time in seconds, -1 if no journey was found.
+     */
+    public int getArrivalTime() {
+        return this.legs.isEmpty() ? -1 : this.legs.get(this.legs.size() - 1).getArrivalTime();
+    }
+
+    /**
+     * @brief Returns the number of transfers, walks excluded.
+     *
+     * @return The number of trips taken minus one, -1 if no journey was found.
+     */
+    public int getTransfers() {
+        int trips = 0;
+        for (Connexion leg : this.legs) {
+            if (leg.getTripId() != null)
+                trips++;
+        }
+        return this.legs.isEmpty() ? -1 : Math.max(0, trips - 1);
+    }
+}
@@ -0,0 +1,229 @@
+package structures;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @brief Bounded cache of earliest-arrival journeys, evicting the least
+ *        recently used one once full.
+ *
+ *        A journey is keyed by its starting and destination stops (dense
+ *        indices, so every name spelling of the same stops shares the entry),
+ *        its mode mask, its date and its departure time to the second: a hit
+ *        returns the very journey the scan of that query would find, and a
+ *        miss costs a single scan.
+ *
+ *        A cache belongs to one network: reloading the network means using a
+ *        new cache along with it. When delays move some connexions, the cache
+ *        is kept for the new version of the timetable and only loses the
+ *        journeys whose scan went through a changed departure time: a scan
+ *        from time t that arrived at a only depends on the connexions
+ *        departing from t to a (a scan finding nothing on every connexion from
+ *        t on), so any other journey is still the one the scan would find.
+ */
+public class JourneyCache {
+
+    // length of a service day in seconds
+    private static final int DAY = 24 * 3600;
+
+    /**
+     * @brief Key of a cached journey.
+     */
+    public static final class Key {
+        private final int[] startStops; // sorted dense stop indices
+        private final int[] endStops;
+        private final int time;
+        private final int modeMask;
+        private final LocalDate date;
+        private final int hash;
+
+        /**
+         * @brief Constructor for the Key class.
+         *
+         * @param startStops The dense indices of the starting stops.
+         * @param endStops   The dense indices of the destination stops.
+         * @param time       The departure time in seconds.
+         * @param modeMask   The transportation modes that may be used.
+         */
+        public Key(int[] startStops, int[] endStops, int time, int modeMask) {
+            this(startStops, endStops, time, modeMask, null);
+        }
+
+        /**
+         * @brief Constructor for the Key of a journey on a given date.
+         *
+         * @param startStops The dense indices of the starting stops.
+         * @param endStops   The dense indices of the destination stops.
+         * @param time       The departure time in seconds.
+         * @param modeMask   The transportation modes that may be used.
+         * @param date       The date of the journey, null for the trips of
+         *                   every day.
+         */
+        public Key(int[] startStops, int[] endStops, int time, int modeMask, LocalDate date) {
+            this.startStops = startStops.clone();
+            this.endStops = endStops.clone();
+            Arrays.sort(this.startStops);
+            Arrays.sort(this.endStops);
+            this.time = time;
+            this.modeMask = modeMask;
+            this.date = date;
+            this.hash = 31 * (31 * (31 * (31 * Arrays.hashCode(this.startStops) + Arrays.hashCode(this.endStops))
+                    + time) + modeMask) + Objects.hashCode(date);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return this.hash == key.hash && this.time == key.time && this.modeMask == key.modeMask
+                    && Objects.equals(this.date, key.date) && Arrays.equals(this.startStops, key.startStops)
+                    && Arrays.equals(this.endStops, key.endStops);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    // #### Attributes ####
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Journey> journeys; // in access order, the eldest being evicted first
+    private Timetable timetable = null; // version the journeys are found on, null until the first update
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the JourneyCache class.
+     *
+     * @param capacity The maximum number of journeys kept.
+     */
+    public JourneyCache(int capacity) {
+        this.capacity = capacity;
+        this.journeys = new LinkedHashMap<Key, Journey>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Journey> eldest) {
+                return size() > JourneyCache.this.capacity;
+            }
+        };
+    }
+
+    // #### Methods ####
+
+    /**
+     * @brief Looks a journey up.
+     *
+     * @param key The key of the journey.
+     * @return The cached journey, or null if there is none.
+     */
+    public Journey get(Key key) {
+        Journey journey;
+        synchronized (this.journeys) {
+            journey = this.journeys.get(key);
+        }
+        if (journey == null) {
+            this.misses.increment();
+        } else {
+            this.hits.increment();
+        }
+        return journey;
+    }
+
+    /**
+     * @brief Adds the journey computed for its key.
+     *
+     * @param key       The key of the journey.
+     * @param journey   The journey, FOUND or NOT_FOUND.
+     * @param timetable The timetable the journey was found on, ignored if it
+     *                  is not the version of the last update.
+     */
+    public void put(Key key, Journey journey, Timetable timetable) {
+        synchronized (this.journeys) {
+            if (this.timetable == null || this.timetable == timetable)
+                this.journeys.put(key, journey);
+        }
+    }
+
+    /**
+     * @brief Moves the cache to a new version of the timetable, removing the
+     *        journeys whose scan went through a changed departure time.
+     *
+     * @param timetable         The new version of the timetable.
+     * @param changedDepartures The departure times of the moved connexions,
+     *                          before and after the move, sorted.
+     * @return The number of journeys removed.
+     */
+    public int update(Timetable timetable, int[] changedDepartures) {
+        synchronized (this.journeys) {
+            this.timetable = timetable;
+            int size = this.journeys.size();
+            this.journeys.entrySet().removeIf(entry -> {
+                Key key = entry.getKey();
+                long arrival = entry.getValue().isFound() ? entry.getValue().getArrivalTime() : Integer.MAX_VALUE;
+                // on a date, the trips of the day before run 24 hours earlier
+                return changedWithin(changedDepartures, key.time, arrival)
+                        || key.date != null && changedWithin(changedDepartures, key.time + DAY, arrival + DAY);
+            });
+            return size - this.journeys.size();
+        }
+    }
+
+    /**
+     * @brief Tells whether a value lies within a time window.
+     *
+     * @param values The values, sorted in increasing order.
+     * @param from   The start of the window.
+     * @param to     The end of the window, included.
+     * @return true if a value is at or after from and at or before to.
+     */
+    private static boolean changedWithin(int[] values, long from, long to) {
+        int left = 0;
+        int right = values.length - 1;
+        while (left <= right) {
+            int mid = (left + right) >>> 1;
+            if (values[mid] >= from) {
+                right = mid - 1;
+            } else {
+                left = mid + 1;
+            }
+        }
+        return left < values.length && values[left] <= to;
+    }
+
+    /**
+     * @brief Removes every journey, the counters being kept.
+     */
+    public void clear() {
+        synchronized (this.journeys) {
+            this.journeys.clear();
+        }
+    }
+
+    // #### Getters ####
+
+    public int size() {
+        synchronized (this.journeys) {
+            return this.journeys.size();
+        }
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+}
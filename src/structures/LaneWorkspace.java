@@ -0,0 +1,166 @@
+package structures;
+
+import java.util.Arrays;
+
+/**
+ * @brief Reusable per-query state of the bit-parallel connection scan, which
+ *        answers up to 64 earliest-arrival queries (lanes) in a single pass
+ *        over the connexions.
+ *
+ *        Every stop owns 64 arrival slots, one per lane, along with the mask
+ *        of the lanes that reached it and the earliest of their arrivals, so
+ *        that a connexion departing from a stop no lane has reached in time is
+ *        skipped with a single comparison, as in the scan of a single query.
+ *        Every trip keeps the mask of the lanes seated in it, so that the
+ *        lanes boarding or staying on board are combined with one OR. As in
+ *        QueryWorkspace, stops and trips are stamped with the epoch that wrote
+ *        them so that reset() costs O(1).
+ */
+public class LaneWorkspace {
+
+    public static final int LANES = 64; // one bit of a long per lane
+
+    // #### Attributes ####
+
+    // arrival of lane l at stop s, at index s * LANES + l, only meaningful if
+    // bit l of reachedLanes[s] is set
+    private final int[] arrivals;
+    private final long[] reachedLanes;
+    private final int[] minArrivals; // earliest arrival of any lane at each stop
+    private final int[] stopEpochs;
+
+    private final long[] tripLanes; // lanes seated in each trip
+    private final int[] tripEpochs;
+
+    private int epoch = 0;
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the LaneWorkspace class.
+     *
+     * @param stopCount The number of stops of the timetable.
+     * @param tripCount The number of trip indices of the timetable (see
+     *                  Timetable.getTripSlotCount).
+     */
+    public LaneWorkspace(int stopCount, int tripCount) {
+        this.arrivals = new int[stopCount * LANES];
+        this.reachedLanes = new long[stopCount];
+        this.minArrivals = new int[stopCount];
+        this.stopEpochs = new int[stopCount];
+        this.tripLanes = new long[tripCount];
+        this.tripEpochs = new int[tripCount];
+    }
+
+    // #### Methods ####
+
+    /**
+     * @brief Invalidates every stop and trip in O(1) by moving to a new epoch.
+     */
+    public void reset() {
+        this.epoch++;
+        if (this.epoch == Integer.MAX_VALUE) { // on overflow, really clear the stamps once
+            Arrays.fill(this.stopEpochs, 0);
+            Arrays.fill(this.tripEpochs, 0);
+            this.epoch = 1;
+        }
+    }
+
+    /**
+     * @brief Returns the earliest arrival of any lane at a stop.
+     *
+     * @param stop The dense index of the stop.
+     * @return The arrival time, or Integer.MAX_VALUE if no lane reached it.
+     */
+    public int getMinArrival(int stop) {
+        return this.stopEpochs[stop] == this.epoch ? this.minArrivals[stop] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @brief Returns the arrival of a lane at a stop.
+     *
+     * @param stop The dense index of the stop.
+     * @param lane The lane.
+     * @return The arrival time, or Integer.MAX_VALUE if the lane did not reach
+     *         the stop.
+     */
+    public int getArrival(int stop, int lane) {
+        if (this.stopEpochs[stop] != this.epoch || (this.reachedLanes[stop] & (1L << lane)) == 0)
+            return Integer.MAX_VALUE;
+        return this.arrivals[stop * LANES + lane];
+    }
+
+    /**
+     * @brief Returns the lanes at a stop at a given time.
+     *
+     * @param stop The dense index of the stop.
+     * @param time The time.
+     * @return The mask of the lanes that arrived at the stop at or before time.
+     */
+    public long getLanesAt(int stop, int time) {
+        if (this.stopEpochs[stop] != this.epoch || this.minArrivals[stop] > time)
+            return 0L;
+        long lanes = 0L;
+        int base = stop * LANES;
+        for (long m = this.reachedLanes[stop]; m != 0; m &= m - 1) {
+            int lane = Long.numberOfTrailingZeros(m);
+            if (this.arrivals[base + lane] <= time)
+                lanes |= 1L << lane;
+        }
+        return lanes;
+    }
+
+    /**
+     * @brief Sets the arrival of some lanes at a stop, for the lanes it
+     *        improves.
+     *
+     * @param stop    The dense index of the stop.
+     * @param lanes   The mask of the lanes arriving.
+     * @param arrival The arrival time.
+     * @return The mask of the lanes whose arrival was improved.
+     */
+    public long improve(int stop, long lanes, int arrival) {
+        if (this.stopEpochs[stop] != this.epoch) {
+            this.stopEpochs[stop] = this.epoch;
+            this.reachedLanes[stop] = 0L;
+            this.minArrivals[stop] = Integer.MAX_VALUE;
+        }
+        long reached = this.reachedLanes[stop];
+        long improved = 0L;
+        int base = stop * LANES;
+        for (long m = lanes; m != 0; m &= m - 1) {
+            int lane = Long.numberOfTrailingZeros(m);
+            if ((reached & (1L << lane)) == 0 || this.arrivals[base + lane] > arrival) {
+                this.arrivals[base + lane] = arrival;
+                improved |= 1L << lane;
+            }
+        }
+        if (improved != 0) {
+            this.reachedLanes[stop] = reached | improved;
+            if (arrival < this.minArrivals[stop])
+                this.minArrivals[stop] = arrival;
+        }
+        return improved;
+    }
+
+    /**
+     * @brief Returns the lanes seated in a trip.
+     *
+     * @param trip The dense index of the trip.
+     * @return The mask of the lanes that boarded the trip.
+     */
+    public long getTripLanes(int trip) {
+        return this.tripEpochs[trip] == this.epoch ? this.tripLanes[trip] : 0L;
+    }
+
+    /**
+     * @brief Sets the lanes seated in a trip.
+     *
+     * @param trip  The dense index of the trip.
+     * @param lanes The mask of the lanes that boarded the trip.
+     */
+    public void setTripLanes(int trip, long lanes) {
+        this.tripEpochs[trip] = this.epoch;
+        this.tripLanes[trip] = lanes;
+    }
+}
@@ -0,0 +1,314 @@
+package structures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * @brief Timetable of a network updated with the announced delays of its
+ *        trips.
+ *
+ *        A delay gives a trip, a stop sequence and a number of seconds: the
+ *        trip arrives at and leaves the stops with that stop sequence or a
+ *        later one that long after its schedule (before it if negative), until
+ *        the stop of a later delay of the same trip. A delay is counted from
+ *        the schedule, and replaces the delays announced for its stop and the
+ *        later ones. The connexions are matched on the stop sequences of
+ *        stop_times.csv, kept by the timetable (see StopSequences), whether it
+ *        was built from the GTFS files or loaded from a snapshot.
+ *
+ *        Every update produces a new Timetable, which is never modified once
+ *        returned, so a query keeps scanning the version it started with. The
+ *        connexions of the updated trips are shifted from their scheduled
+ *        times and sorted among themselves, then merged back into the other
+ *        connexions (see Timetable.withMovedTrips): an update costs a single
+ *        pass over the connexions and the sort of the moved ones, instead of
+ *        the full sort of Builder.buildConnexions.
+ */
+public class LiveTimetable {
+
+    /**
+     * @brief Delay of a trip from one of its stops on.
+     */
+    public static final class Delay {
+        private final String tripId;
+        private final int stopSequence;
+        private final int delay;
+
+        /**
+         * @brief Constructor for the Delay class.
+         *
+         * @param tripId       The ID of the trip.
+         * @param stopSequence The stop sequence of the first delayed stop, as in
+         *                     stop_times.csv.
+         * @param delay        The delay in seconds, negative if early.
+         */
+        public Delay(String tripId, int stopSequence, int delay) {
+            this.tripId = tripId;
+            this.stopSequence = stopSequence;
+            this.delay = delay;
+        }
+
+        public String getTripId() {
+            return this.tripId;
+        }
+
+        public int getStopSequence() {
+            return this.stopSequence;
+        }
+
+        public int getDelay() {
+            return this.delay;
+        }
+    }
+
+    // #### Attributes ####
+
+    private final Timetable scheduled;
+
+    // connexions of every trip in the scheduled timetable, in travel order, in
+    // compressed sparse row form
+    private final int[] tripOffsets;
+    private final int[] tripConnexions;
+    private final int[] liveDepartures; // departure time of each of them with the delays announced so far
+    private final StopSequences stopSequences; // null if the timetable does not know them
+
+    // announced delays, by dense trip index then by stop sequence of their first
+    // delayed stop
+    private final Map<Integer, TreeMap<Integer, Delay>> delays = new HashMap<>();
+    private volatile Timetable current;
+    private int[] changedDepartures = new int[0]; // by the last update, sorted
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the LiveTimetable class, without any delay.
+     *
+     * @param scheduled The timetable of the schedule.
+     */
+    public LiveTimetable(Timetable scheduled) {
+        this.scheduled = scheduled;
+        this.stopSequences = scheduled.getStopSequences();
+        this.current = scheduled;
+
+        // the connexions of a trip are sorted by departure time, so their order
+        // in the timetable is their travel order
+        int[] tripsOfConnexions = scheduled.getTrips();
+        int tripCount = scheduled.getTripCount();
+        this.tripOffsets = new int[tripCount + 1];
+        for (int trip : tripsOfConnexions) {
+            this.tripOffsets[trip + 1]++;
+        }
+        for (int t = 0; t < tripCount; t++) {
+            this.tripOffsets[t + 1] += this.tripOffsets[t];
+        }
+        this.tripConnexions = new int[tripsOfConnexions.length];
+        int[] next = Arrays.copyOf(this.tripOffsets, tripCount);
+        for (int i = 0; i < tripsOfConnexions.length; i++) {
+            this.tripConnexions[next[tripsOfConnexions[i]]++] = i;
+        }
+        this.liveDepartures = new int[this.tripConnexions.length];
+        for (int c = 0; c < this.tripConnexions.length; c++) {
+            this.liveDepartures[c] = scheduled.getDepartures()[this.tripConnexions[c]];
+        }
+    }
+
+    // #### Methods ####
+
+    /**
+     * @brief Applies delays, producing a new version of the timetable.
+     *
+     * @param updates The delays, applied in order.
+     * @return The number of delays applied, those of unknown trips being
+     *         ignored.
+     */
+    public synchronized int apply(Collection<Delay> updates) {
+        TreeSet<Integer> updated = new TreeSet<>();
+        for (Delay update : updates) {
+            int trip = this.scheduled.getTripIndex(update.getTripId());
+            if (trip >= 0)
+                updated.add(trip);
+        }
+        if (updated.isEmpty()) {
+            this.changedDepartures = new int[0];
+            return 0;
+        }
+        int applied = 0;
+        for (Delay update : updates) {
+            int trip = this.scheduled.getTripIndex(update.getTripId());
+            if (trip < 0)
+                continue;
+            TreeMap<Integer, Delay> announced = this.delays.computeIfAbsent(trip, k -> new TreeMap<>());
+            announced.tailMap(update.getStopSequence(), true).clear();
+            announced.put(update.getStopSequence(), update);
+            applied++;
+        }
+        this.current = merge(updated);
+        return applied;
+    }
+
+    /**
+     * @brief Returns the stop sequence of the departure stop of a connexion.
+     *
+     *        A timetable without stop sequences numbers the stops of a trip
+     *        from 0 in travel order, and so does a trip whose stop sequences do
+     *        not match its connexions.
+     *
+     * @param trip     The dense index of the trip.
+     * @param position The position of the connexion in the trip.
+     * @return The stop sequence of its departure stop.
+     */
+    private int departureSequence(int trip, int position) {
+        if (this.stopSequences == null
+                || this.stopSequences.count(trip) != this.tripOffsets[trip + 1] - this.tripOffsets[trip])
+            return position;
+        return this.stopSequences.departureSequence(trip, position);
+    }
+
+    /**
+     * @brief Returns the stop sequence of the arrival stop of a connexion.
+     *
+     * @param trip     The dense index of the trip.
+     * @param position The position of the connexion in the trip.
+     * @return The stop sequence of its arrival stop.
+     */
+    private int arrivalSequence(int trip, int position) {
+        if (this.stopSequences == null
+                || this.stopSequences.count(trip) != this.tripOffsets[trip + 1] - this.tripOffsets[trip])
+            return position + 1;
+        return this.stopSequences.arrivalSequence(trip, position);
+    }
+
+    /**
+     * @brief Builds the next version of the timetable, moving the connexions of
+     *        some trips to their delayed times, and records the departure
+     *        times they leave and join.
+     *
+     * @param updated The dense indices of the trips whose delays changed.
+     * @return The new version.
+     */
+    private Timetable merge(TreeSet<Integer> updated) {
+        int[] scheduledDepartures = this.scheduled.getDepartures();
+        int[] scheduledArrivals = this.scheduled.getArrivals();
+        int[] scheduledFromStops = this.scheduled.getFromStops();
+        int[] scheduledToStops = this.scheduled.getToStops();
+        int[] scheduledTrips = this.scheduled.getTrips();
+        byte[] scheduledModes = this.scheduled.getModes();
+
+        // the connexions of the updated trips at their delayed times, sorted by
+        // departure time, a trip keeping its travel order on ties
+        boolean[] moved = new boolean[this.scheduled.getTripCount()];
+        int count = 0;
+        for (int trip : updated) {
+            moved[trip] = true;
+            count += this.tripOffsets[trip + 1] - this.tripOffsets[trip];
+        }
+        int[] delayedDepartures = new int[count];
+        int[] delayedArrivals = new int[count];
+        int[] delayedConnexions = new int[count]; // index in the scheduled timetable
+        int[] changed = new int[2 * count]; // departure times before and after
+        long[] order = new long[count]; // departure time in the high bits, index in the run in the low bits
+        int k = 0;
+        for (int trip : updated) {
+            TreeMap<Integer, Delay> announced = this.delays.get(trip);
+            for (int c = this.tripOffsets[trip], position = 0; c < this.tripOffsets[trip + 1]; c++, position++) {
+                int connexion = this.tripConnexions[c];
+                int departure = scheduledDepartures[connexion] + delayAt(announced, departureSequence(trip, position));
+                delayedDepartures[k] = departure;
+                delayedArrivals[k] = Math.max(departure,
+                        scheduledArrivals[connexion] + delayAt(announced, arrivalSequence(trip, position)));
+                delayedConnexions[k] = connexion;
+                order[k] = ((long) departure << 32) | k;
+                changed[2 * k] = this.liveDepartures[c];
+                changed[2 * k + 1] = departure;
+                this.liveDepartures[c] = departure;
+                k++;
+            }
+        }
+        Arrays.sort(order);
+        Arrays.sort(changed);
+        this.changedDepartures = changed;
+        int[] runDepartures = new int[count];
+        int[] runArrivals = new int[count];
+        int[] runFromStops = new int[count];
+        int[] runToStops = new int[count];
+        int[] runTrips = new int[count];
+        byte[] runModes = new byte[count];
+        for (int r = 0; r < count; r++) {
+            int index = (int) order[r];
+            int connexion = delayedConnexions[index];
+            runDepartures[r] = delayedDepartures[index];
+            runArrivals[r] = delayedArrivals[index];
+            runFromStops[r] = scheduledFromStops[connexion];
+            runToStops[r] = scheduledToStops[connexion];
+            runTrips[r] = scheduledTrips[connexion];
+            runModes[r] = scheduledModes[connexion];
+        }
+        return this.current.withMovedTrips(moved, runDepartures, runArrivals, runFromStops, runToStops, runTrips,
+                runModes);
+    }
+
+    /**
+     * @brief Returns the delay of a trip at one of its stops.
+     *
+     * @param announced    The delays of the trip, by stop sequence, null if
+     *                     none was announced.
+     * @param stopSequence The stop sequence of the stop.
+     * @return The delay in seconds, 0 if none was announced up to this stop.
+     */
+    private static int delayAt(TreeMap<Integer, Delay> announced, int stopSequence) {
+        if (announced == null)
+            return 0;
+        Map.Entry<Integer, Delay> entry = announced.floorEntry(stopSequence);
+        return entry == null ? 0 : entry.getValue().getDelay();
+    }
+
+    // #### Getters ####
+
+    /**
+     * @brief Returns the current version of the timetable.
+     *
+     * @return The timetable with every delay applied so far.
+     */
+    public Timetable getTimetable() {
+        return this.current;
+    }
+
+    public Timetable getScheduled() {
+        return this.scheduled;
+    }
+
+    /**
+     * @brief Returns the departure times the last update changed, so that the
+     *        journeys that scanned them can be found again.
+     *
+     * @return The former and the new departure times of the connexions moved
+     *         by the last update, sorted.
+     */
+    public synchronized int[] getChangedDepartures() {
+        return this.changedDepartures;
+    }
+
+    public synchronized int getDelayedTripCount() {
+        return this.delays.size();
+    }
+
+    /**
+     * @brief Returns the delays in effect, so that they can be applied again to
+     *        another version of the network.
+     *
+     * @return The delays, trip by trip in the order of their stops.
+     */
+    public synchronized List<Delay> getDelays() {
+        List<Delay> announced = new ArrayList<>();
+        for (TreeMap<Integer, Delay> trip : this.delays.values()) {
+            announced.addAll(trip.values());
+        }
+        return announced;
+    }
+}
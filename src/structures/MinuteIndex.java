@@ -0,0 +1,191 @@
+package structures;
+
+/**
+ * @brief Index of the first connexion departing in each minute of the
+ *        service day.
+ *
+ *        The connexions being sorted by departure time, those departing during
+ *        minute m are the entries first(m) to first(m + 1) - 1. The minutes go
+ *        up to the last departure, past 24:00 when trips run after midnight.
+ *        A query starting on a minute finds its first connexion with a single
+ *        lookup, any other one with a binary search within its minute only.
+ */
+public class MinuteIndex {
+
+    // #### Attributes ####
+
+    private final int[] departures; // departure time of each connexion, sorted
+    private final int[] firsts; // first connexion departing at or after each minute, then the connexion count
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the MinuteIndex class.
+     *
+     * @param departures The departure time of each connexion, sorted in
+     *                   increasing order.
+     */
+    public MinuteIndex(int[] departures) {
+        this.departures = departures;
+        int minutes = departures.length == 0 ? 0 : Math.max(0, departures[departures.length - 1]) / 60 + 1;
+        this.firsts = new int[minutes + 1];
+        int i = 0;
+        for (int minute = 0; minute < minutes; minute++) {
+            while (i < departures.length && departures[i] < minute * 60) {
+                i++;
+            }
+            this.firsts[minute] = i;
+        }
+        this.firsts[minutes] = departures.length;
+    }
+
+    private MinuteIndex(int[] departures, int[] firsts) {
+        this.departures = departures;
+        this.firsts = firsts;
+    }
+
+    // #### Methods ####
+
+    /**
+     * @brief Finds the first connexion departing at or after a given time.
+     *
+     * @param time The time in seconds.
+     * @return The index of the first connexion departing at or after time, the
+     *         number of connexions if there is none.
+     */
+    public int startIndex(int time) {
+        if (time <= 0)
+            return search(0, this.firsts[0], time);
+        int minute = time / 60;
+        if (minute >= getMinuteCount())
+            return this.departures.length;
+        if (time % 60 == 0)
+            return this.firsts[minute];
+        return search(this.firsts[minute], this.firsts[minute + 1], time);
+    }
+
+    /**
+     * @brief Returns the first connexion departing at or after the start of a
+     *        minute.
+     *
+     * @param minute The minute of the service day (e.g. 8 * 60 for 08:00).
+     * @return The index of the first connexion departing at or after minute,
+     *         the number of connexions if there is none.
+     */
+    public int first(int minute) {
+        if (minute <= 0)
+            return startIndex(0);
+        return this.firsts[Math.min(minute, getMinuteCount())];
+    }
+
+    /**
+     * @brief Returns the number of connexions departing during a minute.
+     *
+     * @param minute The minute of the service day.
+     * @return The number of connexions departing from minute to the next one.
+     */
+    public int count(int minute) {
+        if (minute < 0 || minute >= getMinuteCount())
+            return 0;
+        return this.firsts[minute + 1] - this.firsts[minute];
+    }
+
+    /**
+     * @brief Returns the number of connexions departing within a time window,
+     *        that is the number a scan over this window goes through.
+     *
+     * @param from The start of the window in seconds.
+     * @param to   The end of the window in seconds, included.
+     * @return The number of connexions departing from from to to.
+     */
+    public int count(int from, int to) {
+        if (to < from)
+            return 0;
+        return startIndex(to + 1) - startIndex(from);
+    }
+
+    /**
+     * @brief Returns the index of the connexions once some of them moved to
+     *        other times, without going through all of them.
+     *
+     *        The connexions departing before a minute are those that did, less
+     *        the ones that left from before it, plus the ones that joined
+     *        before it: an update costs the number of minutes and of moved
+     *        connexions.
+     *
+     * @param departures The departure times of the connexions after the move,
+     *                   sorted in increasing order.
+     * @param left       The former departure times of the moved connexions,
+     *                   sorted in increasing order.
+     * @param joined     Their new departure times, sorted in increasing order.
+     * @return The index of departures.
+     */
+    public MinuteIndex moved(int[] departures, int[] left, int[] joined) {
+        int minutes = departures.length == 0 ? 0 : Math.max(0, departures[departures.length - 1]) / 60 + 1;
+        int[] firsts = new int[minutes + 1];
+        int l = 0;
+        int j = 0;
+        for (int minute = 0; minute < minutes; minute++) {
+            int time = minute * 60;
+            while (l < left.length && left[l] < time) {
+                l++;
+            }
+            while (j < joined.length && joined[j] < time) {
+                j++;
+            }
+            firsts[minute] = this.firsts[Math.min(minute, getMinuteCount())] - l + j;
+        }
+        firsts[minutes] = departures.length;
+        return new MinuteIndex(departures, firsts);
+    }
+
+    /**
+     * @brief Returns the minute with the most departures.
+     *
+     * @return The minute of the service day with the most connexions departing
+     *         during it, the earliest one on ties, -1 if there is none.
+     */
+    public int busiestMinute() {
+        int busiest = -1;
+        for (int minute = 0; minute < getMinuteCount(); minute++) {
+            if (busiest < 0 || count(minute) > count(busiest))
+                busiest = minute;
+        }
+        return busiest;
+    }
+
+    /**
+     * @brief Finds the first connexion departing at or after a given time
+     *        between two indices.
+     *
+     * @param left  The first index searched.
+     * @param right The index after the last one searched.
+     * @param time  The time in seconds.
+     * @return The index of the first connexion departing at or after time,
+     *         right if there is none.
+     */
+    private int search(int left, int right, int time) {
+        right--;
+        while (left <= right) {
+            int mid = (left + right) >>> 1;
+            if (this.departures[mid] >= time) {
+                right = mid - 1;
+            } else {
+                left = mid + 1;
+            }
+        }
+        return left;
+    }
+
+    // #### Getters ####
+
+    /**
+     * @brief Returns the number of minutes indexed.
+     *
+     * @return The number of minutes from 00:00 to the minute of the last
+     *         departure, included.
+     */
+    public int getMinuteCount() {
+        return this.firsts.length - 1;
+    }
+}
@@ -0,0 +1,67 @@
+package structures;
+
+import objects.Route;
+import objects.Stop;
+import objects.Trip;
+
+import java.util.Map;
+
+/**
+ * @brief The fully built network served to the queries: the GTFS maps, the
+ *        timetable and the stop name index.
+ *
+ *        A Network is never modified once built, so it can be shared by every
+ *        thread running queries.
+ */
+public class Network {
+
+    // #### Attributes ####
+
+    private final Map<String, Stop> stops;
+    private final Map<String, Trip> trips;
+    private final Map<String, Route> routes;
+    private final Timetable timetable;
+    private final StopNameIndex stopNameIndex;
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the Network class.
+     *
+     * @param stops         The map of stops, by stop ID.
+     * @param trips         The map of trips, by trip ID.
+     * @param routes        The map of routes, by route ID.
+     * @param timetable     The timetable of the connexions.
+     * @param stopNameIndex The index of the stops by normalized name.
+     */
+    public Network(Map<String, Stop> stops, Map<String, Trip> trips, Map<String, Route> routes, Timetable timetable,
+            StopNameIndex stopNameIndex) {
+        this.stops = stops;
+        this.trips = trips;
+        this.routes = routes;
+        this.timetable = timetable;
+        this.stopNameIndex = stopNameIndex;
+    }
+
+    // #### Getters ####
+
+    public Map<String, Stop> getStops() {
+        return this.stops;
+    }
+
+    public Map<String, Trip> getTrips() {
+        return this.trips;
+    }
+
+    public Map<String, Route> getRoutes() {
+        return this.routes;
+    }
+
+    public Timetable getTimetable() {
+        return this.timetable;
+    }
+
+    public StopNameIndex getStopNameIndex() {
+        return this.stopNameIndex;
+    }
+}
@@ -0,0 +1,198 @@
+package structures;
+
+import java.util.Arrays;
+
+/**
+ * @brief Reusable per-query state of the multi-criteria connection scan
+ *        (arrival time and number of trips taken).
+ *
+ *        Every stop owns a fixed-size bag of maxLegs + 1 slots: slot k holds the
+ *        earliest arrival at the stop using at most k trips, along with the leg
+ *        that reached it. The Pareto set of (arrival, transfers) of a stop is
+ *        made of the slots that arrive strictly earlier than the previous one.
+ *        Every trip keeps the fewest trips used to be seated in it and where it
+ *        was boarded. As in QueryWorkspace, stops and trips are stamped with the
+ *        epoch that wrote them so that reset() costs O(1).
+ */
+public class ParetoWorkspace {
+
+    // #### Attributes ####
+
+    private final int slots; // maxLegs + 1 slots per stop, slot 0 being the starting stops
+
+    // bags of the stops, flattened: slot k of stop s is at index s * slots + k
+    private final int[] arrivals;
+    private final int[] parentStops;
+    private final int[] parentTrips; // -1 for a walk
+    private final int[] parentDepartures;
+    private final int[] parentSlots;
+    private final int[] stopEpochs;
+
+    // state of the trips
+    private final int[] tripLegs; // fewest trips used once seated in the trip
+    private final int[] tripBoardStops;
+    private final int[] tripBoardTimes;
+    private final int[] tripEpochs;
+
+    private int epoch = 0;
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the ParetoWorkspace class.
+     *
+     * @param stopCount The number of stops of the timetable.
+     * @param tripCount The number of trip indices of the timetable (see
+     *                  Timetable.getTripSlotCount).
+     * @param maxLegs   The maximum number of trips of a journey (transfers + 1).
+     */
+    public ParetoWorkspace(int stopCount, int tripCount, int maxLegs) {
+        this.slots = maxLegs + 1;
+        this.arrivals = new int[stopCount * this.slots];
+        this.parentStops = new int[stopCount * this.slots];
+        this.parentTrips = new int[stopCount * this.slots];
+        this.parentDepartures = new int[stopCount * this.slots];
+        this.parentSlots = new int[stopCount * this.slots];
+        this.stopEpochs = new int[stopCount];
+        this.tripLegs = new int[tripCount];
+        this.tripBoardStops = new int[tripCount];
+        this.tripBoardTimes = new int[tripCount];
+        this.tripEpochs = new int[tripCount];
+    }
+
+    // #### Methods ####
+
+    /**
+     * @brief Invalidates every bag and trip in O(1) by moving to a new epoch.
+     */
+    public void reset() {
+        this.epoch++;
+        if (this.epoch == Integer.MAX_VALUE) { // on overflow, really clear the stamps once
+            Arrays.fill(this.stopEpochs, 0);
+            Arrays.fill(this.tripEpochs, 0);
+            this.epoch = 1;
+        }
+    }
+
+    /**
+     * @brief Returns the maximum number of trips of a journey.
+     *
+     * @return The maximum number of legs.
+     */
+    public int getMaxLegs() {
+        return this.slots - 1;
+    }
+
+    /**
+     * @brief Returns the earliest arrival at a stop using at most the given
+     *        number of trips.
+     *
+     * @param stop The dense index of the stop.
+     * @param legs The number of trips.
+     * @return The arrival time, or Integer.MAX_VALUE if unreached.
+     */
+    public int getArrival(int stop, int legs) {
+        return this.stopEpochs[stop] == this.epoch ? this.arrivals[stop * this.slots + legs] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @brief Returns the fewest trips needed to be at a stop at the given time.
+     *
+     * @param stop The dense index of the stop.
+     * @param time The time at which we must be at the stop.
+     * @return The number of trips, or -1 if the stop cannot be reached in time.
+     */
+    public int getLegsAt(int stop, int time) {
+        if (this.stopEpochs[stop] != this.epoch)
+            return -1;
+        int base = stop * this.slots;
+        for (int k = 0; k < this.slots; k++) { // arrivals never increase with k
+            if (this.arrivals[base + k] <= time)
+                return k;
+        }
+        return -1;
+    }
+
+    /**
+     * @brief Improves the bag of a stop with an arrival using the given number
+     *        of trips, which also improves every slot with more trips.
+     *
+     * @param stop       The dense index of the stop.
+     * @param legs       The number of trips used.
+     * @param arrival    The arrival time.
+     * @param parentStop The dense index of the stop the leg departs from, -1 for
+     *                   a starting stop.
+     * @param parentTrip The dense index of the trip taken, -1 for a walk.
+     * @param departure  The departure time of the leg.
+     * @param parentSlot The slot of the parent stop the leg continues from.
+     * @return true if at least one slot was improved.
+     */
+    public boolean improve(int stop, int legs, int arrival, int parentStop, int parentTrip, int departure,
+            int parentSlot) {
+        int base = stop * this.slots;
+        if (this.stopEpochs[stop] != this.epoch) { // first write of this query: clear the bag
+            Arrays.fill(this.arrivals, base, base + this.slots, Integer.MAX_VALUE);
+            this.stopEpochs[stop] = this.epoch;
+        }
+        boolean improved = false;
+        for (int k = legs; k < this.slots && this.arrivals[base + k] > arrival; k++) {
+            this.arrivals[base + k] = arrival;
+            this.parentStops[base + k] = parentStop;
+            this.parentTrips[base + k] = parentTrip;
+            this.parentDepartures[base + k] = departure;
+            this.parentSlots[base + k] = parentSlot;
+            improved = true;
+        }
+        return improved;
+    }
+
+    public int getParentStop(int stop, int legs) {
+        return this.parentStops[stop * this.slots + legs];
+    }
+
+    public int getParentTrip(int stop, int legs) {
+        return this.parentTrips[stop * this.slots + legs];
+    }
+
+    public int getParentDeparture(int stop, int legs) {
+        return this.parentDepartures[stop * this.slots + legs];
+    }
+
+    public int getParentSlot(int stop, int legs) {
+        return this.parentSlots[stop * this.slots + legs];
+    }
+
+    /**
+     * @brief Returns the fewest trips used once seated in a trip.
+     *
+     * @param trip The dense index of the trip.
+     * @return The number of trips, or -1 if the trip was not boarded.
+     */
+    public int getTripLegs(int trip) {
+        return this.tripEpochs[trip] == this.epoch ? this.tripLegs[trip] : -1;
+    }
+
+    public int getTripBoardStop(int trip) {
+        return this.tripBoardStops[trip];
+    }
+
+    public int getTripBoardTime(int trip) {
+        return this.tripBoardTimes[trip];
+    }
+
+    /**
+     * @brief Records that a trip was boarded at a stop with the given number of
+     *        trips.
+     *
+     * @param trip      The dense index of the trip.
+     * @param legs      The number of trips used, this one included.
+     * @param boardStop The dense index of the stop where the trip was boarded.
+     * @param boardTime The time at which the trip was boarded.
+     */
+    public void boardTrip(int trip, int legs, int boardStop, int boardTime) {
+        this.tripEpochs[trip] = this.epoch;
+        this.tripLegs[trip] = legs;
+        this.tripBoardStops[trip] = boardStop;
+        this.tripBoardTimes[trip] = boardTime;
+    }
+}
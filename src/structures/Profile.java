@@ -0,0 +1,104 @@
+package structures;
+
+import java.util.Arrays;
+
+/**
+ * @brief Earliest-arrival function of a stop, as computed by the profile
+ *        connection scan: the Pareto set of (departure time, arrival time)
+ *        pairs where leaving later never arrives earlier.
+ *
+ *        Entries are added by decreasing departure time (the scan runs
+ *        backwards), so both arrays are stored in decreasing order and an
+ *        entry is only kept if it arrives strictly earlier than every entry
+ *        departing later.
+ */
+public class Profile {
+
+    // #### Attributes ####
+
+    private int[] departures = new int[4];
+    private int[] arrivals = new int[4];
+    private int size = 0;
+
+    // #### Methods ####
+
+    /**
+     * @brief Adds a (departure, arrival) pair if it is not dominated.
+     *
+     * @param departure The departure time, not greater than any departure
+     *                  already in the profile.
+     * @param arrival   The arrival time at the destination.
+     * @return true if the pair was added, false if it was dominated.
+     */
+    public boolean add(int departure, int arrival) {
+        if (this.size > 0 && arrival >= this.arrivals[this.size - 1])
+            return false;
+        if (this.size > 0 && departure == this.departures[this.size - 1]) { // same departure, better arrival
+            this.arrivals[this.size - 1] = arrival;
+            return true;
+        }
+        if (this.size == this.departures.length) {
+            this.departures = Arrays.copyOf(this.departures, this.size * 2);
+            this.arrivals = Arrays.copyOf(this.arrivals, this.size * 2);
+        }
+        this.departures[this.size] = departure;
+        this.arrivals[this.size] = arrival;
+        this.size++;
+        return true;
+    }
+
+    /**
+     * @brief Evaluates the earliest arrival time when leaving at or after the
+     *        given time.
+     *
+     *        Complexity: O(log n) where n is the size of the profile.
+     *
+     * @param time The time at which we are ready to depart.
+     * @return The earliest arrival time, or Integer.MAX_VALUE if none.
+     */
+    public int evaluate(int time) {
+        // last entry (smallest departure) whose departure is >= time
+        int left = 0, right = this.size - 1, found = -1;
+        while (left <= right) {
+            int mid = (left + right) / 2;
+            if (this.departures[mid] >= time) {
+                found = mid;
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+        return found == -1 ? Integer.MAX_VALUE : this.arrivals[found];
+    }
+
+    /**
+     * @brief Returns the number of Pareto-optimal pairs.
+     *
+     * @return The size of the profile.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @brief Returns the departure time of the i-th pair, pairs being ordered by
+     *        increasing departure time.
+     *
+     * @param i The index of the pair.
+     * @return The departure time.
+     */
+    public int getDeparture(int i) {
+        return this.departures[this.size - 1 - i];
+    }
+
+    /**
+     * @brief Returns the arrival time of the i-th pair, pairs being ordered by
+     *        increasing departure time.
+     *
+     * @param i The index of the pair.
+     * @return The arrival time.
+     */
+    public int getArrival(int i) {
+        return this.arrivals[this.size - 1 - i];
+    }
+}
@@ -0,0 +1,176 @@
+package structures;
+
+import java.util.Arrays;
+
+/**
+ * @brief Reusable per-query state of the connection scan: the earliest arrival
+ *        time and the parent of every stop, indexed by dense stop index.
+ *
+ *        Instead of refilling every array before each query, each slot carries
+ *        the epoch at which it was last written. A slot whose epoch differs
+ *        from the current one is considered unreached, so reset() costs O(1).
+ *        It also holds the set of trips already boarded, as a bitset indexed by
+ *        dense trip index, along with where each of them was boarded. Only the
+ *        words of the bitset written during a query are cleared by reset().
+ *        A workspace is not thread-safe and is meant to be reused by a single
+ *        thread.
+ */
+public class QueryWorkspace {
+
+    // #### Attributes ####
+
+    private final int[] arrivals; // earliest known arrival time at each stop
+    private final int[] parentStops; // the stop we came from
+    private final int[] parentTrips; // the trip taken (-1 for a walk)
+    private final int[] parentDepartures; // the departure time from the parent stop
+    private final int[] epochs; // the epoch at which each slot was last written
+    private int epoch = 0;
+
+    private final long[] reachedTrips; // bit t is set once trip t is boarded
+    private final int[] dirtyWords; // indices of the non-zero words of reachedTrips
+    private int dirtyCount = 0;
+    private final int[] tripBoardStops; // the stop where each boarded trip was boarded
+    private final int[] tripBoardTimes; // the time at which each boarded trip was boarded
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the QueryWorkspace class.
+     *
+     * @param stopCount The number of stops of the timetable.
+     * @param tripCount The number of trip indices of the timetable (see
+     *                  Timetable.getTripSlotCount).
+     */
+    public QueryWorkspace(int stopCount, int tripCount) {
+        this.arrivals = new int[stopCount];
+        this.parentStops = new int[stopCount];
+        this.parentTrips = new int[stopCount];
+        this.parentDepartures = new int[stopCount];
+        this.epochs = new int[stopCount];
+        this.reachedTrips = new long[(tripCount + 63) >>> 6];
+        this.dirtyWords = new int[this.reachedTrips.length];
+        this.tripBoardStops = new int[tripCount];
+        this.tripBoardTimes = new int[tripCount];
+    }
+
+    // #### Methods ####
+
+    /**
+     * @brief Invalidates every slot of the workspace in O(1) by moving to a new
+     *        epoch, and clears the trips boarded during the previous query.
+     */
+    public void reset() {
+        for (int i = 0; i < this.dirtyCount; i++) {
+            this.reachedTrips[this.dirtyWords[i]] = 0L;
+        }
+        this.dirtyCount = 0;
+        this.epoch++;
+        if (this.epoch == Integer.MAX_VALUE) { // on overflow, really clear the stamps once
+            Arrays.fill(this.epochs, 0);
+            this.epoch = 1;
+        }
+    }
+
+    /**
+     * @brief Returns the number of stops this workspace was sized for.
+     *
+     * @return The number of stops.
+     */
+    public int size() {
+        return this.epochs.length;
+    }
+
+    /**
+     * @brief Returns the earliest known arrival time at a stop.
+     *
+     * @param stop The dense index of the stop.
+     * @return The arrival time, or Integer.MAX_VALUE if the stop was not reached
+     *         during the current query.
+     */
+    public int getArrival(int stop) {
+        return this.epochs[stop] == this.epoch ? this.arrivals[stop] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @brief Sets the arrival time at a stop, without any parent (used for the
+     *        starting stops).
+     *
+     * @param stop    The dense index of the stop.
+     * @param arrival The arrival time.
+     */
+    public void setArrival(int stop, int arrival) {
+        this.epochs[stop] = this.epoch;
+        this.arrivals[stop] = arrival;
+        this.parentStops[stop] = -1;
+    }
+
+    /**
+     * @brief Sets the arrival time at a stop along with the leg used to reach it.
+     *
+     * @param stop       The dense index of the stop.
+     * @param arrival    The arrival time.
+     * @param parentStop The dense index of the stop the leg departs from.
+     * @param parentTrip The dense index of the trip taken, -1 for a walk.
+     * @param departure  The departure time of the leg.
+     */
+    public void setArrival(int stop, int arrival, int parentStop, int parentTrip, int departure) {
+        this.epochs[stop] = this.epoch;
+        this.arrivals[stop] = arrival;
+        this.parentStops[stop] = parentStop;
+        this.parentTrips[stop] = parentTrip;
+        this.parentDepartures[stop] = departure;
+    }
+
+    /**
+     * @brief Returns the stop the leg reaching a stop departs from.
+     *
+     * @param stop The dense index of the stop.
+     * @return The dense index of the parent stop, or -1 if the stop has no parent.
+     */
+    public int getParentStop(int stop) {
+        return this.epochs[stop] == this.epoch ? this.parentStops[stop] : -1;
+    }
+
+    public int getParentTrip(int stop) {
+        return this.parentTrips[stop];
+    }
+
+    public int getParentDeparture(int stop) {
+        return this.parentDepartures[stop];
+    }
+
+    /**
+     * @brief Tests whether a trip was already boarded during the current query.
+     *
+     * @param trip The dense index of the trip.
+     * @return true if the trip was boarded.
+     */
+    public boolean isTripReached(int trip) {
+        return (this.reachedTrips[trip >>> 6] & (1L << trip)) != 0;
+    }
+
+    /**
+     * @brief Marks a trip as boarded.
+     *
+     * @param trip      The dense index of the trip.
+     * @param boardStop The dense index of the stop where the trip is boarded.
+     * @param boardTime The time at which the trip is boarded.
+     */
+    public void reachTrip(int trip, int boardStop, int boardTime) {
+        int word = trip >>> 6;
+        if (this.reachedTrips[word] == 0L) {
+            this.dirtyWords[this.dirtyCount++] = word;
+        }
+        this.reachedTrips[word] |= 1L << trip;
+        this.tripBoardStops[trip] = boardStop;
+        this.tripBoardTimes[trip] = boardTime;
+    }
+
+    public int getTripBoardStop(int trip) {
+        return this.tripBoardStops[trip];
+    }
+
+    public int getTripBoardTime(int trip) {
+        return this.tripBoardTimes[trip];
+    }
+}
@@ -0,0 +1,145 @@
+package structures;
+
+import objects.Service;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @brief Days on which every service runs, one bit per day.
+ *
+ *        The days are counted from the first date any service may run on, and
+ *        each service has its own bitset of dayCount bits, stored one after
+ *        the other in a single long array: whether a service runs on a day is
+ *        a single bit test. No service runs outside of the covered days.
+ */
+public class ServiceCalendar {
+
+    // #### Attributes ####
+
+    private final long firstDay; // epoch day of the first covered date
+    private final int dayCount;
+    private final int words; // longs per service
+    private final String[] serviceIds; // by dense service index
+    private final Map<String, Integer> serviceIndex;
+    private final long[] bits; // the days of service s are bits[s * words] to bits[(s + 1) * words - 1]
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the ServiceCalendar class.
+     *
+     * @param firstDay   The epoch day of the first covered date.
+     * @param dayCount   The number of covered days.
+     * @param serviceIds The service IDs, by dense service index.
+     * @param bits       The days of every service, (dayCount + 63) / 64 longs
+     *                   each.
+     */
+    public ServiceCalendar(long firstDay, int dayCount, String[] serviceIds, long[] bits) {
+        this.firstDay = firstDay;
+        this.dayCount = dayCount;
+        this.words = (dayCount + 63) / 64;
+        this.serviceIds = serviceIds;
+        this.serviceIndex = new HashMap<>();
+        for (int s = 0; s < serviceIds.length; s++) {
+            this.serviceIndex.put(serviceIds[s], s);
+        }
+        this.bits = bits;
+    }
+
+    /**
+     * @brief Builds the calendar of some services.
+     *
+     * @param services The services.
+     * @return The calendar covering every date the services may run on.
+     */
+    public static ServiceCalendar of(Collection<Service> services) {
+        LocalDate first = null;
+        LocalDate last = null;
+        for (Service service : services) {
+            LocalDate from = service.getFirstDate();
+            LocalDate to = service.getLastDate();
+            if (from != null && (first == null || from.isBefore(first)))
+                first = from;
+            if (to != null && (last == null || to.isAfter(last)))
+                last = to;
+        }
+        long firstDay = first == null ? 0 : first.toEpochDay();
+        int dayCount = first == null ? 0 : (int) (last.toEpochDay() - firstDay + 1);
+        int words = (dayCount + 63) / 64;
+        String[] serviceIds = new String[services.size()];
+        long[] bits = new long[services.size() * words];
+        int s = 0;
+        for (Service service : services) {
+            serviceIds[s] = service.getServiceId();
+            for (int day = 0; day < dayCount; day++) {
+                if (service.runsOn(LocalDate.ofEpochDay(firstDay + day)))
+                    bits[s * words + (day >>> 6)] |= 1L << day;
+            }
+            s++;
+        }
+        return new ServiceCalendar(firstDay, dayCount, serviceIds, bits);
+    }
+
+    // #### Methods ####
+
+    /**
+     * @brief Returns the day of a date.
+     *
+     * @param date The date.
+     * @return The number of days since the first covered date, -1 before it
+     *         and dayCount after the last one.
+     */
+    public int dayOf(LocalDate date) {
+        long day = date.toEpochDay() - this.firstDay;
+        return day < 0 ? -1 : (int) Math.min(day, this.dayCount);
+    }
+
+    /**
+     * @brief Tells whether a service runs on a day.
+     *
+     * @param service The dense index of the service.
+     * @param day     The day, as returned by dayOf.
+     * @return true if the service runs on that day.
+     */
+    public boolean isActive(int service, int day) {
+        if (day < 0 || day >= this.dayCount)
+            return false;
+        return (this.bits[service * this.words + (day >>> 6)] & (1L << day)) != 0;
+    }
+
+    /**
+     * @brief Returns the dense index of a service.
+     *
+     * @param serviceId The ID of the service.
+     * @return The dense index of the service, or -1 if the service is unknown.
+     */
+    public int getServiceIndex(String serviceId) {
+        Integer index = this.serviceIndex.get(serviceId);
+        return index == null ? -1 : index;
+    }
+
+    // #### Getters ####
+
+    public long getFirstDay() {
+        return this.firstDay;
+    }
+
+    public int getDayCount() {
+        return this.dayCount;
+    }
+
+    public int getServiceCount() {
+        return this.serviceIds.length;
+    }
+
+    public String getServiceId(int index) {
+        return this.serviceIds[index];
+    }
+
+    public long[] getBits() {
+        return this.bits;
+    }
+}
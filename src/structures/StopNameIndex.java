@@ -0,0 +1,150 @@
+package structures;
+
+import objects.Stop;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * @brief Index of the stops by normalized name.
+ *
+ *        Names are normalized by folding case and accents ("Liege" written with
+ *        or without its grave accent, "LIEGE" and "liege" share the same key),
+ *        which matters for Belgian names mixing French and Dutch. Exact lookups
+ *        go through a hash map, prefix lookups (autocompletion) through a
+ *        binary search in the sorted array of keys.
+ */
+public class StopNameIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    // #### Attributes ####
+
+    private final Map<String, List<Stop>> stopsByName = new HashMap<>();
+    private final Map<String, String> displayNames = new HashMap<>(); // normalized name -> name as written in GTFS
+    private final String[] sortedNames; // normalized names, sorted for prefix search
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the StopNameIndex class.
+     *
+     * @param stops The stops to index.
+     */
+    public StopNameIndex(Collection<Stop> stops) {
+        for (Stop stop : stops) {
+            if (stop.getStopName() == null)
+                continue;
+            String key = normalize(stop.getStopName());
+            this.stopsByName.computeIfAbsent(key, k -> new ArrayList<>()).add(stop);
+            this.displayNames.putIfAbsent(key, stop.getStopName());
+        }
+        this.sortedNames = this.stopsByName.keySet().toArray(new String[0]);
+        Arrays.sort(this.sortedNames);
+    }
+
+    /**
+     * @brief Constructor for the StopNameIndex class, from an index already
+     *        built (e.g., read from a snapshot).
+     *
+     * @param sortedNames  The normalized names, sorted.
+     * @param displayNames The name as written in GTFS of each normalized name.
+     * @param stops        The stops sharing each normalized name.
+     */
+    public StopNameIndex(String[] sortedNames, String[] displayNames, List<List<Stop>> stops) {
+        for (int i = 0; i < sortedNames.length; i++) {
+            this.stopsByName.put(sortedNames[i], stops.get(i));
+            this.displayNames.put(sortedNames[i], displayNames[i]);
+        }
+        this.sortedNames = sortedNames;
+    }
+
+    // #### Methods ####
+
+    /**
+     * @brief Normalizes a stop name: accents are removed, case is folded and
+     *        surrounding whitespace is trimmed.
+     *
+     * @param name The name to normalize.
+     * @return The normalized name.
+     */
+    public static String normalize(String name) {
+        String decomposed = Normalizer.normalize(name.trim(), Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @brief Finds all stops with the given name.
+     *
+     * @param name The name of the stop, compared after normalization.
+     * @return An unmodifiable list of the stops sharing that name, empty if none.
+     */
+    public List<Stop> find(String name) {
+        if (name == null)
+            return Collections.emptyList();
+        List<Stop> stops = this.stopsByName.get(normalize(name));
+        return stops == null ? Collections.emptyList() : Collections.unmodifiableList(stops);
+    }
+
+    /**
+     * @brief Finds the stop names starting with the given prefix, in
+     *        alphabetical order of their normalized form.
+     *
+     * @param prefix The prefix, compared after normalization.
+     * @param limit  The maximum number of names to return.
+     * @return The matching names, as written in the GTFS data.
+     */
+    public List<String> findByPrefix(String prefix, int limit) {
+        List<String> names = new ArrayList<>();
+        if (prefix == null)
+            return names;
+        String key = normalize(prefix);
+
+        // first name >= prefix, every name starting with prefix follows it
+        int index = Arrays.binarySearch(this.sortedNames, key);
+        if (index < 0)
+            index = -index - 1;
+        for (; index < this.sortedNames.length && names.size() < limit; index++) {
+            if (!this.sortedNames[index].startsWith(key))
+                break;
+            names.add(this.displayNames.get(this.sortedNames[index]));
+        }
+        return names;
+    }
+
+    /**
+     * @brief Returns the normalized names, sorted.
+     *
+     * @return The sorted array of normalized names, not to be modified.
+     */
+    public String[] getSortedNames() {
+        return this.sortedNames;
+    }
+
+    /**
+     * @brief Returns the name as written in GTFS of a normalized name.
+     *
+     * @param normalizedName The normalized name.
+     * @return The name as written in GTFS.
+     */
+    public String getDisplayName(String normalizedName) {
+        return this.displayNames.get(normalizedName);
+    }
+
+    /**
+     * @brief Returns the number of distinct normalized names.
+     *
+     * @return The number of names.
+     */
+    public int size() {
+        return this.sortedNames.length;
+    }
+}
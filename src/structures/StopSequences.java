@@ -0,0 +1,87 @@
+package structures;
+
+/**
+ * @brief GTFS stop sequences of the connexions of every trip.
+ *
+ *        The connexions of trip t, in travel order, are the entries offsets[t]
+ *        to offsets[t + 1] - 1: the k-th one leaves the stop whose stop_sequence
+ *        is departureSequence(t, k) and reaches the one whose stop_sequence is
+ *        arrivalSequence(t, k). The sequences are those of stop_times.csv, so
+ *        they may start at any value and skip some, and a connexion touching an
+ *        unknown stop, which the timetable leaves out, leaves a gap between
+ *        the arrival of a connexion and the departure of the next one.
+ */
+public class StopSequences {
+
+    // #### Attributes ####
+
+    private final int[] offsets; // first connexion of each trip, then the connexion count
+    private final int[] departureSequences;
+    private final int[] arrivalSequences;
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the StopSequences class.
+     *
+     * @param offsets            The index of the first connexion of each trip,
+     *                           followed by the number of connexions.
+     * @param departureSequences The stop sequence of the departure stop of each
+     *                           connexion, trip by trip in travel order.
+     * @param arrivalSequences   The stop sequence of the arrival stop of each
+     *                           connexion, in the same order.
+     */
+    public StopSequences(int[] offsets, int[] departureSequences, int[] arrivalSequences) {
+        this.offsets = offsets;
+        this.departureSequences = departureSequences;
+        this.arrivalSequences = arrivalSequences;
+    }
+
+    // #### Methods ####
+
+    /**
+     * @brief Returns the number of connexions of a trip.
+     *
+     * @param trip The dense index of the trip.
+     * @return The number of connexions of the trip.
+     */
+    public int count(int trip) {
+        return this.offsets[trip + 1] - this.offsets[trip];
+    }
+
+    /**
+     * @brief Returns the stop sequence of the departure stop of a connexion.
+     *
+     * @param trip     The dense index of the trip.
+     * @param position The position of the connexion in the trip, from 0.
+     * @return The stop sequence of its departure stop.
+     */
+    public int departureSequence(int trip, int position) {
+        return this.departureSequences[this.offsets[trip] + position];
+    }
+
+    /**
+     * @brief Returns the stop sequence of the arrival stop of a connexion.
+     *
+     * @param trip     The dense index of the trip.
+     * @param position The position of the connexion in the trip, from 0.
+     * @return The stop sequence of its arrival stop.
+     */
+    public int arrivalSequence(int trip, int position) {
+        return this.arrivalSequences[this.offsets[trip] + position];
+    }
+
+    // #### Getters ####
+
+    public int[] getOffsets() {
+        return this.offsets;
+    }
+
+    public int[] getDepartureSequences() {
+        return this.departureSequences;
+    }
+
+    public int[] getArrivalSequences() {
+        return this.arrivalSequences;
+    }
+}
@@ -0,0 +1,798 @@
+package structures;
+
+import objects.Stop;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * @brief Dense, integer-indexed representation of the network used by the
+ *        connection scan.
+ *
+ *        Stops and trips are mapped to dense indices, and the connexions
+ *        (sorted by increasing departure time) are stored as parallel
+ *        primitive arrays (struct-of-arrays). The i-th connexion departs from
+ *        stop fromStops[i] at departures[i] and arrives at stop toStops[i] at
+ *        arrivals[i] using trip trips[i], whose transportation mode is the bit
+ *        modes[i].
+ *
+ *        The walks are stored in compressed sparse row form: the walks from
+ *        stop s are the entries walkOffsets[s] to walkOffsets[s + 1] - 1 of
+ *        walkTargets (dense index of the destination stop) and walkDurations
+ *        (in seconds).
+ *
+ *        A query restricted to some modes only has to test (modes[i] & mask).
+ *        Once a combination of modes has been requested often enough, a
+ *        timetable holding only its connexions is built and cached, so that
+ *        restricted queries scan fewer connexions.
+ *
+ *        When the trips have service calendars, a query on a given date scans
+ *        the timetable of that day, holding only the connexions of the trips
+ *        running on it: it is built on first use and the last DAYS_KEPT ones
+ *        are cached. Trips without a service (or with an unknown one) run
+ *        every day. As in GTFS, a trip belongs to the day its service starts,
+ *        even for its times past 24:00: the timetable of a day also holds the
+ *        trips of the previous day that run past midnight, 24 hours earlier.
+ *        Those get the dense index of their trip plus the number of trips, so
+ *        that a scan never takes a trip of one day for the same trip of the
+ *        other one.
+ *
+ *        Every timetable indexes the first connexion departing in each minute,
+ *        so a scan finds where to start without searching the departures.
+ */
+public class Timetable {
+
+    // transportation modes, one bit each
+    public static final int BUS = 1;
+    public static final int TRAIN = 1 << 1;
+    public static final int TRAM = 1 << 2;
+    public static final int METRO = 1 << 3;
+    public static final int OTHER = 1 << 4; // unknown route type, only allowed when no mode is excluded
+    public static final int ALL_MODES = BUS | TRAIN | TRAM | METRO | OTHER;
+
+    // number of requests of a combination of modes before its filtered timetable
+    // is built
+    private static final int FILTER_THRESHOLD = 3;
+
+    // number of day timetables cached
+    private static final int DAYS_KEPT = 4;
+
+    // length of a service day in seconds
+    private static final int DAY = 24 * 3600;
+
+    // #### Attributes ####
+
+    // dense stop index
+    private final Stop[] stops;
+    private final Map<String, Integer> stopIndex;
+
+    // dense trip index
+    private final String[] tripIds;
+    private final Map<String, Integer> tripIndex;
+
+    // connexions sorted by departure time
+    private final int[] departures;
+    private final int[] arrivals;
+    private final int[] fromStops;
+    private final int[] toStops;
+    private final int[] trips;
+    private final byte[] modes;
+
+    // walks, in compressed sparse row form
+    private final int[] walkOffsets;
+    private final int[] walkTargets;
+    private final int[] walkDurations;
+
+    // service calendars, null if every trip runs every day
+    private final ServiceCalendar calendar;
+    private final int[] tripServices; // dense service index of each trip, -1 to run every day
+    private final boolean[] overnightTrips; // whether each trip runs past 24:00, delays included
+
+    // stop sequences of the connexions of every trip, null if unknown; those of
+    // the timetable built from the GTFS files, shared by every derived one
+    private final StopSequences stopSequences;
+
+    // first connexion of each minute
+    private final MinuteIndex minuteIndex;
+
+    // filtered timetables, by combination of modes
+    private final Map<Integer, Timetable> filtered = new ConcurrentHashMap<>();
+    private final AtomicIntegerArray filterRequests = new AtomicIntegerArray(ALL_MODES + 1);
+
+    // timetables of the last days requested, the least recently used evicted first
+    private final LinkedHashMap<Integer, Timetable> days = new LinkedHashMap<Integer, Timetable>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Timetable> eldest) {
+            return size() > DAYS_KEPT;
+        }
+    };
+
+    // #### Constructors ####
+
+    /**
+     * @brief Constructor for the Timetable class.
+     *
+     * @param stops      The stops, indexed by their dense stop index.
+     * @param stopIndex  The map from stop ID to dense stop index.
+     * @param tripIds    The trip IDs, indexed by their dense trip index.
+     * @param tripIndex  The map from trip ID to dense trip index.
+     * @param departures The departure time of each connexion.
+     * @param arrivals   The arrival time of each connexion.
+     * @param fromStops  The dense index of the departure stop of each connexion.
+     * @param toStops    The dense index of the arrival stop of each connexion.
+     * @param trips      The dense index of the trip of each connexion.
+     * @param modes      The transportation mode bit of each connexion.
+     */
+    public Timetable(Stop[] stops, Map<String, Integer> stopIndex, String[] tripIds, Map<String, Integer> tripIndex,
+            int[] departures, int[] arrivals, int[] fromStops, int[] toStops, int[] trips, byte[] modes) {
+        this(stops, stopIndex, tripIds, tripIndex, departures, arrivals, fromStops, toStops, trips, modes,
+                new int[stops.length + 1], new int[0], new int[0]);
+    }
+
+    /**
+     * @brief Constructor for the Timetable class, with walks.
+     *
+     * @param stops         The stops, indexed by their dense stop index.
+     * @param stopIndex     The map from stop ID to dense stop index.
+     * @param tripIds       The trip IDs, indexed by their dense trip index.
+     * @param tripIndex     The map from trip ID to dense trip index.
+     * @param departures    The departure time of each connexion.
+     * @param arrivals      The arrival time of each connexion.
+     * @param fromStops     The dense index of the departure stop of each
+     *                      connexion.
+     * @param toStops       The dense index of the arrival stop of each connexion.
+     * @param trips         The dense index of the trip of each connexion.
+     * @param modes         The transportation mode bit of each connexion.
+     * @param walkOffsets   The index of the first walk of each stop, followed by
+     *                      the total number of walks.
+     * @param walkTargets   The dense index of the destination stop of each walk.
+     * @param walkDurations The duration of each walk in seconds.
+     */
+    public Timetable(Stop[] stops, Map<String, Integer> stopIndex, String[] tripIds, Map<String, Integer> tripIndex,
+            int[] departures, int[] arrivals, int[] fromStops, int[] toStops, int[] trips, byte[] modes,
+            int[] walkOffsets, int[] walkTargets, int[] walkDurations) {
+        this(stops, stopIndex, tripIds, tripIndex, departures, arrivals, fromStops, toStops, trips, modes,
+                walkOffsets, walkTargets, walkDurations, null, null, null, null, null);
+    }
+
+    private Timetable(Stop[] stops, Map<String, Integer> stopIndex, String[] tripIds, Map<String, Integer> tripIndex,
+            int[] departures, int[] arrivals, int[] fromStops, int[] toStops, int[] trips, byte[] modes,
+            int[] walkOffsets, int[] walkTargets, int[] walkDurations, ServiceCalendar calendar,
+            int[] tripServices, boolean[] overnightTrips, StopSequences stopSequences, MinuteIndex minuteIndex) {
+        this.stops = stops;
+        this.stopIndex = stopIndex;
+        this.tripIds = tripIds;
+        this.tripIndex = tripIndex;
+        this.departures = departures;
+        this.arrivals = arrivals;
+        this.fromStops = fromStops;
+        this.toStops = toStops;
+        this.trips = trips;
+        this.modes = modes;
+        this.walkOffsets = walkOffsets;
+        this.walkTargets = walkTargets;
+        this.walkDurations = walkDurations;
+        this.calendar = calendar;
+        this.tripServices = tripServices;
+        this.overnightTrips = overnightTrips;
+        this.stopSequences = stopSequences;
+        this.minuteIndex = minuteIndex != null ? minuteIndex : new MinuteIndex(departures);
+    }
+
+    // #### Methods ####
+
+    /**
+     * @brief Converts a GTFS route type to its transportation mode bit.
+     *
+     * @param routeType The route type (e.g., "BUS", "train").
+     * @return The mode bit, OTHER if the route type is unknown.
+     */
+    public static int modeOf(String routeType) {
+        if (routeType == null)
+            return OTHER;
+        switch (routeType.toLowerCase()) {
+            case "bus":
+                return BUS;
+            case "train":
+                return TRAIN;
+            case "tram":
+                return TRAM;
+            case "metro":
+                return METRO;
+            default:
+                return OTHER;
+        }
+    }
+
+    /**
+     * @brief Converts a list of modes such as "bus+tram" to a mask of mode bits.
+     *
+     * @param modes The modes joined by '+', every mode if empty, null or "all".
+     * @return The mode mask, 0 if a mode is unknown.
+     */
+    public static int parseModes(String modes) {
+        if (modes == null || modes.isEmpty() || modes.equalsIgnoreCase("all"))
+            return ALL_MODES;
+        int mask = 0;
+        for (String mode : modes.split("\\+")) {
+            int bit = modeOf(mode.trim());
+            if (bit == OTHER)
+                return 0;
+            mask |= bit;
+        }
+        return mask;
+    }
+
+    /**
+     * @brief Returns the timetable to scan for a combination of modes.
+     *
+     *        The whole timetable is returned as long as the combination has not
+     *        been requested FILTER_THRESHOLD times, the caller then skipping the
+     *        other connexions with (modes[i] & mask). Past that threshold, a
+     *        timetable holding only the connexions of these modes is built once
+     *        and cached. Either way, the stop and trip indices are the same.
+     *
+     * @param mask The combination of mode bits.
+     * @return A timetable whose connexions include every connexion of these
+     *         modes.
+     */
+    public Timetable forModes(int mask) {
+        mask &= ALL_MODES;
+        if (mask == ALL_MODES)
+            return this;
+        Timetable cached = this.filtered.get(mask);
+        if (cached != null)
+            return cached;
+        if (this.filterRequests.incrementAndGet(mask) < FILTER_THRESHOLD)
+            return this;
+        return this.filtered.computeIfAbsent(mask, this::filter);
+    }
+
+    /**
+     * @brief Returns a copy of this timetable with other walks.
+     *
+     * @param walkOffsets   The index of the first walk of each stop, followed by
+     *                      the total number of walks.
+     * @param walkTargets   The dense index of the destination stop of each walk.
+     * @param walkDurations The duration of each walk in seconds.
+     * @return The timetable with these walks, sharing every other array.
+     */
+    public Timetable withWalks(int[] walkOffsets, int[] walkTargets, int[] walkDurations) {
+        return new Timetable(this.stops, this.stopIndex, this.tripIds, this.tripIndex, this.departures,
+                this.arrivals, this.fromStops, this.toStops, this.trips, this.modes, walkOffsets, walkTargets,
+                walkDurations, this.calendar, this.tripServices, this.overnightTrips, this.stopSequences,
+                this.minuteIndex);
+    }
+
+    /**
+     * @brief Returns a copy of this timetable with the stop sequences of its
+     *        connexions.
+     *
+     * @param stopSequences The stop sequences of the connexions of every trip.
+     * @return The timetable with these stop sequences, sharing every other
+     *         array.
+     */
+    public Timetable withStopSequences(StopSequences stopSequences) {
+        return new Timetable(this.stops, this.stopIndex, this.tripIds, this.tripIndex, this.departures,
+                this.arrivals, this.fromStops, this.toStops, this.trips, this.modes, this.walkOffsets,
+                this.walkTargets, this.walkDurations, this.calendar, this.tripServices, this.overnightTrips,
+                stopSequences, this.minuteIndex);
+    }
+
+    /**
+     * @brief Returns the next version of this timetable, in which the
+     *        connexions of some trips move to other times.
+     *
+     *        The moved connexions are taken out and the run is merged back into
+     *        the others, still sorted, in a single pass: a connexion of the run
+     *        goes after the ones departing at the same time. The minute index is
+     *        updated from the minutes the connexions left and joined, and the
+     *        timetables already filtered from this one (by modes or by day) are
+     *        moved the same way instead of being built again on first use. A
+     *        moved trip runs past 24:00 or not depending on its new times.
+     *
+     * @param moved         Whether the connexions of each trip move.
+     * @param runDepartures The departure time of each connexion of the moved
+     *                      trips, in increasing order.
+     * @param runArrivals   The arrival time of each connexion of the run.
+     * @param runFromStops  The dense index of the departure stop of each
+     *                      connexion of the run.
+     * @param runToStops    The dense index of the arrival stop of each
+     *                      connexion of the run.
+     * @param runTrips      The dense index of the trip of each connexion of the
+     *                      run.
+     * @param runModes      The transportation mode bit of each connexion of the
+     *                      run.
+     * @return The new version, sharing the stop and trip indices, the walks,
+     *         the service calendars and the stop sequences.
+     */
+    public Timetable withMovedTrips(boolean[] moved, int[] runDepartures, int[] runArrivals, int[] runFromStops,
+            int[] runToStops, int[] runTrips, byte[] runModes) {
+        boolean[] kept = new boolean[runDepartures.length];
+        Arrays.fill(kept, true);
+
+        // a delay may move a trip past 24:00, or back before it
+        boolean[] overnightTrips = this.overnightTrips;
+        boolean resized = false;
+        if (overnightTrips != null) {
+            overnightTrips = this.overnightTrips.clone();
+            for (int trip : runTrips) {
+                overnightTrips[trip] = false;
+            }
+            for (int k = 0; k < runTrips.length; k++) {
+                if (runArrivals[k] >= DAY)
+                    overnightTrips[runTrips[k]] = true;
+            }
+            for (int trip : runTrips) {
+                resized |= overnightTrips[trip] != this.overnightTrips[trip];
+            }
+        }
+        return withMovedTrips(moved, runDepartures, runArrivals, runFromStops, runToStops, runTrips, runModes,
+                kept, overnightTrips, resized);
+    }
+
+    /**
+     * @brief withMovedTrips, for the connexions of the run that this timetable
+     *        holds.
+     *
+     * @param kept           Whether each connexion of the run belongs to this
+     *                       timetable.
+     * @param overnightTrips Whether each trip runs past 24:00 once moved, null
+     *                       for a timetable without service calendars.
+     * @param resized        Whether a moved trip started or stopped running past
+     *                       24:00, so that a day timetable may gain or lose
+     *                       connexions.
+     */
+    private Timetable withMovedTrips(boolean[] moved, int[] runDepartures, int[] runArrivals, int[] runFromStops,
+            int[] runToStops, int[] runTrips, byte[] runModes, boolean[] kept, boolean[] overnightTrips,
+            boolean resized) {
+        Timetable next = mergeRun(moved, runDepartures, runArrivals, runFromStops, runToStops, runTrips, runModes,
+                kept, overnightTrips, resized);
+
+        // the filtered timetables, with the part of the run they hold
+        for (Map.Entry<Integer, Timetable> entry : this.filtered.entrySet()) {
+            boolean[] keptByModes = new boolean[kept.length];
+            for (int k = 0; k < kept.length; k++) {
+                keptByModes[k] = kept[k] && (runModes[k] & entry.getKey()) != 0;
+            }
+            next.filtered.put(entry.getKey(), entry.getValue().withMovedTrips(moved, runDepartures, runArrivals,
+                    runFromStops, runToStops, runTrips, runModes, keptByModes, overnightTrips, resized));
+        }
+        for (int mask = 0; mask <= ALL_MODES; mask++) {
+            next.filterRequests.set(mask, this.filterRequests.get(mask));
+        }
+        Map<Integer, Timetable> days;
+        synchronized (this.days) {
+            days = new LinkedHashMap<>(this.days); // least recently used first
+        }
+        for (Map.Entry<Integer, Timetable> entry : days.entrySet()) {
+            Timetable day = withMovedTripsOnDay(entry.getValue(), entry.getKey(), moved, runDepartures, runArrivals,
+                    runFromStops, runToStops, runTrips, runModes, kept, overnightTrips, resized);
+            synchronized (next.days) {
+                next.days.put(entry.getKey(), day);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * @brief withMovedTrips, for the timetable of a day built from this one: it
+     *        holds the connexions of the run whose trip runs that day, and those
+     *        whose trip ran the previous day past midnight, 24 hours earlier.
+     *
+     * @param timetable      The timetable of the day.
+     * @param day            The day, as returned by ServiceCalendar.dayOf.
+     * @param kept           Whether each connexion of the run belongs to this
+     *                       timetable.
+     * @param overnightTrips Whether each trip runs past 24:00 once moved.
+     * @param resized        Whether a moved trip started or stopped running past
+     *                       24:00.
+     * @return The next version of the timetable of the day.
+     */
+    private Timetable withMovedTripsOnDay(Timetable timetable, int day, boolean[] moved, int[] runDepartures,
+            int[] runArrivals, int[] runFromStops, int[] runToStops, int[] runTrips, byte[] runModes,
+            boolean[] kept, boolean[] overnightTrips, boolean resized) {
+        int tripCount = this.tripIds.length;
+        // the trips of the day, then those of the previous day
+        boolean[] movedOnDay = Arrays.copyOf(moved, 2 * tripCount);
+        System.arraycopy(moved, 0, movedOnDay, tripCount, tripCount);
+        boolean[] today = new boolean[kept.length];
+        boolean[] yesterday = new boolean[kept.length];
+        int size = 0;
+        for (int k = 0; k < kept.length; k++) {
+            today[k] = kept[k] && runsOn(runTrips[k], day);
+            yesterday[k] = kept[k] && overnightTrips[runTrips[k]] && runsOn(runTrips[k], day - 1);
+            if (today[k])
+                size++;
+            if (yesterday[k])
+                size++;
+        }
+        int[] departures = new int[size];
+        int[] arrivals = new int[size];
+        int[] fromStops = new int[size];
+        int[] toStops = new int[size];
+        int[] trips = new int[size];
+        byte[] modes = new byte[size];
+        int i = 0; // next connexion of the day
+        int p = 0; // next connexion of the previous day
+        for (int j = 0; j < size; j++) {
+            while (i < kept.length && !today[i]) {
+                i++;
+            }
+            while (p < kept.length && !yesterday[p]) {
+                p++;
+            }
+            if (p < kept.length && (i == kept.length || runDepartures[p] - DAY < runDepartures[i])) {
+                departures[j] = runDepartures[p] - DAY;
+                arrivals[j] = runArrivals[p] - DAY;
+                fromStops[j] = runFromStops[p];
+                toStops[j] = runToStops[p];
+                trips[j] = tripCount + runTrips[p];
+                modes[j] = runModes[p++];
+            } else {
+                departures[j] = runDepartures[i];
+                arrivals[j] = runArrivals[i];
+                fromStops[j] = runFromStops[i];
+                toStops[j] = runToStops[i];
+                trips[j] = runTrips[i];
+                modes[j] = runModes[i++];
+            }
+        }
+        boolean[] keptOnDay = new boolean[size];
+        Arrays.fill(keptOnDay, true);
+        return timetable.withMovedTrips(movedOnDay, departures, arrivals, fromStops, toStops, trips, modes,
+                keptOnDay, null, resized);
+    }
+
+    /**
+     * @brief Merges the part of a run that this timetable holds into the
+     *        connexions of the trips that do not move.
+     *
+     * @return The new version, without any filtered timetable.
+     */
+    private Timetable mergeRun(boolean[] moved, int[] runDepartures, int[] runArrivals, int[] runFromStops,
+            int[] runToStops, int[] runTrips, byte[] runModes, boolean[] kept, boolean[] overnightTrips,
+            boolean resized) {
+        // a timetable holds every connexion of a trip or none of them, so as many
+        // connexions leave as join, unless a trip of the previous day joins or
+        // leaves a day timetable
+        int joined = 0;
+        for (boolean keep : kept) {
+            if (keep)
+                joined++;
+        }
+        int left = joined;
+        if (resized) {
+            left = 0;
+            for (int trip : this.trips) {
+                if (moved[trip])
+                    left++;
+            }
+        }
+        int size = this.departures.length - left + joined;
+        int[] departures = new int[size];
+        int[] arrivals = new int[size];
+        int[] fromStops = new int[size];
+        int[] toStops = new int[size];
+        int[] trips = new int[size];
+        byte[] modes = new byte[size];
+        int[] leftDepartures = new int[left]; // both sorted, for the minute index
+        int[] joinedDepartures = new int[joined];
+        int out = 0;
+        int r = 0;
+        int l = 0;
+        int j = 0;
+        int count = this.departures.length;
+        for (int i = 0; i <= count; i++) { // the run is flushed after the last connexion
+            int departure = i < count ? this.departures[i] : Integer.MAX_VALUE;
+            if (i < count && moved[this.trips[i]]) {
+                leftDepartures[l++] = departure;
+                continue;
+            }
+            for (; r < runDepartures.length && (i == count || runDepartures[r] < departure); r++) {
+                if (!kept[r])
+                    continue;
+                departures[out] = runDepartures[r];
+                arrivals[out] = runArrivals[r];
+                fromStops[out] = runFromStops[r];
+                toStops[out] = runToStops[r];
+                trips[out] = runTrips[r];
+                modes[out++] = runModes[r];
+                joinedDepartures[j++] = runDepartures[r];
+            }
+            if (i < count) {
+                departures[out] = departure;
+                arrivals[out] = this.arrivals[i];
+                fromStops[out] = this.fromStops[i];
+                toStops[out] = this.toStops[i];
+                trips[out] = this.trips[i];
+                modes[out++] = this.modes[i];
+            }
+        }
+        return new Timetable(this.stops, this.stopIndex, this.tripIds, this.tripIndex, departures,
+                arrivals, fromStops, toStops, trips, modes, this.walkOffsets, this.walkTargets, this.walkDurations,
+                this.calendar, this.tripServices, overnightTrips, this.stopSequences,
+                this.minuteIndex.moved(departures, leftDepartures, joinedDepartures));
+    }
+
+    /**
+     * @brief Returns a copy of this timetable with service calendars.
+     *
+     * @param calendar     The service calendars, null if every trip runs every
+     *                     day.
+     * @param tripServices The dense service index of each trip, -1 for a trip
+     *                     running every day.
+     * @return The timetable with these calendars, sharing every other array.
+     */
+    public Timetable withCalendar(ServiceCalendar calendar, int[] tripServices) {
+        boolean[] overnightTrips = null;
+        if (calendar != null) {
+            overnightTrips = new boolean[this.tripIds.length];
+            for (int i = 0; i < this.arrivals.length; i++) {
+                if (this.arrivals[i] >= DAY)
+                    overnightTrips[this.trips[i]] = true;
+            }
+        }
+        return new Timetable(this.stops, this.stopIndex, this.tripIds, this.tripIndex, this.departures,
+                this.arrivals, this.fromStops, this.toStops, this.trips, this.modes, this.walkOffsets,
+                this.walkTargets, this.walkDurations, calendar, calendar == null ? null : tripServices,
+                overnightTrips, this.stopSequences, this.minuteIndex);
+    }
+
+    /**
+     * @brief Returns the timetable to scan on a date.
+     *
+     * @param date The date, null to scan the trips of every day.
+     * @return A timetable holding only the connexions of the trips running on
+     *         that date and of those of the day before still running after
+     *         midnight, or this timetable if there are no service calendars.
+     */
+    public Timetable forDate(LocalDate date) {
+        if (date == null || this.calendar == null)
+            return this;
+        int day = this.calendar.dayOf(date);
+        if (day == this.calendar.getDayCount() && this.calendar.dayOf(date.minusDays(1)) == day)
+            day++; // neither the date nor the day before it is covered
+        Timetable timetable;
+        synchronized (this.days) {
+            timetable = this.days.get(day);
+        }
+        if (timetable == null) { // built outside of the lock, at worst twice
+            timetable = filterDay(day);
+            synchronized (this.days) {
+                Timetable built = this.days.putIfAbsent(day, timetable);
+                if (built != null)
+                    timetable = built;
+            }
+        }
+        return timetable;
+    }
+
+    /**
+     * @brief Builds a timetable holding only the connexions of the trips
+     *        running on a day, and those of the trips of the previous day
+     *        running past midnight, 24 hours earlier.
+     *
+     * @param day The day, as returned by ServiceCalendar.dayOf.
+     * @return The timetable of the day, without service calendars.
+     */
+    private Timetable filterDay(int day) {
+        // the trips of the day, then those of the previous day
+        int tripCount = this.tripIds.length;
+        boolean[] running = new boolean[2 * tripCount];
+        for (int t = 0; t < tripCount; t++) {
+            running[t] = runsOn(t, day);
+            running[tripCount + t] = this.overnightTrips[t] && runsOn(t, day - 1);
+        }
+        int size = 0;
+        for (int trip : this.trips) {
+            if (running[trip])
+                size++;
+            if (running[tripCount + trip])
+                size++;
+        }
+        int[] departures = new int[size];
+        int[] arrivals = new int[size];
+        int[] fromStops = new int[size];
+        int[] toStops = new int[size];
+        int[] trips = new int[size];
+        byte[] modes = new byte[size];
+        int i = 0; // next connexion of the day
+        int p = 0; // next connexion of the previous day
+        for (int j = 0; j < size; j++) {
+            while (i < this.trips.length && !running[this.trips[i]]) {
+                i++;
+            }
+            while (p < this.trips.length && !running[tripCount + this.trips[p]]) {
+                p++;
+            }
+            if (p < this.trips.length && (i == this.trips.length || this.departures[p] - DAY < this.departures[i])) {
+                departures[j] = this.departures[p] - DAY;
+                arrivals[j] = this.arrivals[p] - DAY;
+                fromStops[j] = this.fromStops[p];
+                toStops[j] = this.toStops[p];
+                trips[j] = tripCount + this.trips[p];
+                modes[j] = this.modes[p++];
+            } else {
+                departures[j] = this.departures[i];
+                arrivals[j] = this.arrivals[i];
+                fromStops[j] = this.fromStops[i];
+                toStops[j] = this.toStops[i];
+                trips[j] = this.trips[i];
+                modes[j] = this.modes[i++];
+            }
+        }
+        return new Timetable(this.stops, this.stopIndex, this.tripIds, this.tripIndex, departures, arrivals,
+                fromStops, toStops, trips, modes, this.walkOffsets, this.walkTargets, this.walkDurations, null, null,
+                null, this.stopSequences, null);
+    }
+
+    /**
+     * @brief Tells whether a trip runs on a day.
+     *
+     * @param trip The dense index of the trip.
+     * @param day  The day, as returned by ServiceCalendar.dayOf.
+     * @return true if the trip has no service or if its service runs that day.
+     */
+    private boolean runsOn(int trip, int day) {
+        return this.tripServices[trip] < 0 || this.calendar.isActive(this.tripServices[trip], day);
+    }
+
+    /**
+     * @brief Builds a timetable holding only the connexions of some modes.
+     *
+     * @param mask The combination of mode bits.
+     * @return The filtered timetable, sharing the stop and trip indices.
+     */
+    private Timetable filter(int mask) {
+        int size = 0;
+        for (byte mode : this.modes) {
+            if ((mode & mask) != 0)
+                size++;
+        }
+        int[] departures = new int[size];
+        int[] arrivals = new int[size];
+        int[] fromStops = new int[size];
+        int[] toStops = new int[size];
+        int[] trips = new int[size];
+        byte[] modes = new byte[size];
+        int j = 0;
+        for (int i = 0; i < this.modes.length; i++) {
+            if ((this.modes[i] & mask) == 0)
+                continue;
+            departures[j] = this.departures[i];
+            arrivals[j] = this.arrivals[i];
+            fromStops[j] = this.fromStops[i];
+            toStops[j] = this.toStops[i];
+            trips[j] = this.trips[i];
+            modes[j] = this.modes[i];
+            j++;
+        }
+        return new Timetable(this.stops, this.stopIndex, this.tripIds, this.tripIndex, departures, arrivals,
+                fromStops, toStops, trips, modes, this.walkOffsets, this.walkTargets, this.walkDurations,
+                this.calendar, this.tripServices, this.overnightTrips, this.stopSequences, null);
+    }
+
+    // #### Getters ####
+
+    public int getStopCount() {
+        return this.stops.length;
+    }
+
+    public int getTripCount() {
+        return this.tripIds.length;
+    }
+
+    /**
+     * @brief Returns the number of dense trip indices the connexions of this
+     *        timetable and of its day timetables may use.
+     *
+     * @return Twice the number of trips if there are service calendars, the
+     *         trips of the previous day being numbered after those of the day,
+     *         the number of trips otherwise.
+     */
+    public int getTripSlotCount() {
+        return this.calendar == null ? this.tripIds.length : 2 * this.tripIds.length;
+    }
+
+    public int getConnexionCount() {
+        return this.departures.length;
+    }
+
+    public Stop getStop(int index) {
+        return this.stops[index];
+    }
+
+    /**
+     * @brief Returns the ID of a trip.
+     *
+     * @param index The dense index of the trip, plus the number of trips for
+     *              the trips of the previous day in a day timetable.
+     * @return The ID of the trip.
+     */
+    public String getTripId(int index) {
+        return this.tripIds[index < this.tripIds.length ? index : index - this.tripIds.length];
+    }
+
+    /**
+     * @brief Returns the dense index of a stop.
+     *
+     * @param stopId The ID of the stop.
+     * @return The dense index of the stop, or -1 if the stop is unknown.
+     */
+    public int getStopIndex(String stopId) {
+        Integer index = this.stopIndex.get(stopId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @brief Returns the dense index of a trip.
+     *
+     * @param tripId The ID of the trip.
+     * @return The dense index of the trip, or -1 if the trip is unknown.
+     */
+    public int getTripIndex(String tripId) {
+        Integer index = this.tripIndex.get(tripId);
+        return index == null ? -1 : index;
+    }
+
+    public int[] getDepartures() {
+        return this.departures;
+    }
+
+    public int[] getArrivals() {
+        return this.arrivals;
+    }
+
+    public int[] getFromStops() {
+        return this.fromStops;
+    }
+
+    public int[] getToStops() {
+        return this.toStops;
+    }
+
+    public int[] getTrips() {
+        return this.trips;
+    }
+
+    public byte[] getModes() {
+        return this.modes;
+    }
+
+    public int[] getWalkOffsets() {
+        return this.walkOffsets;
+    }
+
+    public int[] getWalkTargets() {
+        return this.walkTargets;
+    }
+
+    public int[] getWalkDurations() {
+        return this.walkDurations;
+    }
+
+    public int getWalkCount() {
+        return this.walkTargets.length;
+    }
+
+    public StopSequences getStopSequences() {
+        return this.stopSequences;
+    }
+
+    public MinuteIndex getMinuteIndex() {
+        return this.minuteIndex;
+    }
+
+    public ServiceCalendar getCalendar() {
+        return this.calendar;
+    }
+
+    public int[] getTripServices() {
+        return this.tripServices;
+    }
+}
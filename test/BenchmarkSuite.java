@@ -0,0 +1,310 @@
+import functional.Builder;
+import functional.Parser;
+import functional.PathFinder;
+import objects.Route;
+import objects.Stop;
+import objects.StopTime;
+import objects.Trip;
+import structures.BallTree;
+import structures.LiveTimetable;
+import structures.MinuteIndex;
+import structures.StopNameIndex;
+import structures.Timetable;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Suite de benchmarks des chemins critiques: lecture des fichiers, construction
+ * du réseau, requêtes et application des retards.
+ *
+ * Même protocole que JMH (qui n'est pas disponible sans gestionnaire de
+ * dépendances): pour chaque benchmark, des itérations de préchauffage puis des
+ * itérations de mesure d'une durée fixe, l'opération étant répétée jusqu'à la
+ * fin de l'itération et son résultat consommé pour que le JIT ne l'élimine pas.
+ * Pour chaque benchmark sont affichés:
+ * - le débit (opérations par seconde, moyenne et écart-type des itérations),
+ * - le temps moyen par opération,
+ * - les octets alloués par opération et le débit d'allocation, comme le
+ *   profileur "gc" de JMH (compteurs d'allocation des threads vivants: les
+ *   threads terminés pendant une itération ne sont pas comptés, ce que signale
+ *   une "*" quand l'opération démarre des threads),
+ * - le nombre de passages du ramasse-miettes.
+ *
+ * Usage (depuis la racine): make bench [ARGS="..."]
+ * java -cp bin BenchmarkSuite [dossier GTFS] [itérations] [secondes par itération] [filtre]
+ * Le filtre ne garde que les benchmarks dont le nom le contient.
+ */
+public class BenchmarkSuite {
+
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    static volatile int sink; // consomme les résultats
+
+    static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        String directory = args.length > 0 ? args[0] : "GTFS";
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+        String filter = args.length > 3 ? args[3] : "";
+
+        // état partagé, construit une fois
+        Parser parser = new Parser(directory);
+        parser.readFiles();
+        Map<String, Trip> trips = parser.getAllTrips();
+        Map<String, Stop> stopMap = parser.getAllStops();
+        Map<String, Route> routes = parser.getAllRoutes();
+        Builder builder = new Builder(500, 1.0, 30);
+        builder.buildConnexions(trips, stopMap, routes);
+        builder.buildBallTree();
+        builder.buildWalks();
+        builder.buildStopNameIndex(stopMap);
+        Timetable timetable = builder.getTimetable();
+        StopNameIndex stopNameIndex = builder.getStopNameIndex();
+        Stop[] stops = new Stop[timetable.getStopCount()];
+        for (int i = 0; i < stops.length; i++) {
+            stops[i] = timetable.getStop(i);
+        }
+        BallTree tree = new BallTree(stops, 30);
+        PathFinder finder = new PathFinder(stopMap, trips, routes, timetable, stopNameIndex);
+        String[][] queries = queries(stops, 256);
+
+        Map<String, Operation> benchmarks = new LinkedHashMap<>();
+        benchmarks.put("Parser.readFiles", () -> {
+            Parser fresh = new Parser(directory);
+            fresh.readFiles();
+            return fresh.getAllTrips().size();
+        });
+        benchmarks.put("Builder.buildConnexions", () -> {
+            Builder fresh = new Builder(500, 1.0, 30);
+            fresh.buildConnexions(trips, stopMap, routes);
+            return fresh.getTimetable().getConnexionCount();
+        });
+        benchmarks.put("BallTree.build", () -> new BallTree(stops, 30).size());
+        int[] next = new int[1];
+        benchmarks.put("BallTree.query_neighbours", () -> tree
+                .query_neighbours(stops[next[0]++ % stops.length], 500).size());
+        benchmarks.put("BallTree.kNearest", () -> {
+            Stop stop = stops[next[0]++ % stops.length];
+            return tree.kNearest(stop.getStopLat(), stop.getStopLon(), 10).length;
+        });
+        benchmarks.put("Builder.buildWalks", () -> {
+            builder.buildWalks();
+            return builder.getTimetable().getWalkCount();
+        });
+        MinuteIndex minuteIndex = timetable.getMinuteIndex();
+        benchmarks.put("MinuteIndex.startIndex", () -> minuteIndex.startIndex((next[0]++ * 7919) % (26 * 3600)));
+        benchmarks.put("PathFinder.findPath (default)", () -> {
+            String[] q = queries[next[0]++ % queries.length];
+            finder.findPath(q[0], q[1], q[2], false);
+            return q;
+        });
+        benchmarks.put("PathFinder.findPath (variant)", () -> {
+            String[] q = queries[next[0]++ % queries.length];
+            finder.setBus(true);
+            finder.setTrain(false);
+            finder.setTram(true);
+            finder.setMetro(false);
+            finder.findPath(q[0], q[1], q[2], true);
+            return q;
+        });
+        String[][] departures = new String[queries.length][];
+        for (int i = 0; i < queries.length; i++) {
+            departures[i] = departures(queries[i][2], 64, 3);
+        }
+        benchmarks.put("PathFinder.findArrivals (64 times)", () -> {
+            int i = next[0]++ % queries.length;
+            return finder.findArrivals(queries[i][0], queries[i][1], departures[i], false);
+        });
+        LiveTimetable live = new LiveTimetable(timetable);
+        List<List<LiveTimetable.Delay>> single = delays(timetable, trips, 256, 1);
+        List<List<LiveTimetable.Delay>> batches = delays(timetable, trips, 256, 100);
+        benchmarks.put("LiveTimetable.apply (1 delay)", () -> live.apply(single.get(next[0]++ % single.size())));
+        benchmarks.put("LiveTimetable.apply (100 delays)",
+                () -> live.apply(batches.get(next[0]++ % batches.size())));
+
+        // les résultats sont imprimés par PathFinder: on les jette pendant la mesure
+        PrintStream console = System.out;
+        PrintStream errors = System.err;
+        console.printf("%-32s %20s %14s %15s %12s %6s%n", "Benchmark", "ops/s", "temps/op", "alloc/op",
+                "alloc MB/s", "GC");
+        for (Map.Entry<String, Operation> benchmark : benchmarks.entrySet()) {
+            if (!benchmark.getKey().contains(filter))
+                continue;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+            double[][] results;
+            try {
+                run(benchmark.getValue(), iterations, seconds); // Echauffement
+                results = run(benchmark.getValue(), iterations, seconds);
+            } finally {
+                System.setOut(console);
+                System.setErr(errors);
+            }
+            report(benchmark.getKey(), results);
+        }
+    }
+
+    /**
+     * Corpus fixe: paires de noms de stations tirées avec une graine, départs
+     * entre 06:00 et 20:00.
+     */
+    static String[][] queries(Stop[] stops, int count) {
+        List<String> names = new ArrayList<>();
+        for (Stop stop : stops) {
+            names.add(stop.getStopName());
+        }
+        names.sort(null);
+        Random random = new Random(42);
+        String[][] queries = new String[count][3];
+        for (int i = 0; i < count; i++) {
+            int time = 6 * 3600 + random.nextInt(14 * 3600);
+            queries[i][0] = names.get(random.nextInt(names.size()));
+            queries[i][1] = names.get(random.nextInt(names.size()));
+            queries[i][2] = String.format("%02d;%02d;%02d", time / 3600, (time % 3600) / 60, time % 60);
+        }
+        return queries;
+    }
+
+    /** Heures de départ régulièrement espacées de minutes en minutes. */
+    static String[] departures(String first, int count, int minutes) {
+        String[] parts = first.split(";");
+        int start = Integer.parseInt(parts[0]) * 3600 + Integer.parseInt(parts[1]) * 60 + Integer.parseInt(parts[2]);
+        String[] times = new String[count];
+        for (int i = 0; i < count; i++) {
+            int time = start + i * minutes * 60;
+            times[i] = String.format("%02d;%02d;%02d", time / 3600, (time % 3600) / 60, time % 60);
+        }
+        return times;
+    }
+
+    /**
+     * Lots de retards tirés avec une graine: trajet, arrêt de départ du retard
+     * et retard entre -2 et 15 minutes.
+     */
+    static List<List<LiveTimetable.Delay>> delays(Timetable timetable, Map<String, Trip> trips, int count,
+            int size) {
+        Random random = new Random(42);
+        List<List<LiveTimetable.Delay>> batches = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            List<LiveTimetable.Delay> batch = new ArrayList<>();
+            for (int j = 0; j < size; j++) {
+                String tripId = timetable.getTripId(random.nextInt(timetable.getTripCount()));
+                List<StopTime> stopTimes = trips.get(tripId).getstopTimes();
+                int sequence = stopTimes.isEmpty() ? 0
+                        : stopTimes.get(random.nextInt(stopTimes.size())).getStopSequence();
+                batch.add(new LiveTimetable.Delay(tripId, sequence, random.nextInt(17 * 60) - 2 * 60));
+            }
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Exécute des itérations d'une durée fixe. Renvoie, par itération: le nombre
+     * d'opérations, la durée en ns, les octets alloués, le nombre de GC et le
+     * nombre de threads démarrés.
+     */
+    static double[][] run(Operation operation, int iterations, double seconds) throws Exception {
+        double[][] results = new double[iterations][];
+        long duration = (long) (seconds * 1e9);
+        for (int i = 0; i < iterations; i++) {
+            long operations = 0;
+            long collections = collections();
+            long started = THREADS.getTotalStartedThreadCount();
+            Map<Long, Long> allocated = allocatedBytes();
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                Object result = operation.run();
+                sink += result == null ? 0 : result.hashCode();
+                operations++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < duration);
+            results[i] = new double[] { operations, elapsed, allocatedSince(allocated),
+                    collections() - collections, THREADS.getTotalStartedThreadCount() - started };
+        }
+        return results;
+    }
+
+    static void report(String name, double[][] results) {
+        double[] throughputs = new double[results.length];
+        double operations = 0, nanos = 0, bytes = 0, collections = 0, started = 0;
+        for (int i = 0; i < results.length; i++) {
+            throughputs[i] = results[i][0] / (results[i][1] / 1e9);
+            operations += results[i][0];
+            nanos += results[i][1];
+            bytes += results[i][2];
+            collections += results[i][3];
+            started += results[i][4];
+        }
+        double mean = 0;
+        for (double throughput : throughputs) {
+            mean += throughput / throughputs.length;
+        }
+        double variance = 0;
+        for (double throughput : throughputs) {
+            variance += (throughput - mean) * (throughput - mean) / Math.max(1, throughputs.length - 1);
+        }
+        System.out.printf("%-32s %20s %14s %15s %12.1f %6d%n", name,
+                String.format("%.1f +- %.1f", mean, Math.sqrt(variance)), time(nanos / operations),
+                size(bytes / operations) + (started > 0 ? "*" : " "), bytes / (nanos / 1e9) / 1e6, (long) collections);
+    }
+
+    static String time(double nanos) {
+        if (nanos >= 1e6)
+            return String.format("%.2f ms", nanos / 1e6);
+        if (nanos >= 1e3)
+            return String.format("%.2f us", nanos / 1e3);
+        return String.format("%.1f ns", nanos);
+    }
+
+    static String size(double bytes) {
+        if (bytes >= 1 << 20)
+            return String.format("%.2f MB", bytes / (1 << 20));
+        if (bytes >= 1 << 10)
+            return String.format("%.2f KB", bytes / (1 << 10));
+        return String.format("%.0f B", bytes);
+    }
+
+    /** Octets alloués depuis leur démarrage par chacun des threads vivants. */
+    static Map<Long, Long> allocatedBytes() {
+        long[] ids = THREADS.getAllThreadIds();
+        long[] bytes = THREADS.getThreadAllocatedBytes(ids);
+        Map<Long, Long> allocated = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0)
+                allocated.put(ids[i], bytes[i]);
+        }
+        return allocated;
+    }
+
+    /** Octets alloués depuis un relevé par les threads encore vivants. */
+    static long allocatedSince(Map<Long, Long> before) {
+        long total = 0;
+        for (Map.Entry<Long, Long> thread : allocatedBytes().entrySet()) {
+            total += thread.getValue() - before.getOrDefault(thread.getKey(), 0L);
+        }
+        return total;
+    }
+
+    static long collections() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionCount());
+        }
+        return total;
+    }
+}
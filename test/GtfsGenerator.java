@@ -0,0 +1,346 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Génère un réseau GTFS synthétique, dans le format lu par functional.Parser
+ * (un dossier par compagnie avec stops.csv, routes.csv, trips.csv et
+ * stop_times.csv), pour mesurer le comportement du programme sur des réseaux
+ * plus grands que la Belgique.
+ *
+ * Les arrêts sont répartis sur un carré dont l'aire découle de la densité
+ * demandée, uniformément ou en partie autour de centres-villes. Chaque ligne
+ * relie des arrêts voisins de sa compagnie en avançant dans une direction qui
+ * varie doucement, et ses trajets (dans les deux sens) sont étalés entre 05:00
+ * et 23:00. Les arrêts proches portent le même nom, comme les arrêts des
+ * différentes compagnies à une même gare. Tout est tiré d'une graine: mêmes
+ * options, mêmes fichiers.
+ *
+ * Avec calendars=true, chaque compagnie a un calendar.csv: un trajet sur trois
+ * ne circule que le week-end, les autres en semaine, pendant l'année
+ * CALENDAR_YEAR. Avec night > 0, cette part des trajets part entre 22:00 et
+ * 26:00 et roule donc après minuit. Ces deux options tirent d'un autre
+ * générateur: les fichiers des autres options restent les mêmes.
+ *
+ * Compilation et exécution (depuis la racine, après "make"):
+ * javac -encoding UTF-8 -cp bin -d bin test/GtfsGenerator.java
+ * java -cp bin GtfsGenerator [option=valeur ...]
+ *
+ * Options (valeur par défaut):
+ * out=GTFS-synth dossier de sortie
+ * agencies=4 nombre de compagnies (SNCB, TEC, STIB, DELIJN, puis AGENCY5...)
+ * stops=20000 nombre total d'arrêts
+ * routes=200 nombre de lignes par compagnie
+ * trips=20000 nombre total de trajets par jour
+ * density=2.0 arrêts par km²
+ * cities=0 nombre de centres-villes (0: arrêts uniformément répartis)
+ * clustered=0.7 part des arrêts placés autour des centres-villes
+ * seed=42 graine du générateur aléatoire
+ * calendars=false calendriers de service semaine/week-end
+ * night=0.0 part des trajets roulant après minuit
+ */
+public class GtfsGenerator {
+
+    static final String[] AGENCIES = { "SNCB", "TEC", "STIB", "DELIJN" };
+    // par type de ligne: vitesse commerciale (m/s), distance entre arrêts (m),
+    // nombre d'arrêts par ligne (min, max)
+    static final String[] ROUTE_TYPES = { "TRAIN", "BUS", "METRO", "TRAM" };
+    static final double[] SPEEDS = { 25, 8, 10, 6 };
+    static final double[] SPACINGS = { 5000, 400, 700, 350 };
+    static final int[][] LENGTHS = { { 5, 15 }, { 10, 30 }, { 8, 20 }, { 10, 25 } };
+    static final int DWELL = 20; // arrêt à chaque station, en secondes
+    static final double NAME_CELL = 150; // arrêts à moins de ~150 m: même nom
+    static final int CALENDAR_YEAR = 2026;
+
+    static final double CENTER_LAT = 50.5;
+    static final double CENTER_LON = 4.5;
+    static final double METERS_PER_DEGREE = 111320;
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                System.err.println("Option invalide (attendu option=valeur): " + arg);
+                return;
+            }
+            options.put(option[0], option[1]);
+        }
+        String out = options.getOrDefault("out", "GTFS-synth");
+        int agencies = Integer.parseInt(options.getOrDefault("agencies", "4"));
+        int stops = Integer.parseInt(options.getOrDefault("stops", "20000"));
+        int routes = Integer.parseInt(options.getOrDefault("routes", "200"));
+        int trips = Integer.parseInt(options.getOrDefault("trips", "20000"));
+        double density = Double.parseDouble(options.getOrDefault("density", "2.0"));
+        int cities = Integer.parseInt(options.getOrDefault("cities", "0"));
+        double clustered = Double.parseDouble(options.getOrDefault("clustered", "0.7"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        boolean calendars = Boolean.parseBoolean(options.getOrDefault("calendars", "false"));
+        double night = Double.parseDouble(options.getOrDefault("night", "0.0"));
+
+        long start = System.nanoTime();
+        Random random = new Random(seed);
+        Random nightRandom = new Random(seed + 1);
+        double side = Math.sqrt(stops / density) * 1000; // côté du carré, en mètres
+
+        // centres-villes, et leur étalement
+        double[][] centers = new double[cities][2];
+        for (double[] center : centers) {
+            center[0] = side * (0.1 + 0.8 * random.nextDouble());
+            center[1] = side * (0.1 + 0.8 * random.nextDouble());
+        }
+        double sigma = cities > 0 ? side / (6 * Math.sqrt(cities)) : 0;
+
+        long stopTimes = 0;
+        int generatedRoutes = 0, generatedTrips = 0;
+        for (int a = 0; a < agencies; a++) {
+            String agency = a < AGENCIES.length ? AGENCIES[a] : "AGENCY" + (a + 1);
+            int mode = a % ROUTE_TYPES.length;
+            File directory = new File(out, agency);
+            directory.mkdirs();
+
+            // arrêts, en mètres dans le carré
+            int count = stops / agencies + (a < stops % agencies ? 1 : 0);
+            double[] xs = new double[count];
+            double[] ys = new double[count];
+            for (int i = 0; i < count; i++) {
+                if (cities > 0 && random.nextDouble() < clustered) {
+                    double[] center = centers[random.nextInt(cities)];
+                    xs[i] = clamp(center[0] + random.nextGaussian() * sigma, side);
+                    ys[i] = clamp(center[1] + random.nextGaussian() * sigma, side);
+                } else {
+                    xs[i] = random.nextDouble() * side;
+                    ys[i] = random.nextDouble() * side;
+                }
+            }
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(directory, "stops.csv")))) {
+                writer.write("stop_id,stop_name,stop_lat,stop_lon\n");
+                for (int i = 0; i < count; i++) {
+                    String name = "Arret " + (long) (xs[i] / NAME_CELL) + "-" + (long) (ys[i] / NAME_CELL);
+                    writer.write(agency + "-S" + i + ",\"" + name + "\"," + String.format(Locale.ROOT,
+                            "%.6f,%.6f", latitude(ys[i], side), longitude(xs[i], side)) + "\n");
+                }
+            }
+
+            // lignes: suites d'arrêts voisins
+            Grid grid = new Grid(xs, ys, side, Math.max(SPACINGS[mode], side / 2048));
+            int[][] paths = new int[routes][];
+            int[] segmentTimes = new int[0];
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(directory, "routes.csv")))) {
+                writer.write("route_id,route_short_name,route_long_name,route_type\n");
+                for (int r = 0; r < routes; r++) {
+                    int length = LENGTHS[mode][0] + random.nextInt(LENGTHS[mode][1] - LENGTHS[mode][0] + 1);
+                    paths[r] = path(grid, xs, ys, side, SPACINGS[mode], length, random);
+                    if (paths[r].length < 2)
+                        continue;
+                    writer.write(agency + "-R" + r + "," + (r + 1) + ",\"Ligne " + (r + 1) + "\","
+                            + ROUTE_TYPES[mode] + "\n");
+                    generatedRoutes++;
+                }
+            }
+
+            if (calendars) {
+                try (BufferedWriter writer = new BufferedWriter(
+                        new FileWriter(new File(directory, "calendar.csv")))) {
+                    writer.write("service_id,monday,tuesday,wednesday,thursday,friday,saturday,sunday,"
+                            + "start_date,end_date\n");
+                    writer.write("WEEK,1,1,1,1,1,0,0," + CALENDAR_YEAR + "0101," + CALENDAR_YEAR + "1231\n");
+                    writer.write("WEEKEND,0,0,0,0,0,1,1," + CALENDAR_YEAR + "0101," + CALENDAR_YEAR + "1231\n");
+                }
+            }
+
+            // trajets, dans les deux sens, étalés entre 05:00 et 23:00
+            int agencyTrips = trips / agencies + (a < trips % agencies ? 1 : 0);
+            try (BufferedWriter tripWriter = new BufferedWriter(new FileWriter(new File(directory, "trips.csv")));
+                    BufferedWriter stopTimeWriter = new BufferedWriter(
+                            new FileWriter(new File(directory, "stop_times.csv")), 1 << 16)) {
+                tripWriter.write(calendars ? "trip_id,route_id,service_id\n" : "trip_id,route_id\n");
+                stopTimeWriter.write("trip_id,departure_time,stop_id,stop_sequence\n");
+                int validRoutes = 0;
+                for (int[] path : paths) {
+                    if (path.length >= 2)
+                        validRoutes++;
+                }
+                int remaining = agencyTrips;
+                for (int r = 0; r < routes && validRoutes > 0; r++) {
+                    int[] path = paths[r];
+                    if (path.length < 2)
+                        continue;
+                    int routeTrips = remaining / validRoutes--;
+                    remaining -= routeTrips;
+                    if (segmentTimes.length < path.length)
+                        segmentTimes = new int[path.length];
+                    for (int s = 1; s < path.length; s++) {
+                        double distance = Math.hypot(xs[path[s]] - xs[path[s - 1]], ys[path[s]] - ys[path[s - 1]]);
+                        segmentTimes[s] = (int) (distance / SPEEDS[mode]) + DWELL;
+                    }
+                    for (int t = 0; t < routeTrips; t++) {
+                        String tripId = agency + "-T" + r + "-" + t;
+                        String service = !calendars ? "" : t % 3 == 2 ? ",WEEKEND" : ",WEEK";
+                        tripWriter.write(tripId + "," + agency + "-R" + r + service + "\n");
+                        int time = 5 * 3600 + (int) ((18 * 3600L * t) / routeTrips) + random.nextInt(120);
+                        if (night > 0 && nightRandom.nextDouble() < night)
+                            time = 22 * 3600 + nightRandom.nextInt(4 * 3600);
+                        boolean reverse = (t & 1) == 1;
+                        for (int s = 0; s < path.length; s++) {
+                            int stop = path[reverse ? path.length - 1 - s : s];
+                            if (s > 0)
+                                time += segmentTimes[reverse ? path.length - s : s];
+                            stopTimeWriter.write(tripId);
+                            stopTimeWriter.write(',');
+                            stopTimeWriter.write(time(time));
+                            stopTimeWriter.write(',');
+                            stopTimeWriter.write(agency + "-S" + stop);
+                            stopTimeWriter.write(',');
+                            stopTimeWriter.write(Integer.toString(s + 1));
+                            stopTimeWriter.write('\n');
+                        }
+                        stopTimes += path.length;
+                        generatedTrips++;
+                    }
+                }
+            }
+        }
+
+        System.out.printf("%s: %d compagnies, %d arrets, %d lignes, %d trajets, %d horaires (%.0f x %.0f km) en %d ms%n",
+                out, agencies, stops, generatedRoutes, generatedTrips, stopTimes, side / 1000, side / 1000,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Construit une ligne: part d'un arrêt au hasard et avance d'environ
+     * spacing mètres par arrêt dans une direction qui varie doucement (et
+     * rebondit sur les bords), en prenant chaque fois l'arrêt libre le plus
+     * proche du point visé. S'arrête plus tôt si aucun arrêt n'est assez
+     * proche.
+     */
+    static int[] path(Grid grid, double[] xs, double[] ys, double side, double spacing, int length, Random random) {
+        int[] path = new int[length];
+        int current = random.nextInt(xs.length);
+        path[0] = current;
+        int size = 1;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int attempts = 0; size < length && attempts < 4 * length; attempts++) {
+            heading += random.nextGaussian() * 0.3;
+            double step = spacing * (0.7 + 0.6 * random.nextDouble());
+            double x = xs[current] + step * Math.cos(heading);
+            double y = ys[current] + step * Math.sin(heading);
+            if (x < 0 || x > side || y < 0 || y > side) {
+                heading += Math.PI; // demi-tour au bord du carré
+                continue;
+            }
+            int next = grid.nearest(x, y, 2 * spacing, path, size);
+            if (next == -1)
+                break;
+            path[size++] = next;
+            current = next;
+        }
+        return Arrays.copyOf(path, size);
+    }
+
+    static double clamp(double value, double side) {
+        return Math.max(0, Math.min(side, value));
+    }
+
+    static double latitude(double y, double side) {
+        return CENTER_LAT + (y - side / 2) / METERS_PER_DEGREE;
+    }
+
+    static double longitude(double x, double side) {
+        return CENTER_LON + (x - side / 2) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(CENTER_LAT)));
+    }
+
+    /** HH:MM:SS, sans String.format: stop_times.csv compte des millions de lignes. */
+    static String time(int seconds) {
+        int hours = seconds / 3600, minutes = (seconds % 3600) / 60;
+        seconds %= 60;
+        return new String(new char[] { (char) ('0' + hours / 10), (char) ('0' + hours % 10), ':',
+                (char) ('0' + minutes / 10), (char) ('0' + minutes % 10), ':', (char) ('0' + seconds / 10),
+                (char) ('0' + seconds % 10) });
+    }
+
+    /**
+     * Grille régulière des arrêts d'une compagnie (les arrêts d'une case sont
+     * contigus dans cellStops), pour trouver l'arrêt le plus proche d'un point.
+     */
+    static class Grid {
+        final double[] xs, ys;
+        final double cell;
+        final int columns;
+        final int[] cellStarts;
+        final int[] cellStops;
+
+        Grid(double[] xs, double[] ys, double side, double cell) {
+            this.xs = xs;
+            this.ys = ys;
+            this.cell = cell;
+            this.columns = (int) (side / cell) + 1;
+            this.cellStarts = new int[this.columns * this.columns + 1];
+            for (int i = 0; i < xs.length; i++) {
+                this.cellStarts[cellOf(xs[i], ys[i]) + 1]++;
+            }
+            for (int c = 0; c < this.columns * this.columns; c++) {
+                this.cellStarts[c + 1] += this.cellStarts[c];
+            }
+            this.cellStops = new int[xs.length];
+            int[] next = Arrays.copyOf(this.cellStarts, this.columns * this.columns);
+            for (int i = 0; i < xs.length; i++) {
+                this.cellStops[next[cellOf(xs[i], ys[i])]++] = i;
+            }
+        }
+
+        int cellOf(double x, double y) {
+            int column = Math.min(this.columns - 1, (int) (x / this.cell));
+            int row = Math.min(this.columns - 1, (int) (y / this.cell));
+            return row * this.columns + column;
+        }
+
+        /**
+         * Arrêt le plus proche de (x, y) à moins de maxDistance, hors des
+         * excluded[0..excludedCount - 1]; -1 s'il n'y en a pas.
+         */
+        int nearest(double x, double y, double maxDistance, int[] excluded, int excludedCount) {
+            int column = Math.min(this.columns - 1, (int) (x / this.cell));
+            int row = Math.min(this.columns - 1, (int) (y / this.cell));
+            int rings = (int) Math.ceil(maxDistance / this.cell);
+            int best = -1;
+            double bestDistance = maxDistance;
+            for (int ring = 0; ring <= rings; ring++) {
+                if (best != -1 && (ring - 1) * this.cell > bestDistance)
+                    break; // les anneaux suivants sont plus loin que le meilleur
+                for (int r = row - ring; r <= row + ring; r++) {
+                    for (int c = column - ring; c <= column + ring; c++) {
+                        if (r < 0 || c < 0 || r >= this.columns || c >= this.columns)
+                            continue;
+                        if (Math.max(Math.abs(r - row), Math.abs(c - column)) != ring)
+                            continue; // case d'un anneau précédent
+                        int cell = r * this.columns + c;
+                        for (int k = this.cellStarts[cell]; k < this.cellStarts[cell + 1]; k++) {
+                            int stop = this.cellStops[k];
+                            double distance = Math.hypot(this.xs[stop] - x, this.ys[stop] - y);
+                            if (distance < bestDistance && !contains(excluded, excludedCount, stop)) {
+                                bestDistance = distance;
+                                best = stop;
+                            }
+                        }
+                    }
+                }
+            }
+            return best;
+        }
+
+        static boolean contains(int[] values, int count, int value) {
+            for (int i = 0; i < count; i++) {
+                if (values[i] == value)
+                    return true;
+            }
+            return false;
+        }
+    }
+}
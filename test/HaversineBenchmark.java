@@ -1,5 +1,23 @@
+import functional.Calculator;
+
+import java.util.Random;
+
+/**
+ * Mesure le coût de la distance haversine, puis compare les noyaux de
+ * functional.Calculator: haversine sur radians et cosinus précalculés,
+ * approximation équirectangulaire et préfiltre "à moins de 500 m ?".
+ * Vérifie aussi la précision de l'approximation et l'absence de faux négatifs
+ * du préfiltre.
+ *
+ * Compilation et exécution (depuis la racine, après "make"):
+ * javac -encoding UTF-8 -cp bin -d bin test/HaversineBenchmark.java
+ * java -cp bin HaversineBenchmark
+ */
 public class HaversineBenchmark {
 
+    static final int PAIRS = 1 << 12; // paires tirées au hasard, parcourues en boucle
+    static final double MAX_FOOT_DISTANCE = 500; // seuil du préfiltre, en mètres
+
     public static void main(String[] args) {
         Stop stopA = new Stop("A", "Stop A", 50.40876, 4.17245);
         Stop stopB = new Stop("B", "Stop B", 50.863666, 4.329612);
@@ -22,6 +40,181 @@ public class HaversineBenchmark {
 
         System.out.printf("Moyenne sur %d appels : %.2f ns%n", N, averageNs);
         System.out.println("Résultat final moyen (distance) : " + (total / N) + " m");
+
+        compareKernels(N);
+        checkAccuracy();
+    }
+
+    /**
+     * Compare les noyaux sur des paires de points en Belgique, dont la moitié
+     * à moins d'un kilomètre l'une de l'autre (cas typique des marches).
+     */
+    static void compareKernels(int N) {
+        double[][] pairs = randomPairs(new Random(42), PAIRS, 1000);
+        double[] latA = pairs[0], lonA = pairs[1], cosA = pairs[2], latB = pairs[3], lonB = pairs[4],
+                cosB = pairs[5];
+        Stop[] stopsA = new Stop[PAIRS];
+        Stop[] stopsB = new Stop[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            stopsA[i] = new Stop("A" + i, "A", Math.toDegrees(latA[i]), Math.toDegrees(lonA[i]));
+            stopsB[i] = new Stop("B" + i, "B", Math.toDegrees(latB[i]), Math.toDegrees(lonB[i]));
+        }
+
+        // Echauffement
+        for (int round = 0; round < 5; round++) {
+            runDegrees(stopsA, stopsB, N);
+            runRadians(latA, lonA, cosA, latB, lonB, cosB, N);
+            runEquirectangular(latA, lonA, cosA, latB, lonB, cosB, N);
+            runWithinExact(latA, lonA, cosA, latB, lonB, cosB, N);
+            runWithinPrefilter(latA, lonA, cosA, latB, lonB, cosB, N);
+        }
+
+        long start = System.nanoTime();
+        double sink = runDegrees(stopsA, stopsB, N);
+        double degreesNs = (System.nanoTime() - start) / (double) N;
+
+        start = System.nanoTime();
+        sink += runRadians(latA, lonA, cosA, latB, lonB, cosB, N);
+        double radiansNs = (System.nanoTime() - start) / (double) N;
+
+        start = System.nanoTime();
+        sink += runEquirectangular(latA, lonA, cosA, latB, lonB, cosB, N);
+        double equirectangularNs = (System.nanoTime() - start) / (double) N;
+
+        start = System.nanoTime();
+        int within = runWithinExact(latA, lonA, cosA, latB, lonB, cosB, N);
+        double exactNs = (System.nanoTime() - start) / (double) N;
+
+        start = System.nanoTime();
+        int withinPrefiltered = runWithinPrefilter(latA, lonA, cosA, latB, lonB, cosB, N);
+        double prefilterNs = (System.nanoTime() - start) / (double) N;
+
+        System.out.println();
+        System.out.printf("Haversine en degrés (toRadians, pow)    : %.2f ns%n", degreesNs);
+        System.out.printf("Haversine sur radians précalculés       : %.2f ns (x%.2f)%n", radiansNs,
+                degreesNs / radiansNs);
+        System.out.printf("Approximation équirectangulaire         : %.2f ns (x%.2f)%n", equirectangularNs,
+                degreesNs / equirectangularNs);
+        System.out.printf("A moins de %.0f m ? haversine seule       : %.2f ns%n", MAX_FOOT_DISTANCE, exactNs);
+        System.out.printf("A moins de %.0f m ? préfiltre + haversine : %.2f ns (x%.2f)%n", MAX_FOOT_DISTANCE,
+                prefilterNs, exactNs / prefilterNs);
+        System.out.println("Paires retenues (doivent être égales) : " + within + " / " + withinPrefiltered
+                + " (" + (long) sink % 10 + ")");
+    }
+
+    /**
+     * Erreur de l'approximation équirectangulaire par rapport à la haversine,
+     * et faux négatifs du préfiltre (paires à moins du seuil qu'il rejetterait).
+     */
+    static void checkAccuracy() {
+        double[][] pairs = randomPairs(new Random(7), 1_000_000, 5000);
+        double maxRelativeError500 = 0, maxRelativeError5000 = 0, maxAbsoluteError500 = 0;
+        int falseNegatives = 0;
+        for (int i = 0; i < pairs[0].length; i++) {
+            double exact = Calculator.haversine_distance(pairs[0][i], pairs[1][i], pairs[2][i], pairs[3][i],
+                    pairs[4][i], pairs[5][i]);
+            double approximate = Calculator.equirectangular_distance(pairs[0][i], pairs[1][i], pairs[2][i],
+                    pairs[3][i], pairs[4][i], pairs[5][i]);
+            if (exact == 0)
+                continue;
+            double relativeError = Math.abs(approximate - exact) / exact;
+            if (exact <= 5000)
+                maxRelativeError5000 = Math.max(maxRelativeError5000, relativeError);
+            if (exact <= MAX_FOOT_DISTANCE) {
+                maxRelativeError500 = Math.max(maxRelativeError500, relativeError);
+                maxAbsoluteError500 = Math.max(maxAbsoluteError500, Math.abs(approximate - exact));
+                if (!Calculator.may_be_within(pairs[0][i], pairs[1][i], pairs[2][i], pairs[3][i], pairs[4][i],
+                        pairs[5][i], MAX_FOOT_DISTANCE))
+                    falseNegatives++;
+            }
+        }
+        System.out.println();
+        System.out.printf("Erreur relative max (< %.0f m)  : %.2e (%.2e m)%n", MAX_FOOT_DISTANCE,
+                maxRelativeError500, maxAbsoluteError500);
+        System.out.printf("Erreur relative max (< 5 km)   : %.2e%n", maxRelativeError5000);
+        System.out.println("Faux négatifs du préfiltre     : " + falseNegatives);
+    }
+
+    /**
+     * Tire des paires de points en Belgique, la moitié à moins de near mètres
+     * l'une de l'autre. Renvoie latA, lonA, cos(latA), latB, lonB, cos(latB) en
+     * radians.
+     */
+    static double[][] randomPairs(Random random, int count, double near) {
+        double[][] pairs = new double[6][count];
+        for (int i = 0; i < count; i++) {
+            double latA = 49.5 + random.nextDouble() * 2;
+            double lonA = 2.5 + random.nextDouble() * 3.5;
+            double latB, lonB;
+            if (i % 2 == 0) {
+                double degrees = near / 111000.0; // un degré de latitude fait environ 111 km
+                latB = latA + (random.nextDouble() * 2 - 1) * degrees;
+                lonB = lonA + (random.nextDouble() * 2 - 1) * degrees / Math.cos(Math.toRadians(latA));
+            } else {
+                latB = 49.5 + random.nextDouble() * 2;
+                lonB = 2.5 + random.nextDouble() * 3.5;
+            }
+            pairs[0][i] = Math.toRadians(latA);
+            pairs[1][i] = Math.toRadians(lonA);
+            pairs[2][i] = Math.cos(pairs[0][i]);
+            pairs[3][i] = Math.toRadians(latB);
+            pairs[4][i] = Math.toRadians(lonB);
+            pairs[5][i] = Math.cos(pairs[3][i]);
+        }
+        return pairs;
+    }
+
+    static double runDegrees(Stop[] stopsA, Stop[] stopsB, int N) {
+        double total = 0;
+        for (int i = 0; i < N; i++) {
+            total += haversine_distance(stopsA[i & (PAIRS - 1)], stopsB[i & (PAIRS - 1)]);
+        }
+        return total;
+    }
+
+    static double runRadians(double[] latA, double[] lonA, double[] cosA, double[] latB, double[] lonB,
+            double[] cosB, int N) {
+        double total = 0;
+        for (int i = 0; i < N; i++) {
+            int p = i & (PAIRS - 1);
+            total += Calculator.haversine_distance(latA[p], lonA[p], cosA[p], latB[p], lonB[p], cosB[p]);
+        }
+        return total;
+    }
+
+    static double runEquirectangular(double[] latA, double[] lonA, double[] cosA, double[] latB, double[] lonB,
+            double[] cosB, int N) {
+        double total = 0;
+        for (int i = 0; i < N; i++) {
+            int p = i & (PAIRS - 1);
+            total += Calculator.equirectangular_distance(latA[p], lonA[p], cosA[p], latB[p], lonB[p], cosB[p]);
+        }
+        return total;
+    }
+
+    static int runWithinExact(double[] latA, double[] lonA, double[] cosA, double[] latB, double[] lonB,
+            double[] cosB, int N) {
+        int within = 0;
+        for (int i = 0; i < N; i++) {
+            int p = i & (PAIRS - 1);
+            if (Calculator.haversine_distance(latA[p], lonA[p], cosA[p], latB[p], lonB[p],
+                    cosB[p]) <= MAX_FOOT_DISTANCE)
+                within++;
+        }
+        return within;
+    }
+
+    static int runWithinPrefilter(double[] latA, double[] lonA, double[] cosA, double[] latB, double[] lonB,
+            double[] cosB, int N) {
+        int within = 0;
+        for (int i = 0; i < N; i++) {
+            int p = i & (PAIRS - 1);
+            if (Calculator.may_be_within(latA[p], lonA[p], cosA[p], latB[p], lonB[p], cosB[p], MAX_FOOT_DISTANCE)
+                    && Calculator.haversine_distance(latA[p], lonA[p], cosA[p], latB[p], lonB[p],
+                            cosB[p]) <= MAX_FOOT_DISTANCE)
+                within++;
+        }
+        return within;
     }
 
     public static double haversine_distance(Stop a, Stop b) {
@@ -0,0 +1,127 @@
+import functional.Initializer;
+import functional.RoutingServer;
+import objects.Stop;
+import structures.Timetable;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test de charge du service HTTP sur localhost.
+ *
+ * Charge le réseau, démarre un RoutingServer sur un port libre, puis des
+ * clients concurrents envoient chacun leurs requêtes GET /journey l'une après
+ * l'autre (corpus de BenchmarkSuite: paires de stations et heures tirées avec
+ * une graine). Sont affichés, côté client: le débit, les percentiles de
+ * latence et la répartition des codes HTTP, puis les statistiques du serveur
+ * (GET /stats). Avec "reload", le réseau est reconstruit et publié quand le
+ * quart des requêtes est envoyé: aucune requête ne doit échouer pendant ce
+ * rechargement.
+ *
+ * Usage (depuis la racine): make loadtest [ARGS="..."]
+ * java -cp bin LoadTest [dossier GTFS] [requêtes] [clients] [reload]
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String directory = args.length > 0 ? args[0] : "GTFS";
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        boolean reload = args.length > 3 && args[3].equals("reload");
+
+        Initializer initializer = new Initializer(directory, 500, 1.0, 30);
+        initializer.setup(false);
+        Timetable timetable = initializer.getTimetable();
+        Stop[] stops = new Stop[timetable.getStopCount()];
+        for (int i = 0; i < stops.length; i++) {
+            stops[i] = timetable.getStop(i);
+        }
+        String[][] queries = BenchmarkSuite.queries(stops, 1024);
+
+        RoutingServer server = new RoutingServer(initializer.getNetwork(), 0,
+                Runtime.getRuntime().availableProcessors());
+        server.setInitializer(initializer);
+        server.start();
+        String base = "http://localhost:" + server.getPort();
+        System.out.println("Serveur sur " + base + " (" + (server.usesVirtualThreads() ? "threads virtuels"
+                : "threads de la plateforme") + "), " + requests + " requêtes, " + clients + " clients");
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        // échauffement du JIT, non mesuré
+        for (int i = 0; i < Math.min(200, requests); i++) {
+            client.send(request(base, queries[i % queries.length]), HttpResponse.BodyHandlers.discarding());
+        }
+
+        long[] latencies = new long[requests];
+        Map<Integer, AtomicInteger> codes = new ConcurrentHashMap<>();
+        AtomicInteger next = new AtomicInteger();
+        Thread[] threads = new Thread[clients];
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            threads[c] = new Thread(() -> {
+                int r;
+                while ((r = next.getAndIncrement()) < requests) {
+                    long sent = System.nanoTime();
+                    int code;
+                    try {
+                        code = client.send(request(base, queries[r % queries.length]),
+                                HttpResponse.BodyHandlers.ofString()).statusCode();
+                    } catch (Exception e) {
+                        code = -1; // erreur de connexion
+                    }
+                    latencies[r] = System.nanoTime() - sent;
+                    codes.computeIfAbsent(code, k -> new AtomicInteger()).incrementAndGet();
+                }
+            });
+            threads[c].start();
+        }
+        if (reload) {
+            while (next.get() < requests / 4) {
+                Thread.sleep(1);
+            }
+            server.reload(null);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("Débit: %.1f requêtes/s (%d requêtes en %.2f s)%n", requests / seconds, requests, seconds);
+        System.out.printf("Latence: p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                percentile(latencies, 50) / 1e6, percentile(latencies, 90) / 1e6, percentile(latencies, 99) / 1e6,
+                percentile(latencies, 100) / 1e6);
+        System.out.println("Codes HTTP: " + new TreeMap<>(codes));
+        if (reload) {
+            while (server.isReloading()) {
+                Thread.sleep(10);
+            }
+            System.out.println("Version du réseau après rechargement: " + server.getNetworkVersion());
+        }
+        System.out.println("Statistiques du serveur: " + client.send(
+                HttpRequest.newBuilder(URI.create(base + "/stats")).build(), HttpResponse.BodyHandlers.ofString())
+                .body());
+        server.stop();
+    }
+
+    static HttpRequest request(String base, String[] query) {
+        String uri = base + "/journey?from=" + URLEncoder.encode(query[0], StandardCharsets.UTF_8) + "&to="
+                + URLEncoder.encode(query[1], StandardCharsets.UTF_8) + "&time="
+                + URLEncoder.encode(query[2], StandardCharsets.UTF_8);
+        return HttpRequest.newBuilder(URI.create(uri)).GET().build();
+    }
+
+    static long percentile(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+}
@@ -0,0 +1,81 @@
+import functional.Initializer;
+import functional.PathFinder;
+import objects.Stop;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compare le coût du CSA multi-critères (arrivée, correspondances) à celui du
+ * CSA classique sur un même corpus de requêtes.
+ *
+ * Compilation et exécution (depuis la racine, après "make"):
+ * javac -cp bin -d bin test/ParetoBenchmark.java
+ * java -cp bin ParetoBenchmark [dossier GTFS] [nombre de requêtes]
+ */
+public class ParetoBenchmark {
+
+    public static void main(String[] args) {
+        String directory = args.length > 0 ? args[0] : "GTFS";
+        int N = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        Initializer initializer = new Initializer(directory, 500, 1.0, 30);
+        initializer.setup(false);
+        PathFinder finder = new PathFinder(initializer.getStops(), initializer.getTrips(), initializer.getRoutes(),
+                initializer.getTimetable(), initializer.getStopNameIndex());
+
+        // corpus fixe: paires de noms tirées avec une graine, départs entre 06:00 et 20:00
+        List<String> names = new ArrayList<>();
+        for (Stop stop : initializer.getStops().values()) {
+            names.add(stop.getStopName());
+        }
+        names.sort(null);
+        Random random = new Random(42);
+        String[][] queries = new String[N][3];
+        for (int i = 0; i < N; i++) {
+            int time = 6 * 3600 + random.nextInt(14 * 3600);
+            queries[i][0] = names.get(random.nextInt(names.size()));
+            queries[i][1] = names.get(random.nextInt(names.size()));
+            queries[i][2] = String.format("%02d;%02d;%02d", time / 3600, (time % 3600) / 60, time % 60);
+        }
+
+        // les résultats sont imprimés par PathFinder: on les jette pendant la mesure
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        // Echauffement (important pour éliminer les effets de compilation JIT)
+        for (String[] q : queries) {
+            finder.findPath(q[0], q[1], q[2], false);
+            finder.findParetoPaths(q[0], q[1], q[2], false, PathFinder.MAX_TRANSFERS);
+        }
+
+        double single = measure(() -> {
+            for (String[] q : queries)
+                finder.findPath(q[0], q[1], q[2], false);
+        }, N);
+        double pareto3 = measure(() -> {
+            for (String[] q : queries)
+                finder.findParetoPaths(q[0], q[1], q[2], false, 3);
+        }, N);
+        double paretoMax = measure(() -> {
+            for (String[] q : queries)
+                finder.findParetoPaths(q[0], q[1], q[2], false, PathFinder.MAX_TRANSFERS);
+        }, N);
+
+        System.setOut(console);
+        System.out.printf("CSA classique                      : %.1f us/requete%n", single);
+        System.out.printf("CSA multi-criteres (3 corresp.)    : %.1f us/requete (x%.2f)%n", pareto3, pareto3 / single);
+        System.out.printf("CSA multi-criteres (%d corresp.)    : %.1f us/requete (x%.2f)%n", PathFinder.MAX_TRANSFERS,
+                paretoMax, paretoMax / single);
+    }
+
+    private static double measure(Runnable run, int N) {
+        long start = System.nanoTime();
+        run.run();
+        long end = System.nanoTime();
+        return (end - start) / 1000.0 / N;
+    }
+}
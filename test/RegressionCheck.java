@@ -0,0 +1,469 @@
+import functional.Builder;
+import functional.Calculator;
+import functional.Parser;
+import functional.PathFinder;
+import objects.Route;
+import objects.Service;
+import objects.Stop;
+import objects.StopTime;
+import objects.Trip;
+import structures.Journey;
+import structures.JourneyCache;
+import structures.LiveTimetable;
+import structures.MinuteIndex;
+import structures.StopNameIndex;
+import structures.Timetable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Contrôle de non-régression: un jeu de requêtes fixe sur le réseau de
+ * GtfsGenerator (graine fixe, calendriers semaine/week-end et un dixième des
+ * trajets roulant après minuit), dont les résultats sont comparés à ceux d'un
+ * calcul de référence plus simple:
+ * - lecture: les horaires lus par Parser contre une lecture ligne à ligne des
+ *   stop_times.csv, et les connexions du Timetable contre les paires d'arrêts
+ *   consécutifs de ces horaires;
+ * - voies: findArrivals et findArrivalsFrom (64 voies en un parcours) contre
+ *   findJourney sur chaque voie, sur tous les jours puis à une date;
+ * - jours: les connexions de forDate, d'un vendredi D, du samedi D+1 et autour
+ *   de la fin du calendrier, contre celles recalculées depuis les service_id
+ *   des trajets, trajets de la veille roulant après minuit compris;
+ * - retards: chaque version de LiveTimetable (fusion des trajets retardés)
+ *   contre une reconstruction complète du réseau depuis les horaires retardés,
+ *   jours filtrés reportés d'une version à l'autre et trajets poussés après
+ *   minuit compris, les trajets étant cherchés à travers un JourneyCache.
+ * L'index par minute de chaque Timetable comparé est vérifié contre une
+ * recherche linéaire.
+ *
+ * Chaque écart est affiché, et le programme se termine avec le code 1 s'il y en
+ * a.
+ *
+ * Usage (depuis la racine): make check [ARGS="..."]
+ * java -cp bin RegressionCheck [dossier de travail]
+ */
+public class RegressionCheck {
+
+    static final int DAY = 24 * 3600;
+    static final int LANES = 64; // voies d'un parcours de findArrivals
+    static final int QUERIES = 32; // requêtes par contrôle de voies
+    static final int ROUNDS = 6; // lots de retards
+    static final int DELAYS = 40; // retards par lot
+
+    static final LocalDate FRIDAY = LocalDate.of(GtfsGenerator.CALENDAR_YEAR, 3, 6);
+    static final LocalDate SATURDAY = FRIDAY.plusDays(1);
+    static final LocalDate LAST_DAY = LocalDate.of(GtfsGenerator.CALENDAR_YEAR, 12, 31);
+    // D et D+1, les jours suivants, et les bords du calendrier
+    static final LocalDate[] DATES = { FRIDAY, SATURDAY, SATURDAY.plusDays(1), SATURDAY.plusDays(2),
+            LocalDate.of(GtfsGenerator.CALENDAR_YEAR, 1, 1), LAST_DAY, LAST_DAY.plusDays(1), LAST_DAY.plusDays(2) };
+
+    static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        String directory = args.length > 0 ? args[0] : "GTFS-check";
+        GtfsGenerator.main(new String[] { "out=" + directory, "agencies=4", "stops=2000", "routes=20",
+                "trips=4000", "density=20", "cities=4", "calendars=true", "night=0.1", "seed=42" });
+
+        Parser parser = new Parser(directory);
+        parser.readFiles();
+        Map<String, Trip> trips = parser.getAllTrips();
+        Map<String, Stop> stops = parser.getAllStops();
+        Map<String, Route> routes = parser.getAllRoutes();
+        Map<String, Service> services = parser.getAllServices();
+        Builder builder = build(trips, stops, routes, services);
+        Timetable timetable = builder.getTimetable();
+        StopNameIndex names = builder.getStopNameIndex();
+        String[][] queries = queries(names);
+
+        // lecture: horaires et connexions
+        Map<String, List<StopTime>> read = readStopTimes(directory);
+        int readStopTimes = 0;
+        for (Map.Entry<String, List<StopTime>> entry : read.entrySet()) {
+            Trip trip = trips.get(entry.getKey());
+            check(trip != null && keys(trip.getstopTimes()).equals(keys(entry.getValue())),
+                    "lecture: horaires du trajet " + entry.getKey());
+            readStopTimes += entry.getValue().size();
+        }
+        check(read.size() == trips.size(), "lecture: " + trips.size() + " trajets lus au lieu de " + read.size());
+        compare("lecture: connexions", expectedConnexions(read), connexions(timetable));
+        checkTimetable("lecture", timetable);
+        System.out.println("lecture: " + read.size() + " trajets, " + readStopTimes + " horaires, "
+                + timetable.getConnexionCount() + " connexions");
+
+        // voies: un parcours pour 64 heures de départ ou 64 départs, contre 64 findJourney
+        PathFinder finder = new PathFinder(stops, trips, routes, timetable, names);
+        int lanes = checkLanes("voies", finder, queries, null);
+        lanes += checkLanes("voies " + SATURDAY, finder, queries, SATURDAY);
+        System.out.println("voies: " + lanes + " arrivées comparées");
+
+        // jours: connexions des jours contre les service_id des trajets
+        int previousDay = 0;
+        for (LocalDate date : DATES) {
+            previousDay += checkDay("jours", timetable, timetable, trips, date);
+        }
+        check(previousDay > 0, "jours: aucune connexion d'un trajet de la veille");
+        System.out.println("jours: " + DATES.length + " dates, " + previousDay + " connexions de la veille");
+
+        // retards: fusion de LiveTimetable contre reconstruction complète
+        LiveTimetable live = new LiveTimetable(timetable);
+        JourneyCache cache = new JourneyCache(1 << 14);
+        PathFinder liveFinder = new PathFinder(stops, trips, routes, timetable, names);
+        liveFinder.setCache(cache);
+        Map<String, TreeMap<Integer, Integer>> announced = new HashMap<>(); // par trajet: arrêt -> retard
+        Random random = new Random(42);
+        for (int round = 0; round < ROUNDS; round++) {
+            for (LocalDate date : DATES) {
+                live.getTimetable().forDate(date); // jours reportés par la version suivante
+            }
+            int applied = live.apply(delays(timetable, trips, announced, random));
+            check(applied == DELAYS, "retards: " + applied + " retards appliqués sur " + DELAYS);
+            Timetable current = live.getTimetable();
+            cache.update(current, live.getChangedDepartures());
+            liveFinder = liveFinder.withTimetable(current);
+
+            Map<String, Trip> delayedTrips = delayedTrips(trips, announced);
+            Builder rebuilt = build(delayedTrips, stops, routes, services);
+            Timetable reference = rebuilt.getTimetable();
+            PathFinder referenceFinder = new PathFinder(stops, delayedTrips, routes, reference,
+                    rebuilt.getStopNameIndex());
+            String name = "retards " + (round + 1);
+            compare(name + ": connexions", connexions(reference), connexions(current));
+            checkTimetable(name, current);
+            for (LocalDate date : DATES) {
+                checkDay(name, current, reference, delayedTrips, date);
+            }
+            checkJourneys(name, liveFinder, referenceFinder, queries, null);
+            checkJourneys(name + " " + SATURDAY, liveFinder, referenceFinder, queries, SATURDAY);
+        }
+        boolean[] scheduled = overnightTrips(timetable);
+        boolean[] delayed = overnightTrips(live.getTimetable());
+        int moved = 0; // trajets passés de part et d'autre de minuit
+        for (int trip = 0; trip < scheduled.length; trip++) {
+            if (scheduled[trip] != delayed[trip])
+                moved++;
+        }
+        check(moved > 0, "retards: aucun trajet déplacé de part et d'autre de minuit");
+        System.out.println("retards: " + ROUNDS + " lots de " + DELAYS + ", " + live.getDelayedTripCount()
+                + " trajets retardés dont " + moved + " passés de part et d'autre de minuit, cache " + cache.getHits()
+                + " succès / " + cache.getMisses() + " échecs");
+
+        System.out.println(failures == 0 ? "OK" : failures + " écart(s)");
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    /** Construit le réseau comme Initializer, sans snapshot. */
+    static Builder build(Map<String, Trip> trips, Map<String, Stop> stops, Map<String, Route> routes,
+            Map<String, Service> services) {
+        Builder builder = new Builder(500, 1.0, 30);
+        builder.buildConnexions(trips, stops, routes);
+        builder.buildCalendar(services, trips);
+        builder.buildBallTree();
+        builder.buildWalks();
+        builder.buildStopNameIndex(stops);
+        return builder;
+    }
+
+    /**
+     * Corpus fixe: paires de noms de stations tirées avec une graine, départs
+     * entre 05:00 et 23:00, dont la fin tombe après minuit.
+     */
+    static String[][] queries(StopNameIndex names) {
+        String[] sorted = names.getSortedNames();
+        Random random = new Random(42);
+        String[][] queries = new String[QUERIES][3];
+        for (String[] query : queries) {
+            query[0] = names.getDisplayName(sorted[random.nextInt(sorted.length)]);
+            query[1] = names.getDisplayName(sorted[random.nextInt(sorted.length)]);
+            query[2] = time(5 * 3600 + random.nextInt(18 * 3600));
+        }
+        return queries;
+    }
+
+    /** Lecture de référence des stop_times.csv, ligne à ligne. */
+    static Map<String, List<StopTime>> readStopTimes(String directory) throws IOException {
+        Map<String, List<StopTime>> stopTimes = new HashMap<>();
+        for (File agency : new File(directory).listFiles(File::isDirectory)) {
+            try (BufferedReader reader = new BufferedReader(
+                    new FileReader(new File(agency, "stop_times.csv")))) {
+                reader.readLine(); // en-tête: trip_id,departure_time,stop_id,stop_sequence
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    String[] columns = line.split(",");
+                    String[] time = columns[1].split(":");
+                    int seconds = Integer.parseInt(time[0]) * 3600 + Integer.parseInt(time[1]) * 60
+                            + Integer.parseInt(time[2]);
+                    stopTimes.computeIfAbsent(columns[0], k -> new ArrayList<>())
+                            .add(new StopTime(seconds, columns[2], Integer.parseInt(columns[3])));
+                }
+            }
+        }
+        return stopTimes;
+    }
+
+    /** Horaires d'un trajet triés par stop_sequence, comparables entre eux. */
+    static List<String> keys(List<StopTime> stopTimes) {
+        List<String> keys = new ArrayList<>();
+        for (StopTime stopTime : stopTimes) {
+            keys.add(stopTime.getStopSequence() + " " + stopTime.getTime() + " " + stopTime.getStopId());
+        }
+        keys.sort(null);
+        return keys;
+    }
+
+    /** Connexions attendues: paires d'arrêts consécutifs de chaque trajet. */
+    static List<String> expectedConnexions(Map<String, List<StopTime>> stopTimes) {
+        List<String> connexions = new ArrayList<>();
+        for (Map.Entry<String, List<StopTime>> entry : stopTimes.entrySet()) {
+            List<StopTime> ordered = new ArrayList<>(entry.getValue());
+            ordered.sort((a, b) -> Integer.compare(a.getStopSequence(), b.getStopSequence()));
+            for (int i = 1; i < ordered.size(); i++) {
+                connexions.add(key(ordered.get(i - 1).getTime(), ordered.get(i).getTime(),
+                        ordered.get(i - 1).getStopId(), ordered.get(i).getStopId(), entry.getKey()));
+            }
+        }
+        connexions.sort(null);
+        return connexions;
+    }
+
+    /** Connexions d'un Timetable, triées, les trajets de la veille marqués. */
+    static List<String> connexions(Timetable timetable) {
+        List<String> connexions = new ArrayList<>();
+        for (int i = 0; i < timetable.getConnexionCount(); i++) {
+            int trip = timetable.getTrips()[i];
+            connexions.add(key(timetable.getDepartures()[i], timetable.getArrivals()[i],
+                    timetable.getStop(timetable.getFromStops()[i]).getStopId(),
+                    timetable.getStop(timetable.getToStops()[i]).getStopId(),
+                    timetable.getTripId(trip) + (trip >= timetable.getTripCount() ? " veille" : "")));
+        }
+        connexions.sort(null);
+        return connexions;
+    }
+
+    static String key(int departure, int arrival, String from, String to, String trip) {
+        return departure + " " + arrival + " " + from + " " + to + " " + trip;
+    }
+
+    /**
+     * Vérifie qu'un Timetable est trié par heure de départ et que son index par
+     * minute donne la même première connexion qu'une recherche linéaire.
+     */
+    static void checkTimetable(String name, Timetable timetable) {
+        int[] departures = timetable.getDepartures();
+        int unsorted = 0;
+        for (int i = 1; i < departures.length; i++) {
+            if (departures[i - 1] > departures[i])
+                unsorted++;
+        }
+        check(unsorted == 0, name + ": " + unsorted + " connexions hors d'ordre");
+        MinuteIndex index = timetable.getMinuteIndex();
+        int first = 0;
+        int wrong = 0;
+        for (int time = 0; time < 30 * 3600; time += 37) {
+            while (first < departures.length && departures[first] < time) {
+                first++;
+            }
+            if (index.startIndex(time) != first)
+                wrong++;
+        }
+        check(wrong == 0, name + ": index par minute faux pour " + wrong + " heures");
+    }
+
+    /**
+     * Compare findArrivals et findArrivalsFrom à findJourney sur chaque voie.
+     * Renvoie le nombre d'arrivées comparées.
+     */
+    static int checkLanes(String name, PathFinder finder, String[][] queries, LocalDate date) {
+        finder.setDate(date);
+        int compared = 0;
+        for (int q = 0; q < queries.length; q++) {
+            String[] times = new String[LANES];
+            String[] starts = new String[LANES];
+            int first = Calculator.timeToInt(queries[q][2]);
+            for (int l = 0; l < LANES; l++) {
+                times[l] = time(first + l * 180);
+                starts[l] = queries[(q + l) % queries.length][0];
+            }
+            int[] arrivals = finder.findArrivals(queries[q][0], queries[q][1], times, false);
+            int[] arrivalsFrom = finder.findArrivalsFrom(starts, queries[q][1], queries[q][2], false);
+            for (int l = 0; l < LANES; l++) {
+                Journey journey = finder.findJourney(queries[q][0], queries[q][1], times[l], Timetable.ALL_MODES,
+                        date);
+                check(arrivals[l] == arrival(journey), name + ": " + queries[q][0] + " -> " + queries[q][1] + " à "
+                        + times[l] + ", voie " + arrivals[l] + ", findJourney " + arrival(journey));
+                journey = finder.findJourney(starts[l], queries[q][1], queries[q][2], Timetable.ALL_MODES, date);
+                if (journey.getStatus() != Journey.Status.SAME_STOP) {
+                    check(arrivalsFrom[l] == arrival(journey), name + ": " + starts[l] + " -> " + queries[q][1]
+                            + " à " + queries[q][2] + ", voie " + arrivalsFrom[l] + ", findJourney "
+                            + arrival(journey));
+                }
+                compared += 2;
+            }
+        }
+        finder.setDate(null);
+        return compared;
+    }
+
+    /** Compare les arrivées de findJourney sur deux réseaux. */
+    static void checkJourneys(String name, PathFinder finder, PathFinder reference, String[][] queries,
+            LocalDate date) {
+        for (String[] query : queries) {
+            for (int l = 0; l < 8; l++) {
+                String time = time(Calculator.timeToInt(query[2]) + l * 600);
+                int arrival = arrival(finder.findJourney(query[0], query[1], time, Timetable.ALL_MODES, date));
+                int expected = arrival(reference.findJourney(query[0], query[1], time, Timetable.ALL_MODES, date));
+                check(arrival == expected, name + ": " + query[0] + " -> " + query[1] + " à " + time + ", arrivée "
+                        + arrival + " au lieu de " + expected);
+            }
+        }
+    }
+
+    /**
+     * Compare le Timetable d'une date à ses connexions attendues: celles des
+     * trajets circulant ce jour-là dans le réseau de référence, et, décalées
+     * d'un jour, celles des trajets de la veille roulant après minuit. Renvoie
+     * le nombre de connexions de la veille.
+     */
+    static int checkDay(String name, Timetable timetable, Timetable reference, Map<String, Trip> trips,
+            LocalDate date) {
+        List<String> expected = new ArrayList<>();
+        boolean[] overnight = overnightTrips(reference);
+        int previousDay = 0;
+        for (int i = 0; i < reference.getConnexionCount(); i++) {
+            int trip = reference.getTrips()[i];
+            String tripId = reference.getTripId(trip);
+            String from = reference.getStop(reference.getFromStops()[i]).getStopId();
+            String to = reference.getStop(reference.getToStops()[i]).getStopId();
+            int departure = reference.getDepartures()[i];
+            int arrival = reference.getArrivals()[i];
+            if (runs(trips.get(tripId), date))
+                expected.add(key(departure, arrival, from, to, tripId));
+            if (overnight[trip] && runs(trips.get(tripId), date.minusDays(1))) {
+                expected.add(key(departure - DAY, arrival - DAY, from, to, tripId + " veille"));
+                previousDay++;
+            }
+        }
+        expected.sort(null);
+        Timetable day = timetable.forDate(date);
+        compare(name + ": connexions du " + date, expected, connexions(day));
+        checkTimetable(name + ": " + date, day);
+        return previousDay;
+    }
+
+    /** Calendriers de GtfsGenerator: semaine ou week-end, pendant une année. */
+    static boolean runs(Trip trip, LocalDate date) {
+        boolean weekend = date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY;
+        return date.getYear() == GtfsGenerator.CALENDAR_YEAR
+                && trip.getServiceId().endsWith(weekend ? ":WEEKEND" : ":WEEK");
+    }
+
+    /** Trajets roulant après minuit, d'après leurs connexions. */
+    static boolean[] overnightTrips(Timetable timetable) {
+        boolean[] overnight = new boolean[timetable.getTripCount()];
+        for (int i = 0; i < timetable.getConnexionCount(); i++) {
+            if (timetable.getArrivals()[i] >= DAY)
+                overnight[timetable.getTrips()[i]] = true;
+        }
+        return overnight;
+    }
+
+    /**
+     * Lot de retards tirés avec une graine, notés dans announced comme
+     * LiveTimetable les applique. Le retard ne décroît jamais le long d'un
+     * trajet, pour que les horaires retardés restent dans l'ordre et que la
+     * reconstruction complète donne les mêmes connexions. Un retard sur quatre
+     * part du premier arrêt, et un tiers de ceux-là va de -2 h à +4 h pour
+     * faire passer des trajets d'un côté de minuit à l'autre.
+     */
+    static List<LiveTimetable.Delay> delays(Timetable timetable, Map<String, Trip> trips,
+            Map<String, TreeMap<Integer, Integer>> announced, Random random) {
+        List<LiveTimetable.Delay> batch = new ArrayList<>();
+        while (batch.size() < DELAYS) {
+            String tripId = timetable.getTripId(random.nextInt(timetable.getTripCount()));
+            List<StopTime> stopTimes = new ArrayList<>(trips.get(tripId).getstopTimes());
+            stopTimes.sort((a, b) -> Integer.compare(a.getStopSequence(), b.getStopSequence()));
+            TreeMap<Integer, Integer> delays = announced.computeIfAbsent(tripId, k -> new TreeMap<>());
+            int position = random.nextInt(4) == 0 ? 0 : random.nextInt(stopTimes.size());
+            int sequence = stopTimes.get(position).getStopSequence();
+            int delay;
+            if (position == 0) {
+                delay = random.nextInt(3) == 0 ? random.nextInt(6 * 3600) - 2 * 3600
+                        : random.nextInt(35 * 60) - 5 * 60;
+                delay = Math.max(delay, -stopTimes.get(0).getTime());
+            } else {
+                delay = delayAt(delays, stopTimes.get(position - 1).getStopSequence()) + random.nextInt(15 * 60);
+            }
+            delays.tailMap(sequence, true).clear();
+            delays.put(sequence, delay);
+            batch.add(new LiveTimetable.Delay(tripId, sequence, delay));
+        }
+        return batch;
+    }
+
+    static int delayAt(TreeMap<Integer, Integer> delays, int sequence) {
+        Map.Entry<Integer, Integer> entry = delays == null ? null : delays.floorEntry(sequence);
+        return entry == null ? 0 : entry.getValue();
+    }
+
+    /** Copie des trajets aux horaires retardés, pour la reconstruction complète. */
+    static Map<String, Trip> delayedTrips(Map<String, Trip> trips, Map<String, TreeMap<Integer, Integer>> announced) {
+        Map<String, Trip> delayed = new HashMap<>();
+        for (Trip trip : trips.values()) {
+            Trip copy = new Trip(trip.getTripId(), trip.getRouteId(), trip.getServiceId());
+            TreeMap<Integer, Integer> delays = announced.get(trip.getTripId());
+            for (StopTime stopTime : trip.getstopTimes()) {
+                copy.addStopTime(new StopTime(stopTime.getTime() + delayAt(delays, stopTime.getStopSequence()),
+                        stopTime.getStopId(), stopTime.getStopSequence()));
+            }
+            delayed.put(copy.getTripId(), copy);
+        }
+        return delayed;
+    }
+
+    static int arrival(Journey journey) {
+        return journey.isFound() ? journey.getArrivalTime() : Integer.MAX_VALUE;
+    }
+
+    static String time(int time) {
+        return String.format("%02d;%02d;%02d", time / 3600, (time % 3600) / 60, time % 60);
+    }
+
+    /** Compare deux listes triées et affiche la première différence. */
+    static void compare(String name, List<String> expected, List<String> actual) {
+        if (expected.equals(actual))
+            return;
+        List<String> missing = new ArrayList<>(expected);
+        List<String> extra = new ArrayList<>(actual);
+        for (String key : actual) {
+            int index = Collections.binarySearch(missing, key);
+            if (index >= 0)
+                missing.remove(index);
+        }
+        for (String key : expected) {
+            int index = Collections.binarySearch(extra, key);
+            if (index >= 0)
+                extra.remove(index);
+        }
+        check(false, name + ": " + missing.size() + " manquantes" + (missing.isEmpty() ? "" : " (" + missing.get(0)
+                + ")") + ", " + extra.size() + " en trop" + (extra.isEmpty() ? "" : " (" + extra.get(0) + ")"));
+    }
+
+    /** Compte un écart et affiche les premiers. */
+    static void check(boolean ok, String message) {
+        if (ok)
+            return;
+        if (failures++ < 20)
+            System.out.println("ECART " + message);
+    }
+}